@@ -0,0 +1,116 @@
+package org.example;
+
+import org.javatuples.Pair;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Reproduce contra un clúster de prueba el tráfico capturado por un nodo (CAPTURE_FILE, ver CaptureWriter).
+// Cada conexión de célula de la captura se abre contra uno de los nodos indicados (en turno), identificándose
+// con el tipo e identificador originales, y por ella se envían los mensajes que el nodo leyó de esa célula con
+// el mismo espaciado (dividido por la velocidad) o tan rápido como sea posible. Lo que el clúster responde se lee
+// y se descarta. El tráfico entre nodos de la captura no se reproduce: lo generan los nodos del clúster de prueba.
+// Uso: java -cp benchmarks/target/benchmarks.jar org.example.CaptureReplay <captura> <host:puerto>[,host:puerto...] [velocidad] [solicitantes|todas]
+//   velocidad: 1 (tiempo real, por defecto), 10, ... o max. Con `solicitantes` (por defecto) solo se reproducen los
+//   clientes, para que respondan los servidores del clúster de prueba; con `todas`, también las células servidoras.
+public class CaptureReplay {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: CaptureReplay <captura> <host:puerto>[,host:puerto...] [velocidad|max] [solicitantes|todas]");
+            System.exit(1);
+        }
+        Path capturePath = Path.of(args[0]);
+        List<Pair<String, Integer>> targets = Arrays.stream(args[1].split(","))
+                .map((str) -> {
+                    String[] split = str.trim().split(":");
+                    return Pair.with(split[0], Integer.parseInt(split[1]));
+                }).toList();
+        String speedArg = args.length > 2 ? args[2] : "1";
+        double speed = speedArg.equalsIgnoreCase("max") ? Double.POSITIVE_INFINITY : Double.parseDouble(speedArg);
+        boolean allCells = args.length > 3 && args[3].equalsIgnoreCase("todas");
+
+        Map<Integer, DataOutputStream> replayed = new HashMap<>(); // Conexión de la captura -> conexión reproducida.
+        List<Socket> sockets = new ArrayList<>();
+        LongAdder received = new LongAdder();
+        long sent = 0, sentBytes = 0, skipped = 0;
+        long firstNanos = -1;
+        long replayStart = System.nanoTime();
+        try (CaptureReader reader = new CaptureReader(capturePath)) {
+            CaptureReader.Entry entry;
+            while ((entry = reader.next()) != null) {
+                if (entry.type() == CaptureWriter.OPEN) {
+                    ProgramType type = entry.programType();
+                    if (type == ProgramType.SOLICITANT || (allCells && type == ProgramType.SERVER)) {
+                        Pair<String, Integer> target = targets.get(replayed.size() % targets.size());
+                        Socket socket = connect(target, type, entry.peerIdentifier(), received);
+                        sockets.add(socket);
+                        replayed.put(entry.connectionId(), new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16)));
+                    }
+                    continue;
+                }
+                DataOutputStream out = replayed.get(entry.connectionId());
+                if (entry.type() != CaptureWriter.IN || out == null) {
+                    skipped++;
+                    continue;
+                }
+                // Respeta el espaciado original entre mensajes, escalado por la velocidad.
+                if (firstNanos < 0) {
+                    firstNanos = entry.nanos();
+                    replayStart = System.nanoTime();
+                }
+                if (speed != Double.POSITIVE_INFINITY) {
+                    long due = replayStart + (long) ((entry.nanos() - firstNanos) / speed);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        for (DataOutputStream stream : replayed.values()) stream.flush(); // No retrasa lo ya enviado.
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                out.write(entry.payload());
+                sent++;
+                sentBytes += entry.payload().length;
+            }
+        }
+        for (DataOutputStream stream : replayed.values()) stream.flush();
+        double elapsedSeconds = (System.nanoTime() - replayStart) / 1e9;
+        Thread.sleep(2_000); // Deja llegar las respuestas antes de cerrar.
+        for (Socket socket : sockets) socket.close();
+        System.out.printf("Reproducidos %d mensajes (%d bytes) por %d conexiones en %.2f s (%.1f mensajes/s); omitidos %d; recibidos %d%n",
+                sent, sentBytes, replayed.size(), elapsedSeconds, sent / Math.max(elapsedSeconds, 1e-9), skipped, received.sum());
+    }
+
+    // Conecta con el nodo identificándose como la célula original e inicia un hilo que descarta lo que recibe.
+    private static Socket connect(Pair<String, Integer> node, ProgramType type, byte[] identifier, LongAdder received) throws IOException {
+        Socket socket = new Socket(node.getValue0(), node.getValue1());
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        DecoderEncoder.writeMsg(out, Message.buildIdentify(type, identifier, ProgramType.NODE));
+        Message nodeIdentMsg = DecoderEncoder.readMsg(in);
+        if (nodeIdentMsg.getNumServicio() != ServiceNumber.Identification)
+            throw new IOException("Número de servicio incorrecto, primer mensaje debió ser identificación: " + nodeIdentMsg.getNumServicio());
+        Thread drain = new Thread(() -> {
+            try {
+                while (true) {
+                    DecoderEncoder.readMsg(in);
+                    received.increment();
+                }
+            } catch (IOException ignored) {
+                // Conexión cerrada al terminar.
+            }
+        }, "replayDrain");
+        drain.setDaemon(true);
+        drain.start();
+        return socket;
+    }
+}
\ No newline at end of file
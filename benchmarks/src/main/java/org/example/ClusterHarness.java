@@ -0,0 +1,210 @@
+package org.example;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.LongAdder;
+
+// Arnés de carga de extremo a extremo: inicia en esta JVM, sobre loopback, un clúster con M nodos, S células
+// servidoras y C clientes sin interfaz (LoadClient), aplica una carga de lazo abierto o cerrado y reporta el
+// rendimiento (solicitudes/s) y los percentiles de latencia registrados con HdrHistogram.
+// Uso: java -cp benchmarks/target/benchmarks.jar org.example.ClusterHarness [--opción=valor ...] [CLAVE=valor ...]
+//   --nodes=4 --servers=2 --clients=4          Tamaño del clúster.
+//   --mode=closed --concurrency=8               Lazo cerrado: solicitudes en curso por cliente.
+//   --mode=open --rate=1000                     Lazo abierto: solicitudes por segundo en total (repartidas entre clientes).
+//   --op=ADD --warmup=5 --duration=20           Operación, segundos de calentamiento y de medición.
+//   --settle=2                                  Segundos de espera para que los nodos se conecten entre sí.
+//   --histogram=latencias.hgrm                  Guarda la distribución completa en µs (formato de HdrHistogram).
+//   --latency=ms --jitter=ms --drop=p           Fallas entre las células y los nodos: cada nodo queda detrás de un
+//   --duplicate=p --bandwidth=bytes/s            FaultProxy (ver esa clase) y se reportan las retransmisiones.
+//   --seed=42                                   Semilla de las fallas.
+//   --transport=unix                            Células y nodos se conectan por sockets de dominio Unix (ver Transport).
+//   CLAVE=valor                                 Reemplaza una propiedad de config.properties (p. ej. SENDER_WAIT_MILIS=1).
+//                                               Con TRACE_SAMPLE_EVERY=n se reporta el desglose de latencia por etapa.
+// Con --add-modules jdk.incubator.vector los servidores usan los kernels vectoriales.
+public class ClusterHarness {
+    private static final Logger LOGGER = LogManager.getLogger(ClusterHarness.class);
+    private static final String HOST = "localhost";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        Properties prop = loadBaseProperties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                System.err.println("Argumento no válido (se esperaba --opción=valor o CLAVE=valor): " + arg);
+                System.exit(1);
+            }
+            if (arg.startsWith("--")) options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            else prop.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int nodes = Integer.parseInt(options.getOrDefault("nodes", "4"));
+        int servers = Integer.parseInt(options.getOrDefault("servers", "2"));
+        int clients = Integer.parseInt(options.getOrDefault("clients", "4"));
+        boolean openLoop = options.getOrDefault("mode", "closed").equalsIgnoreCase("open");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "8"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "1000"));
+        OperationType operation = OperationType.valueOf(options.getOrDefault("op", "ADD").toUpperCase());
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "20"));
+        int settleSeconds = Integer.parseInt(options.getOrDefault("settle", "2"));
+        String transport = options.getOrDefault("transport", "tcp").equalsIgnoreCase("unix") ? "unix:" : "";
+
+        // Los nodos escuchan en puertos libres de loopback; todos se conocen desde el inicio (NODES).
+        StringJoiner nodeList = new StringJoiner(",");
+        int[] ports = freePorts(nodes);
+        for (int port : ports) nodeList.add(transport + HOST + ":" + port);
+        prop.setProperty("NODES", nodeList.toString());
+        ConfigReader.Config config = ConfigReader.fromProperties(prop);
+
+        // Con fallas, las células se conectan a un proxy por nodo; los nodos se siguen conectando entre sí directamente.
+        FaultProxy.Faults faults = FaultProxy.Faults.fromOptions(options);
+        List<FaultProxy> proxies = new ArrayList<>();
+        ConfigReader.Config cellConfig = config;
+        if (!faults.isNone()) {
+            long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+            StringJoiner proxyList = new StringJoiner(",");
+            for (int port : ports) {
+                FaultProxy proxy = new FaultProxy(0, Pair.with(HOST, port), faults, seed + port);
+                proxies.add(proxy);
+                proxyList.add(HOST + ":" + proxy.getPort());
+            }
+            Properties cellProp = (Properties) prop.clone();
+            cellProp.setProperty("NODES", proxyList.toString());
+            cellConfig = ConfigReader.fromProperties(cellProp);
+            System.out.println("Fallas entre células y nodos: " + faults);
+        }
+
+        System.out.printf("Clúster: %d nodos, %d servidores, %d clientes; carga %s, %s%n", nodes, servers, clients,
+                openLoop ? String.format("abierta a %.0f sol/s", rate) : String.format("cerrada con %d en curso por cliente", concurrency), operation.name());
+        for (int port : ports) {
+            Nodo nodo = new Nodo(config);
+            startThread(() -> {
+                try {
+                    nodo.start(new String[]{String.valueOf(port)});
+                } catch (InterruptedException ignored) {
+                }
+            }, "harnessNode-" + port);
+            nodo.awaitReady();
+        }
+        Thread.sleep(settleSeconds * 1_000L); // Los nodos se conectan entre sí en segundo plano.
+        for (int i = 0; i < servers; i++) {
+            new CelulaServidor(cellConfig).start(new String[0]);
+        }
+
+        Histogram latencies = new ConcurrentHistogram(3);
+        LongAdder completed = new LongAdder();
+        LongAdder errors = new LongAdder();
+        List<LoadClient> loadClients = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            LoadClient client = LoadClient.connect(i, cellConfig, latencies, completed, errors);
+            loadClients.add(client);
+            startThread(() -> {
+                try {
+                    if (openLoop) client.runOpenLoop(operation, rate / clients);
+                    else client.runClosedLoop(operation, concurrency);
+                } catch (InterruptedException ignored) {
+                }
+            }, "loadClient-" + i);
+        }
+
+        System.out.printf("Calentamiento: %d s%n", warmupSeconds);
+        Thread.sleep(warmupSeconds * 1_000L);
+        loadClients.forEach((c) -> c.setRecording(true));
+        long start = System.nanoTime();
+        Thread.sleep(durationSeconds * 1_000L);
+        loadClients.forEach((c) -> c.setRecording(false));
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        loadClients.forEach(LoadClient::stop);
+
+        // Deja terminar las solicitudes medidas que siguen en curso (su latencia cuenta) por un tiempo acotado.
+        long drainDeadline = System.nanoTime() + Math.max(5, durationSeconds) * 1_000_000_000L;
+        while (System.nanoTime() < drainDeadline && loadClients.stream().anyMatch((c) -> c.getOutstanding() > 0)) {
+            Thread.sleep(50);
+        }
+        int unfinished = loadClients.stream().mapToInt(LoadClient::getOutstanding).sum();
+
+        report(latencies, completed.sum(), errors.sum(), unfinished, elapsedSeconds, loadClients);
+        for (FaultProxy proxy : proxies) System.out.println(proxy.stats());
+        String histogramFile = options.get("histogram");
+        if (histogramFile != null) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(histogramFile))) {
+                latencies.outputPercentileDistribution(out, 1.0);
+            }
+            System.out.println("Distribución de latencias guardada en " + histogramFile);
+        }
+        System.exit(0); // Los hilos de nodos y servidores no terminan por sí solos.
+    }
+
+    private static void report(Histogram latencies, long completed, long errors, int unfinished, double elapsedSeconds, List<LoadClient> loadClients) {
+        long rejected = 0, shed = 0, coalesced = 0, expired = 0, retransmitted = 0;
+        for (LoadClient client : loadClients) {
+            MessageManager.ClientMessageManager.QueueStats stats = client.getMessageManager().getQueueStats();
+            rejected += stats.rejected();
+            shed += stats.shed();
+            coalesced += stats.coalesced();
+            expired += client.getMessageManager().getExpiredCount();
+            retransmitted += client.getMessageManager().getRetransmissionCount();
+        }
+        System.out.printf("Rendimiento: %.1f sol/s (%d resultados en %.1f s)%n", completed / elapsedSeconds, completed, elapsedSeconds);
+        System.out.printf("Latencia (ms): p50 %.3f, p99 %.3f, p99.9 %.3f, máx %.3f, media %.3f (%d muestras)%n",
+                latencies.getValueAtPercentile(50) / 1e3, latencies.getValueAtPercentile(99) / 1e3,
+                latencies.getValueAtPercentile(99.9) / 1e3, latencies.getMaxValue() / 1e3, latencies.getMean() / 1e3,
+                latencies.getTotalCount());
+        System.out.printf("Errores: %d (rechazadas %d, descartadas %d, vencidas %d), agrupadas %d, sin resultado al terminar %d%n",
+                errors, rejected, shed, expired, coalesced, unfinished);
+        System.out.printf("Retransmisiones de los clientes: %d%n", retransmitted);
+        // Con TRACE_SAMPLE_EVERY > 0: desglose por etapa de las solicitudes trazadas (incluye el calentamiento).
+        for (int i = 0; i < loadClients.size(); i++) {
+            TraceCollector traces = loadClients.get(i).getMessageManager().getTraces();
+            if (traces.getTraceCount() > 0) System.out.print("Cliente " + i + " - " + traces.report());
+        }
+    }
+
+    // Propiedades de config.properties como base; si no está en el classpath, solo las obligatorias.
+    private static Properties loadBaseProperties() throws IOException {
+        Properties prop = new Properties();
+        try (InputStream input = ClusterHarness.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (input != null) {
+                prop.load(input);
+                return prop;
+            }
+        }
+        LOGGER.warn("No se encontró config.properties; se usan los valores por defecto");
+        prop.setProperty("MAX_PENDING_ACKS", "10");
+        prop.setProperty("SENDER_WAIT_MILIS", "5000");
+        prop.setProperty("CELL_CONN_DELAY_MILIS", "5000");
+        return prop;
+    }
+
+    // Reserva puertos libres de loopback (se liberan antes de que los nodos los abran).
+    private static int[] freePorts(int count) throws IOException {
+        List<ServerSocket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) sockets.add(new ServerSocket(0));
+            return sockets.stream().mapToInt(ServerSocket::getLocalPort).toArray();
+        } finally {
+            for (ServerSocket socket : sockets) socket.close();
+        }
+    }
+
+    private static void startThread(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,58 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Serialización de mensajes (DecoderEncoder.writeMsg/readMsg) con distintos tamaños de información.
+// 12 bytes es una solicitud aritmética; los mayores, fragmentos de flujo o planes de expresión.
+// Uso: java -jar benchmarks/target/benchmarks.jar CodecBenchmark -prof gc
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    @Param({"12", "1024", "65536"})
+    public int infoSize;
+
+    private Message message;
+    private byte[] encoded;
+    private ByteArrayOutputStream byteStream;
+    private DataOutputStream out;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] info = new byte[this.infoSize];
+        new Random(42).nextBytes(info);
+        this.message = new Message(ProgramType.SERVER, Utils.createIdentifier("localhost", 12345), ServiceNumber.Addition, Utils.sha256(info), info);
+        this.encoded = DecoderEncoder.encode(this.message);
+        this.byteStream = new ByteArrayOutputStream(this.encoded.length);
+        this.out = new DataOutputStream(this.byteStream);
+    }
+
+    // Escribe sobre un búfer reutilizado, como CellConnection sobre su socket.
+    @Benchmark
+    public int writeMsg() throws IOException {
+        this.byteStream.reset();
+        DecoderEncoder.writeMsg(this.out, this.message);
+        return this.byteStream.size();
+    }
+
+    @Benchmark
+    public Message readMsg() throws IOException {
+        return DecoderEncoder.readMsg(new DataInputStream(new ByteArrayInputStream(this.encoded)));
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return DecoderEncoder.encode(this.message);
+    }
+}
\ No newline at end of file
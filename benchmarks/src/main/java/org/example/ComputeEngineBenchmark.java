@@ -0,0 +1,42 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Compara los kernels escalares y vectoriales de ComputeEngine sobre fragmentos de operandos aleatorios.
+// Uso: java -jar benchmarks/target/benchmarks.jar ComputeEngineBenchmark
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class ComputeEngineBenchmark {
+    @Param({"1024", "65536"})
+    public int size;
+
+    @Param({"SUM", "MAX"})
+    public Aggregation aggregation;
+
+    private final ComputeEngine scalar = ComputeEngine.scalar();
+    private final ComputeEngine vector = ComputeEngine.create(true);
+    private int[] values;
+
+    @Setup
+    public void setup() {
+        if (!this.vector.isVectorized()) throw new IllegalStateException("Falta el módulo jdk.incubator.vector");
+        this.values = new Random(42).ints(this.size).toArray();
+    }
+
+    @Benchmark
+    public long foldScalar() {
+        return this.scalar.fold(this.aggregation, this.aggregation.identity(), this.values);
+    }
+
+    @Benchmark
+    public long foldVector() {
+        return this.vector.fold(this.aggregation, this.aggregation.identity(), this.values);
+    }
+}
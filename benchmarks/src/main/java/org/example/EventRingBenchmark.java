@@ -0,0 +1,50 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Costo por mensaje de registrar un evento en la bitácora binaria (EventRing) frente al de las líneas de log que
+// reemplaza: el hash en hexadecimal que se calculaba aunque INFO estuviera desactivado, y Message.toString (lo que
+// formateaba LOGGER.info(msg) en Nodo.handle con INFO activado).
+// Uso: java -jar benchmarks/target/benchmarks.jar EventRingBenchmark -prof gc
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventRingBenchmark {
+    private EventRing ring;
+    private Message msg;
+
+    @Setup
+    public void setup() throws IOException {
+        this.ring = new EventRing(16_384);
+        this.msg = Message.buildRequest(Utils.createIdentifier("localhost", 12345), OperationType.ADD, 3, 4);
+    }
+
+    @Benchmark
+    public void record() {
+        this.ring.record(EventRing.Type.RECEIVE, this.msg, 44);
+    }
+
+    // Cuatro hilos registrando a la vez (el caso del nodo, un hilo por conexión).
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        this.ring.record(EventRing.Type.RECEIVE, this.msg, 44);
+    }
+
+    @Benchmark
+    public void hexHash(Blackhole blackhole) {
+        blackhole.consume(Utils.byteArrayToHexString(this.msg.getHash()));
+    }
+
+    @Benchmark
+    public void messageToString(Blackhole blackhole) {
+        blackhole.consume(this.msg.toString());
+    }
+}
\ No newline at end of file
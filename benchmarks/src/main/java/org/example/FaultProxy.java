@@ -0,0 +1,229 @@
+package org.example;
+
+import org.javatuples.Pair;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Proxy TCP que entiende el formato de los mensajes (DecoderEncoder) y les inyecta fallas, para medir la
+// retransmisión de MessageManager con pérdidas, retrasos y desorden. Se coloca entre una célula y su nodo (o entre
+// dos entidades cualesquiera que hablen este protocolo): escucha en un puerto y reenvía a `upstream`.
+// En cada sentido, cada mensaje:
+// - se descarta con probabilidad `drop` o se duplica con probabilidad `duplicate`;
+// - se entrega tras `latency` ms más un retraso aleatorio uniforme de hasta `jitter` ms (con jitter mayor que la
+//   separación entre mensajes, estos llegan en desorden);
+// - respeta un límite de `bandwidth` bytes/s por sentido (0 = sin límite).
+// Las identificaciones y los pings de sondeo nunca se alteran, para que las conexiones se establezcan.
+// Uso: java -cp benchmarks/target/benchmarks.jar org.example.FaultProxy <puerto> <host:puerto> [--latency=ms]
+//      [--jitter=ms] [--drop=0.01] [--duplicate=0.01] [--bandwidth=bytes/s] [--seed=n]
+public class FaultProxy implements AutoCloseable {
+    // Fallas a inyectar (tiempos en ms, probabilidades entre 0 y 1).
+    public record Faults(int latencyMilis, int jitterMilis, double drop, double duplicate, long bandwidthBytes) {
+        public static final Faults NONE = new Faults(0, 0, 0, 0, 0);
+
+        // Lee las opciones --latency, --jitter, --drop, --duplicate y --bandwidth (las demás se ignoran).
+        public static Faults fromOptions(Map<String, String> options) {
+            return new Faults(
+                    Integer.parseInt(options.getOrDefault("latency", "0")),
+                    Integer.parseInt(options.getOrDefault("jitter", "0")),
+                    Double.parseDouble(options.getOrDefault("drop", "0")),
+                    Double.parseDouble(options.getOrDefault("duplicate", "0")),
+                    Long.parseLong(options.getOrDefault("bandwidth", "0")));
+        }
+
+        public boolean isNone() {
+            return this.equals(NONE);
+        }
+    }
+
+    // Mensaje en espera de su instante de entrega.
+    private record Scheduled(long dueNanos, long order, byte[] frame) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(this.dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Scheduled o = (Scheduled) other;
+            int byTime = Long.compare(this.dueNanos, o.dueNanos);
+            return byTime != 0 ? byTime : Long.compare(this.order, o.order); // Mismo instante: en orden de llegada.
+        }
+    }
+
+    private final ServerSocket server;
+    private final Pair<String, Integer> upstream;
+    private final Faults faults;
+    private final long seed;
+    private final AtomicLong connections = new AtomicLong();
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder forwardedBytes = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder duplicated = new LongAdder();
+
+    public FaultProxy(int port, Pair<String, Integer> upstream, Faults faults, long seed) throws IOException {
+        this.server = new ServerSocket(port);
+        this.upstream = upstream;
+        this.faults = faults;
+        this.seed = seed;
+        Thread acceptingThread = new Thread(this::acceptLoop, "faultProxy-" + this.server.getLocalPort());
+        acceptingThread.setDaemon(true);
+        acceptingThread.start();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: FaultProxy <puerto> <host:puerto> [--latency=ms] [--jitter=ms] [--drop=p] [--duplicate=p] [--bandwidth=bytes/s] [--seed=n]");
+            System.exit(1);
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 2; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (!args[i].startsWith("--") || eq < 0) {
+                System.err.println("Opción no válida: " + args[i]);
+                System.exit(1);
+            }
+            options.put(args[i].substring(2, eq), args[i].substring(eq + 1));
+        }
+        String[] upstream = args[1].split(":");
+        FaultProxy proxy = new FaultProxy(Integer.parseInt(args[0]), Pair.with(upstream[0], Integer.parseInt(upstream[1])),
+                Faults.fromOptions(options), Long.parseLong(options.getOrDefault("seed", "42")));
+        System.out.printf("Proxy en el puerto %d hacia %s con %s%n", proxy.getPort(), args[1], proxy.faults);
+        while (true) {
+            Thread.sleep(5_000);
+            System.out.println(proxy.stats());
+        }
+    }
+
+    public int getPort() {
+        return this.server.getLocalPort();
+    }
+
+    public long getForwarded() {
+        return this.forwarded.sum();
+    }
+
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    public long getDuplicated() {
+        return this.duplicated.sum();
+    }
+
+    public String stats() {
+        return String.format("Proxy %d: %d conexiones, %d mensajes (%d bytes) entregados, %d descartados, %d duplicados",
+                this.getPort(), this.connections.get(), this.forwarded.sum(), this.forwardedBytes.sum(), this.dropped.sum(), this.duplicated.sum());
+    }
+
+    private void acceptLoop() {
+        while (!this.server.isClosed()) {
+            try {
+                Socket downstream = this.server.accept();
+                Socket upstreamSocket;
+                try {
+                    upstreamSocket = new Socket(this.upstream.getValue0(), this.upstream.getValue1());
+                } catch (IOException e) {
+                    downstream.close(); // Sin destino: la célula verá la conexión cerrada, como si el nodo no estuviera.
+                    continue;
+                }
+                downstream.setTcpNoDelay(true);
+                upstreamSocket.setTcpNoDelay(true);
+                long id = this.connections.incrementAndGet();
+                this.pipe(downstream, upstreamSocket, new SplittableRandom(this.seed + 2 * id), "faultProxy-" + id + "-up");
+                this.pipe(upstreamSocket, downstream, new SplittableRandom(this.seed + 2 * id + 1), "faultProxy-" + id + "-down");
+            } catch (IOException e) {
+                if (this.server.isClosed()) return;
+            }
+        }
+    }
+
+    // Un sentido de la conexión: un hilo lee los mensajes y decide su destino, otro los entrega a su tiempo.
+    private void pipe(Socket from, Socket to, SplittableRandom random, String name) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(from.getInputStream(), 1 << 16));
+        OutputStream out = to.getOutputStream();
+        DelayQueue<Scheduled> queue = new DelayQueue<>();
+        Thread writer = new Thread(() -> {
+            // Límite de ancho de banda: cada mensaje ocupa el enlace durante su tamaño / bandwidth.
+            long linkFreeNanos = System.nanoTime();
+            try {
+                while (true) {
+                    Scheduled next = queue.take();
+                    if (this.faults.bandwidthBytes > 0) {
+                        linkFreeNanos = Math.max(linkFreeNanos, System.nanoTime()) + next.frame.length * 1_000_000_000L / this.faults.bandwidthBytes;
+                        long wait = linkFreeNanos - System.nanoTime();
+                        if (wait > 0) LockSupport.parkNanos(wait);
+                    }
+                    out.write(next.frame);
+                    this.forwarded.increment();
+                    this.forwardedBytes.add(next.frame.length);
+                }
+            } catch (InterruptedException | IOException e) {
+                closeQuietly(from);
+                closeQuietly(to);
+            }
+        }, name + "-writer");
+        Thread reader = new Thread(() -> {
+            long order = 0;
+            try {
+                while (true) {
+                    Message msg = DecoderEncoder.readMsg(in);
+                    byte[] frame = DecoderEncoder.encode(msg);
+                    boolean control = msg.getNumServicio() == ServiceNumber.Identification || msg.getNumServicio() == ServiceNumber.Ping;
+                    if (control) {
+                        queue.put(new Scheduled(System.nanoTime(), order++, frame));
+                        continue;
+                    }
+                    if (random.nextDouble() < this.faults.drop) {
+                        this.dropped.increment();
+                        continue;
+                    }
+                    int copies = random.nextDouble() < this.faults.duplicate ? 2 : 1;
+                    if (copies == 2) this.duplicated.increment();
+                    for (int i = 0; i < copies; i++) {
+                        queue.put(new Scheduled(System.nanoTime() + this.delayNanos(random), order++, frame));
+                    }
+                }
+            } catch (IOException e) {
+                closeQuietly(from);
+                closeQuietly(to);
+                writer.interrupt(); // Si no, el escritor queda bloqueado para siempre en queue.take().
+            }
+        }, name + "-reader");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    private long delayNanos(SplittableRandom random) {
+        long delay = this.faults.latencyMilis * 1_000_000L;
+        if (this.faults.jitterMilis > 0) delay += random.nextLong(this.faults.jitterMilis * 1_000_000L);
+        return delay;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.server.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Utils.sha256, que se calcula al construir cada mensaje (el hash identifica el mensaje y su ACK).
+// Uso: java -jar benchmarks/target/benchmarks.jar HashBenchmark -prof gc
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashBenchmark {
+    @Param({"12", "1024", "65536"})
+    public int size;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        this.bytes = new byte[this.size];
+        new Random(42).nextBytes(this.bytes);
+    }
+
+    @Benchmark
+    public byte[] sha256() {
+        return Utils.sha256(this.bytes);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+package org.example;
+
+import org.HdrHistogram.Histogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Cliente sin interfaz gráfica que genera carga para ClusterHarness: se conecta a un nodo como una
+// CelulaSolicitante (con su propio ClientMessageManager) y envía solicitudes aritméticas.
+// - Lazo cerrado: mantiene `concurrency` solicitudes en curso; cada resultado libera el envío de otra.
+// - Lazo abierto: envía a `rate` solicitudes por segundo sin esperar resultados. La latencia se mide desde el
+//   instante en que la solicitud debió enviarse, así que un envío atrasado cuenta como espera (sin omisión coordinada).
+public class LoadClient {
+    private static final Logger LOGGER = LogManager.getLogger(LoadClient.class);
+
+    private final int index;
+    private final CellConnection connection;
+    private final MessageManager.ClientMessageManager messageManager;
+    private final Histogram latencies; // Microsegundos; compartido entre clientes (ConcurrentHistogram).
+    // Solicitudes completadas y fallidas (rechazadas, descartadas o vencidas) durante la medición, de todos los clientes.
+    private final LongAdder completed;
+    private final LongAdder errors;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile boolean running = true;
+    private volatile boolean recording;
+    private int sequence;
+
+    private LoadClient(int index, CellConnection connection, MessageManager.ClientMessageManager messageManager,
+                       Histogram latencies, LongAdder completed, LongAdder errors) {
+        this.index = index;
+        this.connection = connection;
+        this.messageManager = messageManager;
+        this.latencies = latencies;
+        this.completed = completed;
+        this.errors = errors;
+    }
+
+    // Elige nodo, se conecta e inicia los hilos receptor y despachador, como CelulaSolicitante.
+    public static LoadClient connect(int index, ConfigReader.Config config, Histogram latencies, LongAdder completed, LongAdder errors)
+            throws IOException, InterruptedException {
+        Pair<String, Integer> node = NodeSelector.selectBestNode(config, LOGGER);
+        CellConnection connection = CellConnection.connect(ProgramType.SOLICITANT, node, config, LOGGER);
+        MessageManager.ClientMessageManager messageManager = new MessageManager.ClientMessageManager(LOGGER, config);
+        messageManager.setEventRing(new EventRing(config.EVENT_RING_SIZE));
+        startDaemon(() -> messageManager.receiverLoop(connection, (v) -> null), "loadClient-" + index + "-receiverLoop");
+        startDaemon(() -> messageManager.dispatcherLoop(connection), "loadClient-" + index + "-dispatcherLoop");
+        messageManager.startRequestTimer(connection, null);
+        LOGGER.info("Cliente de carga {} conectado a {}", index, node);
+        return new LoadClient(index, connection, messageManager, latencies, completed, errors);
+    }
+
+    // Envía solicitudes manteniendo `concurrency` en curso hasta `stop`.
+    public void runClosedLoop(OperationType operation, int concurrency) throws InterruptedException {
+        Semaphore window = new Semaphore(concurrency);
+        while (this.running) {
+            if (!window.tryAcquire(100, TimeUnit.MILLISECONDS)) continue;
+            this.send(operation, System.nanoTime()).whenComplete((result, e) -> window.release());
+        }
+    }
+
+    // Envía `rate` solicitudes por segundo (con espaciado uniforme) hasta `stop`.
+    public void runOpenLoop(OperationType operation, double rate) {
+        long intervalNanos = (long) (1_000_000_000L / rate);
+        long intended = System.nanoTime();
+        while (this.running) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            this.send(operation, intended);
+            intended += intervalNanos;
+        }
+    }
+
+    // Envía una solicitud con operandos distintos a las demás (las idénticas se agruparían en una sola).
+    private CompletableFuture<Integer> send(OperationType operation, long startNanos) {
+        Message request;
+        try {
+            request = Message.buildRequest(this.connection.getIdentifier(), operation, ++this.sequence, this.index + 1);
+        } catch (IOException e) {
+            this.errors.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+        this.outstanding.incrementAndGet();
+        boolean measured = this.recording; // Solo cuentan las solicitudes enviadas durante la medición.
+        return this.messageManager.submit(request).whenComplete((result, e) -> {
+            this.outstanding.decrementAndGet();
+            if (e != null) {
+                if (measured) this.errors.increment();
+                return;
+            }
+            // La latencia es de las solicitudes enviadas durante la medición; el rendimiento, de los resultados
+            // que llegan durante ella.
+            if (measured) this.latencies.recordValue(Math.max(0, (System.nanoTime() - startNanos) / 1_000));
+            if (this.recording) this.completed.increment();
+        });
+    }
+
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    public void stop() {
+        this.running = false;
+    }
+
+    // Solicitudes enviadas cuyo resultado aún no llega.
+    public int getOutstanding() {
+        return this.outstanding.get();
+    }
+
+    public MessageManager.ClientMessageManager getMessageManager() {
+        return this.messageManager;
+    }
+
+    private static void startDaemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,128 @@
+package org.example;
+
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.concurrent.TimeUnit;
+
+// Construcción de cada tipo de mensaje (Message.build*): serializa la información y calcula su hash.
+// Uso: java -jar benchmarks/target/benchmarks.jar MessageBuildBenchmark -prof gc
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageBuildBenchmark {
+    private final byte[] identifier = Utils.createIdentifier("localhost", 12345);
+    private final byte[] requestHash = Utils.sha256(new byte[]{1, 2, 3});
+    private final List<Pair<String, Integer>> members = List.of(new Pair<>("localhost", 12345), new Pair<>("localhost", 12346), new Pair<>("localhost", 12347));
+    private final int[] chunk = IntStream.range(0, 4096).toArray();
+    private final StreamProgress progress = new StreamProgress(7L, true, 10, 40960, 123456789L);
+    private final TypedOperands typedOperands = TypedOperands.ofLongs(NumericType.LONG, new long[]{2, 1000, 1000000007});
+    private final TypedValue typedValue = TypedValue.ofLong(688423210L, false);
+    private final int[] expressionValues = {1, 2, 10, 4, 3};
+    private ExpressionPlan plan;
+    private Message inner;
+
+    @Setup
+    public void setup() throws IOException, ParseException {
+        this.plan = ExpressionCompiler.compile("(a+b)*(c-d)/e + (a+b)", true);
+        this.inner = Message.buildRequest(this.identifier, OperationType.ADD, 1, 2);
+    }
+
+    @Benchmark
+    public Message buildIdentify() throws IOException {
+        return Message.buildIdentify(ProgramType.SERVER, this.identifier, ProgramType.NODE);
+    }
+
+    @Benchmark
+    public Message buildRequest() throws IOException {
+        return Message.buildRequest(this.identifier, OperationType.ADD, 1, 2);
+    }
+
+    @Benchmark
+    public Message buildExpression() throws IOException {
+        return Message.buildExpression(this.identifier, this.plan, this.expressionValues);
+    }
+
+    @Benchmark
+    public Message buildTypedRequest() throws IOException {
+        return Message.buildTypedRequest(this.identifier, OperationRegistry.MOD_POW, this.typedOperands);
+    }
+
+    @Benchmark
+    public Message buildTypedResult() throws IOException {
+        return Message.buildTypedResult(this.identifier, this.typedValue, this.requestHash);
+    }
+
+    @Benchmark
+    public Message buildResult() throws IOException {
+        return Message.buildResult(this.identifier, 3, this.requestHash);
+    }
+
+    @Benchmark
+    public Message buildAck() throws IOException {
+        return Message.buildAck(ProgramType.SERVER, this.identifier, this.requestHash);
+    }
+
+    @Benchmark
+    public Message buildPing() throws IOException {
+        return Message.buildPing(ProgramType.NODE, this.identifier, 123456789L, 4);
+    }
+
+    @Benchmark
+    public Message buildHeartbeat() {
+        return Message.buildHeartbeat(this.identifier);
+    }
+
+    @Benchmark
+    public Message buildMembership() throws IOException {
+        return Message.buildMembership(this.identifier, this.members);
+    }
+
+    @Benchmark
+    public Message buildLinkData() throws IOException {
+        return Message.buildLinkData(this.identifier, 1L, 42L, 40L, this.inner);
+    }
+
+    @Benchmark
+    public Message buildLinkAck() throws IOException {
+        return Message.buildLinkAck(this.identifier, 1L, 41L, 42L);
+    }
+
+    @Benchmark
+    public Message buildBusy() throws IOException {
+        return Message.buildBusy(ProgramType.SERVER, this.identifier, this.requestHash, 100);
+    }
+
+    @Benchmark
+    public Message buildCancel() throws IOException {
+        return Message.buildCancel(this.identifier, this.requestHash);
+    }
+
+    @Benchmark
+    public Message buildStreamOpen() throws IOException {
+        return Message.buildStreamOpen(this.identifier, 7L, Aggregation.SUM, 0);
+    }
+
+    // Fragmento de 4096 operandos (el tamaño por defecto de STREAM_CHUNK_SIZE).
+    @Benchmark
+    public Message buildStreamChunk() throws IOException {
+        return Message.buildStreamChunk(this.identifier, 7L, 3, this.chunk);
+    }
+
+    @Benchmark
+    public Message buildStreamClose() throws IOException {
+        return Message.buildStreamClose(this.identifier, 7L, 10);
+    }
+
+    @Benchmark
+    public Message buildStreamResult() throws IOException {
+        return Message.buildStreamResult(this.identifier, this.progress);
+    }
+}
\ No newline at end of file
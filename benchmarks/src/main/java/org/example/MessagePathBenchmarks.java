@@ -0,0 +1,26 @@
+package org.example;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Ejecuta todas las suites del camino de los mensajes con el perfilador de GC, que añade la tasa de asignación
+// (gc.alloc.rate.norm = bytes por operación) al rendimiento. Es la referencia para detectar regresiones.
+// Uso: java -cp benchmarks/target/benchmarks.jar org.example.MessagePathBenchmarks [archivo.json]
+public class MessagePathBenchmarks {
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(CodecBenchmark.class.getSimpleName())
+                .include(MessageBuildBenchmark.class.getSimpleName())
+                .include(HashBenchmark.class.getSimpleName())
+                .include(ProcessBenchmark.class.getSimpleName())
+                .include(RegisterAckBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class);
+        if (args.length > 0) { // Resultados en JSON para comparar entre versiones.
+            options.resultFormat(ResultFormatType.JSON).result(args[0]);
+        }
+        new Runner(options.build()).run();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,44 @@
+package org.example;
+
+import org.javatuples.Triplet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Decodificación de la información de los mensajes más frecuentes (DecoderEncoder.process*).
+// Uso: java -jar benchmarks/target/benchmarks.jar ProcessBenchmark -prof gc
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessBenchmark {
+    private Message request;
+    private Message result;
+    private Message ack;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] identifier = Utils.createIdentifier("localhost", 12345);
+        this.request = Message.buildRequest(identifier, OperationType.MUL, 1234, 5678);
+        this.result = Message.buildResult(identifier, 1234 * 5678, this.request.getHash());
+        this.ack = Message.buildAck(ProgramType.SERVER, identifier, this.request.getHash());
+    }
+
+    @Benchmark
+    public int processRequest() throws IOException {
+        return DecoderEncoder.processRequest(this.request);
+    }
+
+    @Benchmark
+    public Triplet<byte[], Integer, String> processResult() throws IOException {
+        return DecoderEncoder.processResult(this.result);
+    }
+
+    @Benchmark
+    public byte[] processAck() throws IOException {
+        return DecoderEncoder.processAck(this.ack);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,50 @@
+package org.example;
+
+import org.apache.logging.log4j.LogManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// MessageManager.registerAck con distintos números de mensajes esperando ACK: cada ACK recorre el conjunto
+// de pendientes, así que el costo crece con su tamaño (MAX_PENDING_ACKS lo limita en el despachador).
+// Uso: java -jar benchmarks/target/benchmarks.jar RegisterAckBenchmark -prof gc
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegisterAckBenchmark {
+    @Param({"1", "16", "256", "4096"})
+    public int pending;
+
+    private MessageManager messageManager;
+    private Message acked;
+    private byte[] unknownHash;
+
+    @Setup
+    public void setup() throws IOException {
+        this.messageManager = new MessageManager.ServerMessageManager(LogManager.getLogger(RegisterAckBenchmark.class), Integer.MAX_VALUE, 10, 1000, 1000);
+        byte[] identifier = Utils.createIdentifier("localhost", 12345);
+        // pending - 1 mensajes que siguen esperando, más el que se confirma en cada iteración.
+        for (int i = 1; i < this.pending; i++) {
+            this.messageManager.addMsgToWaitingForAckList(Message.buildRequest(identifier, OperationType.ADD, i, i));
+        }
+        this.acked = Message.buildRequest(identifier, OperationType.ADD, -1, -1);
+        this.unknownHash = Utils.sha256(new byte[]{42});
+    }
+
+    // ACK de un mensaje pendiente (se vuelve a añadir para que el tamaño se mantenga).
+    @Benchmark
+    public void registerAck() {
+        this.messageManager.addMsgToWaitingForAckList(this.acked);
+        this.messageManager.registerAck(this.acked.getHash());
+    }
+
+    // ACK repetido o tardío: el mensaje ya no está pendiente.
+    @Benchmark
+    public void registerUnknownAck() {
+        this.messageManager.registerAck(this.unknownHash);
+    }
+}
\ No newline at end of file
@@ -4,18 +4,26 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.javatuples.Pair;
 
-import java.io.*;
-import java.net.Socket;
+import java.io.IOException;
 
 public class CelulaServidor {
     private static final Logger LOGGER = LogManager.getLogger(CelulaServidor.class);
-    private static final ConfigReader.Config CONFIG = ConfigReader.readConfig(LOGGER);
-    private static final String HOST = "localhost";
-    private static byte[] identifier;
-    private static Socket socket;
-    private static final MessageManager.ServerMessageManager messageManager = new MessageManager.ServerMessageManager(LOGGER, CONFIG.MAX_PENDING_ACKS, CONFIG.SENDER_WAIT_MILIS);
+    // Estado de cada instancia: el arnés de carga inicia varios servidores en una JVM.
+    private final ConfigReader.Config CONFIG;
+    private CellConnection connection;
+    // Kernels de cálculo por lotes (vectoriales si la JVM tiene el módulo jdk.incubator.vector).
+    private final ComputeEngine computeEngine;
+    private final MessageManager.ServerMessageManager messageManager;
 
     public CelulaServidor() {
+        this(ConfigReader.readConfig(LOGGER));
+    }
+
+    public CelulaServidor(ConfigReader.Config config) {
+        this.CONFIG = config;
+        this.computeEngine = ComputeEngine.create(config.COMPUTE_VECTORIZED);
+        this.messageManager = new MessageManager.ServerMessageManager(LOGGER, config.MAX_PENDING_ACKS, config.SENDER_WAIT_MILIS, config.ACK_TIMEOUT_MILIS, config.CANCEL_WINDOW_MILIS,
+                new StreamAggregator(this.computeEngine::fold, config.STREAM_IDLE_MILIS), new KernelRegistry());
     }
 
     public static void main(String[] args) throws IOException, InterruptedException {
@@ -27,45 +35,40 @@ public class CelulaServidor {
         if (args.length < 1) {
             System.err.println("Usage: CelulaServidor");
         }
-        // Selecciona un nodo aleatorio de la configuración para conectarse.
-        Pair<String, Integer> node = Utils.getRandomNodePort(CONFIG.NODES);
-        String nodeHost = node.getValue0();
-        int nodePort = node.getValue1();
-
-        // Espera configurada antes de intentar la conexión.
-        Thread.sleep(CONFIG.CELL_CONN_DELAY_MILIS);
-
-        // Preparación para la identificación con el nodo.
-        socket = Utils.cellTryToCreateSocket(nodeHost, nodePort, CONFIG.CELL_CONN_DELAY_MILIS, LOGGER); // Intenta crear el socket con reintentos.
-        identifier = Utils.createIdentifier(HOST, socket.getLocalPort()); // Crea un identificador único para esta célula servidora.
-
-        DataOutputStream socketOutStream = new DataOutputStream(socket.getOutputStream());
-        DataInputStream socketInStream = new DataInputStream(socket.getInputStream());
+        // Sondea los nodos configurados (hasta que alguno esté listo) y elige el de menor latencia y carga.
+        Pair<String, Integer> node = NodeSelector.selectBestNode(CONFIG, LOGGER);
 
-        // Identificación entre la célula y el nodo.
-        // Construye y envía un mensaje de identificación al nodo.
-        Message identMsg = Message.buildIdentify(ProgramType.SERVER, identifier, ProgramType.NODE);
-        DecoderEncoder.writeMsg(socketOutStream, identMsg);
-        Message nodeIdentMsg = DecoderEncoder.readMsg(socketInStream); // Lee la respuesta de identificación del nodo.
-
-        // Verifica que el primer mensaje del nodo sea de identificación.
-        if (nodeIdentMsg.getNumServicio() != ServiceNumber.Identification) {
-            LOGGER.fatal("Número de servicio incorrecto, primer mensaje debió ser identificación: {}", nodeIdentMsg.getNumServicio().toString());
-            System.exit(1);
-        }
-        // Verifica que el nodo se identifique como tal.
-        if (DecoderEncoder.processIdentification(nodeIdentMsg) != ProgramType.NODE) {
-            LOGGER.fatal("Conexión a identidad distinta a 'nodo'");
+        // Conexión e identificación con el nodo (con reintentos).
+        try {
+            connection = CellConnection.connect(ProgramType.SERVER, node, CONFIG, LOGGER);
+        } catch (IOException e) {
+            LOGGER.fatal("Error en la identificación con el nodo: {}", e.getMessage());
             System.exit(1);
+            return;
         }
-        LOGGER.info("Conectado exitosamente a: {}:{}", HOST, node);
+        LOGGER.info("Conectado exitosamente a: {}", node);
+        LOGGER.info("Motor de cálculo {}", computeEngine.isVectorized() ? "vectorial" : "escalar");
+        String component = "servidor-" + Utils.byteArrayToHexString(connection.getIdentifier());
+        Metrics metrics = Metrics.start(component, CONFIG, LOGGER);
+        connection.registerMetrics(metrics, "principal");
+        messageManager.registerMetrics(metrics);
+        messageManager.setEventRing(EventRing.start(component, CONFIG, LOGGER, metrics));
+
+        // Reevalúa periódicamente los nodos y migra si aparece uno mejor.
+        NodeSelector.startMonitor(CONFIG, LOGGER, connection::getNode, (betterNode) -> {
+            try {
+                connection.switchTo(betterNode);
+            } catch (IOException e) {
+                LOGGER.error("No se pudo migrar al nodo {}: {}", betterNode, e.getMessage());
+            }
+        });
 
         // Inicia el hilo receptor para procesar mensajes entrantes.
-        new Thread(() -> messageManager.receiverLoop(identifier, socketInStream, socketOutStream, (v) -> {
+        new Thread(() -> messageManager.receiverLoop(connection, (v) -> {
             LOGGER.info(v); // Callback para mostrar resultados (el servidor solo haría log, pero nunca lo usa realmente).
             return null;
         }), "Server-receiverLoop").start();
         // Inicia el hilo despachador para enviar mensajes salientes.
-        new Thread(() -> messageManager.dispatcherLoop(identifier, socketOutStream), "Server-dispatcherLoop").start();
+        new Thread(() -> messageManager.dispatcherLoop(connection), "Server-dispatcherLoop").start();
     }
 }
\ No newline at end of file
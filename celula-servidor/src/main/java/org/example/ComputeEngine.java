@@ -0,0 +1,42 @@
+package org.example;
+
+// Motor de cálculo del servidor: reduce los fragmentos de los flujos. Usa la Vector API (jdk.incubator.vector) si el
+// módulo está cargado, es decir, si el servidor se lanzó con `--add-modules jdk.incubator.vector`; si no, o con
+// COMPUTE_VECTORIZED=false, usa el camino escalar. Ambos caminos dan exactamente los mismos resultados que
+// Aggregation.fold.
+public final class ComputeEngine {
+    // Implementación de los kernels (escalar o vectorial).
+    interface Kernels {
+        // Acumula `values` sobre `acc` con la misma semántica que Aggregation.fold.
+        long fold(Aggregation aggregation, long acc, int[] values);
+    }
+
+    private static final boolean VECTOR_MODULE_PRESENT = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private final Kernels kernels;
+    private final boolean vectorized;
+
+    private ComputeEngine(Kernels kernels, boolean vectorized) {
+        this.kernels = kernels;
+        this.vectorized = vectorized;
+    }
+
+    // Motor vectorial si se pide y el módulo está disponible; escalar en otro caso.
+    public static ComputeEngine create(boolean preferVectorized) {
+        if (preferVectorized && VECTOR_MODULE_PRESENT) return new ComputeEngine(new VectorKernels(), true);
+        return scalar();
+    }
+
+    public static ComputeEngine scalar() {
+        return new ComputeEngine(new ScalarKernels(), false);
+    }
+
+    public boolean isVectorized() {
+        return this.vectorized;
+    }
+
+    // Acumula los operandos de un fragmento de flujo (ver StreamAggregator.Folder).
+    public long fold(Aggregation aggregation, long acc, int[] values) {
+        return this.kernels.fold(aggregation, acc, values);
+    }
+}
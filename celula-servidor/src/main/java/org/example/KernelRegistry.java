@@ -0,0 +1,118 @@
+package org.example;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Kernels de las operaciones del registro (OperationRegistry). Cada operación puede tener un kernel por familia de
+// tipos, sobre arreglos primitivos para no envolver los operandos:
+// - LongKernel (INT y LONG): aritmética exacta; si el resultado no cabe en 64 bits lanza ArithmeticException y la
+//   operación se repite con el BigKernel (la promoción a BigInteger solo ocurre cuando hace falta).
+// - DoubleKernel (DOUBLE): aritmética IEEE 754 de Java.
+// - BigKernel (BIGINT, y promoción de INT/LONG).
+// Los errores del cálculo (división entre cero, módulo no positivo) se lanzan como RuntimeException, que nunca
+// es ArithmeticException para no confundirse con un desbordamiento.
+public final class KernelRegistry implements OperationEvaluator {
+    public interface LongKernel {
+        long apply(long[] operands);
+    }
+
+    public interface DoubleKernel {
+        double apply(double[] operands);
+    }
+
+    public interface BigKernel {
+        BigInteger apply(BigInteger[] operands);
+    }
+
+    private record Kernels(LongKernel longKernel, DoubleKernel doubleKernel, BigKernel bigKernel) {
+    }
+
+    private final Map<Short, Kernels> kernels = new ConcurrentHashMap<>();
+
+    public KernelRegistry() {
+        this.register(OperationRegistry.ADD, (v) -> Math.addExact(v[0], v[1]), (v) -> v[0] + v[1], (v) -> v[0].add(v[1]));
+        this.register(OperationRegistry.SUB, (v) -> Math.subtractExact(v[0], v[1]), (v) -> v[0] - v[1], (v) -> v[0].subtract(v[1]));
+        this.register(OperationRegistry.MUL, (v) -> Math.multiplyExact(v[0], v[1]), (v) -> v[0] * v[1], (v) -> v[0].multiply(v[1]));
+        this.register(OperationRegistry.DIV, (v) -> {
+            requireNonZero(v[1] == 0, v[0] + "/" + v[1]);
+            return Math.divideExact(v[0], v[1]); // Long.MIN_VALUE / -1 se desborda: se promueve.
+        }, (v) -> v[0] / v[1], (v) -> {
+            requireNonZero(v[1].signum() == 0, v[0] + "/" + v[1]);
+            return v[0].divide(v[1]);
+        });
+        this.register(OperationRegistry.MOD, (v) -> {
+            requireNonZero(v[1] == 0, v[0] + "%" + v[1]);
+            return v[0] % v[1];
+        }, null, (v) -> {
+            requireNonZero(v[1].signum() == 0, v[0] + "%" + v[1]);
+            return v[0].remainder(v[1]); // Mismo signo que `%` de Java.
+        });
+        this.register(OperationRegistry.MOD_POW, KernelRegistry::modPow, null, (v) -> {
+            if (v[2].signum() <= 0) throw new RuntimeException("Módulo no positivo: " + v[2]);
+            try {
+                return v[0].modPow(v[1], v[2]);
+            } catch (ArithmeticException e) { // Exponente negativo y base sin inverso.
+                throw new RuntimeException(e.getMessage());
+            }
+        });
+    }
+
+    // Registra (o reemplaza) los kernels de una operación; cualquiera puede ser null si no se soporta ese tipo.
+    public void register(Operation operation, LongKernel longKernel, DoubleKernel doubleKernel, BigKernel bigKernel) {
+        this.kernels.put(operation.id(), new Kernels(longKernel, doubleKernel, bigKernel));
+    }
+
+    @Override
+    public TypedValue evaluate(Operation operation, TypedOperands operands) {
+        Kernels kernels = this.kernels.get(operation.id());
+        if (kernels == null) throw new RuntimeException("Operación sin implementación: " + operation);
+        switch (operands.type()) {
+            case INT, LONG -> {
+                if (kernels.longKernel != null) {
+                    try {
+                        return TypedValue.ofLong(kernels.longKernel.apply(operands.longs()), operands.type() == NumericType.INT);
+                    } catch (ArithmeticException overflow) {
+                        // No cabe en 64 bits: se repite con BigInteger.
+                    }
+                }
+                return TypedValue.ofBig(this.big(kernels, operation).apply(operands.toBigs()), operands.type());
+            }
+            case DOUBLE -> {
+                if (kernels.doubleKernel == null) throw new RuntimeException(operation + " no acepta operandos DOUBLE");
+                return TypedValue.ofDouble(kernels.doubleKernel.apply(operands.doubles()));
+            }
+            case BIGINT -> {
+                return TypedValue.ofBig(this.big(kernels, operation).apply(operands.bigs()), NumericType.BIGINT);
+            }
+        }
+        throw new IllegalStateException("Tipo numérico desconocido: " + operands.type());
+    }
+
+    private BigKernel big(Kernels kernels, Operation operation) {
+        if (kernels.bigKernel == null) throw new RuntimeException(operation + " no acepta operandos BIGINT");
+        return kernels.bigKernel;
+    }
+
+    private static void requireNonZero(boolean isZero, String operation) {
+        if (isZero) throw new RuntimeException("División por cero: " + operation);
+    }
+
+    // Exponenciación modular con enteros de 64 bits por cuadrados sucesivos. Con módulos de hasta 31 bits los
+    // productos intermedios caben en un long; en otro caso (o con exponente negativo) se usa BigInteger.
+    private static long modPow(long[] v) {
+        long base = v[0];
+        long exponent = v[1];
+        long modulus = v[2];
+        if (modulus <= 0) throw new RuntimeException("Módulo no positivo: " + modulus);
+        if (exponent < 0 || modulus > Integer.MAX_VALUE) throw new ArithmeticException("Requiere BigInteger");
+        long result = 1 % modulus;
+        base = Math.floorMod(base, modulus);
+        while (exponent > 0) {
+            if ((exponent & 1) == 1) result = result * base % modulus;
+            base = base * base % modulus;
+            exponent >>= 1;
+        }
+        return result;
+    }
+}
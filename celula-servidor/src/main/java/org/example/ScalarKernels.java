@@ -0,0 +1,29 @@
+package org.example;
+
+// Kernels escalares: un elemento por iteración. Es el camino de respaldo y la referencia de los vectoriales.
+final class ScalarKernels implements ComputeEngine.Kernels {
+    @Override
+    public long fold(Aggregation aggregation, long acc, int[] values) {
+        return foldRange(aggregation, acc, values, 0, values.length);
+    }
+
+    // Acumula los elementos [from, to); también lo usan los kernels vectoriales para la cola del fragmento.
+    static long foldRange(Aggregation aggregation, long acc, int[] values, int from, int to) {
+        switch (aggregation) {
+            case SUM -> {
+                for (int i = from; i < to; i++) acc += values[i];
+            }
+            case PRODUCT -> {
+                for (int i = from; i < to; i++) acc *= values[i];
+            }
+            case MIN -> {
+                for (int i = from; i < to; i++) acc = Math.min(acc, values[i]);
+            }
+            case MAX -> {
+                for (int i = from; i < to; i++) acc = Math.max(acc, values[i]);
+            }
+            case COUNT -> acc += to - from;
+        }
+        return acc;
+    }
+}
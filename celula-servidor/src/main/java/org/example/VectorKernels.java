@@ -0,0 +1,49 @@
+package org.example;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Kernels con la Vector API: procesan IntVector.SPECIES_PREFERRED.length() elementos por iteración (8 con AVX2,
+// 16 con AVX-512) y los elementos que sobran al final con el kernel escalar.
+// Solo se carga esta clase si el módulo jdk.incubator.vector está disponible (ver ComputeEngine).
+final class VectorKernels implements ComputeEngine.Kernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // Mismo tamaño de vector en bits: cada IntVector se convierte en dos LongVector (partes 0 y 1).
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public long fold(Aggregation aggregation, long acc, int[] values) {
+        int upper = INTS.loopBound(values.length);
+        if (upper == 0 || aggregation == Aggregation.COUNT) return ScalarKernels.foldRange(aggregation, acc, values, 0, values.length);
+        int i = 0;
+        switch (aggregation) {
+            case SUM, PRODUCT -> {
+                // Se acumula en carriles de 64 bits, como el acumulador escalar (el producto se desborda igual:
+                // la multiplicación módulo 2^64 no depende del orden).
+                VectorOperators.Associative operator = aggregation == Aggregation.SUM ? VectorOperators.ADD : VectorOperators.MUL;
+                LongVector sums = LongVector.broadcast(LONGS, aggregation.identity());
+                for (; i < upper; i += INTS.length()) {
+                    IntVector v = IntVector.fromArray(INTS, values, i);
+                    sums = sums.lanewise(operator, (LongVector) v.convertShape(VectorOperators.I2L, LONGS, 0));
+                    sums = sums.lanewise(operator, (LongVector) v.convertShape(VectorOperators.I2L, LONGS, 1));
+                }
+                long reduced = sums.reduceLanes(operator);
+                acc = aggregation == Aggregation.SUM ? acc + reduced : acc * reduced;
+            }
+            case MIN, MAX -> {
+                VectorOperators.Associative operator = aggregation == Aggregation.MIN ? VectorOperators.MIN : VectorOperators.MAX;
+                IntVector extreme = IntVector.fromArray(INTS, values, 0);
+                for (i = INTS.length(); i < upper; i += INTS.length()) {
+                    extreme = extreme.lanewise(operator, IntVector.fromArray(INTS, values, i));
+                }
+                int reduced = extreme.reduceLanes(operator);
+                acc = aggregation == Aggregation.MIN ? Math.min(acc, reduced) : Math.max(acc, reduced);
+            }
+            default -> {
+            }
+        }
+        return ScalarKernels.foldRange(aggregation, acc, values, i, values.length);
+    }
+}
@@ -1,5 +1,7 @@
 package org.example;
 
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -7,32 +9,43 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.javatuples.Pair;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.Socket;
+import java.math.BigInteger;
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
 
 public class CelulaSolicitante extends Application {
     private static final Logger LOGGER = LogManager.getLogger(CelulaSolicitante.class);
     private static final ConfigReader.Config CONFIG = ConfigReader.readConfig(LOGGER);
-    private static final String HOST = "localhost";
-    private byte[] identifier;
-    private static final MessageManager.ClientMessageManager messageManager = new MessageManager.ClientMessageManager(LOGGER, CONFIG.MAX_PENDING_ACKS, CONFIG.SENDER_WAIT_MILIS);
+    private static final MessageManager.ClientMessageManager messageManager = new MessageManager.ClientMessageManager(LOGGER, CONFIG);
 
-    private Socket socket;
-    private DataOutputStream out;
-    private DataInputStream in;
+    private CellConnection connection;
 
     private Button[] operationButtons;
     private TextField operand1Field;
     private TextField operand2Field;
     private TextField resultArea;
     private Label warningArea;
+    private Label queueStatusArea;
+    private TextField streamValuesField;
+    private ComboBox<Aggregation> streamAggregationBox;
+    private Button streamButton;
+    private TextField expressionField;
+    private TextField expressionVariablesField;
+    private Button expressionButton;
+    private ComboBox<Operation> typedOperationBox;
+    private ComboBox<NumericType> typedTypeBox;
+    private TextField typedOperandsField;
+    private Button typedButton;
 
     @Override
     public void start(Stage primaryStage) {
@@ -48,6 +61,27 @@ public class CelulaSolicitante extends Application {
         operand2Field = new TextField();
         resultArea = new TextField();
         warningArea = new Label();
+        queueStatusArea = new Label();
+        streamValuesField = new TextField();
+        streamValuesField.setPromptText("1, 2, 3 ... o 1..1000000");
+        streamAggregationBox = new ComboBox<>();
+        streamAggregationBox.getItems().addAll(Aggregation.values());
+        streamAggregationBox.setValue(Aggregation.SUM);
+        streamButton = new Button("Reducir");
+        expressionField = new TextField();
+        expressionField.setPromptText("(a+b)*(c-d)/e");
+        expressionVariablesField = new TextField();
+        expressionVariablesField.setPromptText("a=1, b=2, ...");
+        expressionButton = new Button("Evaluar");
+        typedOperationBox = new ComboBox<>();
+        typedOperationBox.getItems().addAll(OperationRegistry.operations());
+        typedOperationBox.setValue(OperationRegistry.ADD);
+        typedTypeBox = new ComboBox<>();
+        typedTypeBox.getItems().addAll(NumericType.values());
+        typedTypeBox.setValue(NumericType.LONG);
+        typedOperandsField = new TextField();
+        typedOperandsField.setPromptText("2, 10, 1000");
+        typedButton = new Button("Calcular");
 
         resultArea.setEditable(false);
 
@@ -61,7 +95,29 @@ public class CelulaSolicitante extends Application {
         grid.addRow(2, new Label("Operando 2:"), operand2Field);
         grid.add(new Label("Resultado"), 0, 3, 2, 1);
         grid.add(resultArea, 0, 4, 2, 1);
-        grid.add(warningArea, 0, 6, 2, 1);
+        GridPane gridStream = new GridPane();
+        gridStream.setHgap(10);
+        gridStream.addRow(0, streamValuesField, streamAggregationBox, streamButton);
+        grid.addRow(5, new Label("Flujo:"), gridStream);
+        GridPane gridExpression = new GridPane();
+        gridExpression.setHgap(10);
+        gridExpression.addRow(0, expressionField, expressionVariablesField, expressionButton);
+        grid.addRow(6, new Label("Expresión:"), gridExpression);
+        GridPane gridTyped = new GridPane();
+        gridTyped.setHgap(10);
+        gridTyped.addRow(0, typedOperationBox, typedTypeBox, typedOperandsField, typedButton);
+        grid.addRow(7, new Label("Tipada:"), gridTyped);
+        grid.add(warningArea, 0, 8, 2, 1);
+        grid.add(queueStatusArea, 0, 9, 2, 1);
+
+        // Estado de la cola de envío (profundidad, espera y solicitudes rechazadas o descartadas).
+        Timeline queueStatusRefresh = new Timeline(new KeyFrame(Duration.millis(500), event -> {
+            MessageManager.ClientMessageManager.QueueStats stats = messageManager.getQueueStats();
+            queueStatusArea.setText(String.format("Cola: %d/%d, espera media %.1f ms (última %.1f ms), rechazadas %d, descartadas %d, agrupadas %d",
+                    stats.depth(), stats.capacity(), stats.averageWaitMilis(), stats.lastWaitMilis(), stats.rejected(), stats.shed(), stats.coalesced()));
+        }));
+        queueStatusRefresh.setCycleCount(Timeline.INDEFINITE);
+        queueStatusRefresh.play();
 
         Scene scene = new Scene(grid, 500, 400);
         primaryStage.setScene(scene);
@@ -70,6 +126,9 @@ public class CelulaSolicitante extends Application {
         for (Button btn : operationButtons) {
             btn.setDisable(true);
         }
+        streamButton.setDisable(true);
+        expressionButton.setDisable(true);
+        typedButton.setDisable(true);
 
         // Configurar conexión y listeners.
         setupConnection();
@@ -78,7 +137,7 @@ public class CelulaSolicitante extends Application {
         // Al cerrar la ventana.
         primaryStage.setOnCloseRequest(event -> {
             try {
-                if (socket != null) socket.close();
+                if (connection != null) connection.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -93,47 +152,68 @@ public class CelulaSolicitante extends Application {
             // Bucle de intentos de conexión.
             while (intentos < 11) {
                 try {
-                    // Retraso inicial.
-                    Thread.sleep(CONFIG.CELL_CONN_DELAY_MILIS);
-                    // Obtiene un nodo aleatorio para la conexión.
-                    Pair<String, Integer> node = Utils.getRandomNodePort(CONFIG.NODES);
-                    String nodeHost = node.getValue0();
-                    int nodePort = node.getValue1();
-
-                    LOGGER.info("Intento {}, conectando a {}:{}...", intentos, nodeHost, nodePort);
-                    this.socket = Utils.cellTryToCreateSocket(nodeHost, nodePort, CONFIG.CELL_CONN_DELAY_MILIS, LOGGER); // Intenta crear socket con reintentos.
-                    this.identifier = Utils.createIdentifier(HOST, this.socket.getLocalPort()); // Crea identificador para esta célula solicitante.
-                    this.out = new DataOutputStream(socket.getOutputStream());
-                    this.in = new DataInputStream(socket.getInputStream());
-
-                    // Identificarse y verificar la identificación del nodo.
-                    Message ident = Message.buildIdentify(ProgramType.SOLICITANT, identifier, ProgramType.NODE);
-                    DecoderEncoder.writeMsg(this.out, ident);
-
-                    Message response = DecoderEncoder.readMsg(this.in);
-                    // Valida que la respuesta sea una identificación de un nodo.
-                    if (response.getNumServicio() != ServiceNumber.Identification ||
-                            DecoderEncoder.processIdentification(response) != ProgramType.NODE) {
-                        LOGGER.fatal("Error de identificación del servidor: {}", response.getNumServicio());
-                        System.exit(1); // Termina si la identificación falla.
-                        return;
-                    }
+                    // Sondea los nodos (hasta que alguno esté listo) y elige el de menor latencia y carga.
+                    Pair<String, Integer> node = NodeSelector.selectBestNode(CONFIG, LOGGER);
+
+                    LOGGER.info("Intento {}, conectando a {}...", intentos, node);
+                    // Crea el socket con reintentos y realiza la identificación con el nodo.
+                    this.connection = CellConnection.connect(ProgramType.SOLICITANT, node, CONFIG, LOGGER);
 
                     CelulaSolicitante cel = this;
+                    CellConnection conn = this.connection;
                     // Hilo receptor de mensajes.
-                    new Thread(() -> messageManager.receiverLoop(identifier, in, out, cel::writeRes), "Client-receiverLoop").start();
+                    new Thread(() -> messageManager.receiverLoop(conn, cel::writeRes), "Client-receiverLoop").start();
                     // Hilo despachador de mensajes.
-                    new Thread(() -> messageManager.dispatcherLoop(identifier, out), "Client-dispatcherLoop").start();
+                    new Thread(() -> messageManager.dispatcherLoop(conn), "Client-dispatcherLoop").start();
+                    // Con cobertura, las solicitudes lentas se reenvían por una segunda conexión a otro nodo.
+                    CellConnection hedgeConn = null;
+                    if (CONFIG.HEDGE_ENABLED) {
+                        Pair<String, Integer> alternateNode = NodeSelector.selectAlternateNode(CONFIG, node);
+                        if (alternateNode != null) {
+                            hedgeConn = CellConnection.connect(ProgramType.SOLICITANT, alternateNode, CONFIG, LOGGER);
+                            CellConnection hedge = hedgeConn;
+                            new Thread(() -> messageManager.receiverLoop(hedge, cel::writeRes), "Client-hedgeReceiverLoop").start();
+                            LOGGER.info("Conexión de cobertura con el nodo {}", alternateNode);
+                        }
+                    }
+                    messageManager.startRequestTimer(conn, hedgeConn);
+                    // Reevalúa periódicamente los nodos y migra si aparece uno mejor.
+                    NodeSelector.startMonitor(CONFIG, LOGGER, conn::getNode, (betterNode) -> {
+                        try {
+                            conn.switchTo(betterNode);
+                        } catch (IOException e) {
+                            LOGGER.error("No se pudo migrar al nodo {}: {}", betterNode, e.getMessage());
+                        }
+                    });
+
+                    String component = "solicitante-" + Utils.byteArrayToHexString(conn.getIdentifier());
+                    Metrics metrics = Metrics.start(component, CONFIG, LOGGER);
+                    conn.registerMetrics(metrics, "principal");
+                    if (hedgeConn != null) hedgeConn.registerMetrics(metrics, "cobertura");
+                    messageManager.registerMetrics(metrics);
+                    messageManager.setEventRing(EventRing.start(component, CONFIG, LOGGER, metrics));
 
                     // Habilita los botones de operación en el hilo de la UI.
                     Platform.runLater(() -> {
                         for (Button btn : operationButtons)
                             btn.setDisable(false);
+                        streamButton.setDisable(false);
+                        expressionButton.setDisable(false);
+                        typedButton.setDisable(false);
                     });
                     LOGGER.info("Conexión a nodo establecida exitosamente!");
                     return; // Sale del bucle de intentos si la conexión es exitosa.
-                } catch (InterruptedException | IOException e) {
+                } catch (IOException e) {
+                    LOGGER.error("Error de conexión: {}", e.getMessage());
+                    try {
+                        // Espera antes del siguiente intento.
+                        Thread.sleep(CONFIG.CELL_CONN_DELAY_MILIS);
+                    } catch (InterruptedException ignored) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
                     LOGGER.error("Error de conexión: {}", e.getMessage());
+                    return;
                 } finally {
                     intentos += 1;
                 }
@@ -147,6 +227,134 @@ public class CelulaSolicitante extends Application {
         for (Button btn : operationButtons) {
             setupButtonEventHandler(btn);
         }
+        setupStreamEventHandler();
+        setupExpressionEventHandler();
+        setupTypedEventHandler();
+    }
+
+    // Operación del registro con operandos de un tipo numérico (INT, LONG, DOUBLE o BIGINT) separados por comas.
+    private void setupTypedEventHandler() {
+        typedButton.setOnAction(event -> new Thread(() -> {
+                    try {
+                        Operation operation = typedOperationBox.getValue();
+                        TypedOperands operands = parseTypedOperands(typedTypeBox.getValue(), typedOperandsField.getText());
+                        Message request = Message.buildTypedRequest(connection.getIdentifier(), operation, operands);
+                        messageManager.submitTyped(request).exceptionally((e) -> {
+                            LOGGER.warn("Solicitud no enviada: {}", e.getMessage());
+                            Platform.runLater(() -> this.warningArea.setText("Solicitud no enviada: " + e.getMessage()));
+                            return null;
+                        });
+                        LOGGER.info("Solicitud {} {} añadida a lista de salida: {}", operation, operands.type(), request);
+                        Platform.runLater(() -> this.warningArea.setText(""));
+                    } catch (NumberFormatException e) {
+                        String msg = "Los operandos deben ser números de tipo " + typedTypeBox.getValue();
+                        LOGGER.error(msg);
+                        Platform.runLater(() -> this.warningArea.setText(msg));
+                    } catch (IllegalArgumentException e) { // Número de operandos o tipo no aceptado por la operación.
+                        LOGGER.error(e.getMessage());
+                        Platform.runLater(() -> this.warningArea.setText(e.getMessage()));
+                    } catch (IOException e) {
+                        LOGGER.error("Error enviando solicitud: {}", e.getMessage());
+                    }
+                }).start()
+        );
+    }
+
+    private static TypedOperands parseTypedOperands(NumericType type, String text) {
+        String[] parts = text.trim().isEmpty() ? new String[0] : text.trim().split("[,\\s]+");
+        return switch (type) {
+            case INT -> TypedOperands.ofLongs(type, Arrays.stream(parts).mapToLong(Integer::parseInt).toArray());
+            case LONG -> TypedOperands.ofLongs(type, Arrays.stream(parts).mapToLong(Long::parseLong).toArray());
+            case DOUBLE -> TypedOperands.ofDoubles(Arrays.stream(parts).mapToDouble(Double::parseDouble).toArray());
+            case BIGINT -> TypedOperands.ofBigs(Arrays.stream(parts).map(BigInteger::new).toArray(BigInteger[]::new));
+        };
+    }
+
+    // Evalúa una expresión completa en una sola solicitud. Las variables se dan como `a=1, b=2`.
+    private void setupExpressionEventHandler() {
+        expressionButton.setOnAction(event -> new Thread(() -> {
+                    try {
+                        ExpressionPlan plan = ExpressionCompiler.compile(expressionField.getText(), CONFIG.EXPRESSION_OPTIMIZE);
+                        Map<String, Integer> assignments = parseVariables(expressionVariablesField.getText());
+                        int[] values = new int[plan.getVariableCount()];
+                        for (int i = 0; i < values.length; i++) {
+                            Integer value = assignments.get(plan.getVariables().get(i));
+                            if (value == null) throw new ParseException("Falta el valor de " + plan.getVariables().get(i), 0);
+                            values[i] = value;
+                        }
+                        LOGGER.info("Expresión compilada: {}", plan);
+                        Message request = Message.buildExpression(connection.getIdentifier(), plan, values);
+                        messageManager.submit(request).exceptionally((e) -> {
+                            LOGGER.warn("Solicitud no enviada: {}", e.getMessage());
+                            Platform.runLater(() -> this.warningArea.setText("Solicitud no enviada: " + e.getMessage()));
+                            return null;
+                        });
+                        Platform.runLater(() -> this.warningArea.setText(""));
+                    } catch (ParseException e) {
+                        String msg = "Expresión no válida: " + e.getMessage();
+                        LOGGER.error(msg);
+                        Platform.runLater(() -> this.warningArea.setText(msg));
+                    } catch (NumberFormatException e) {
+                        String msg = "Los valores de las variables deben ser números enteros";
+                        LOGGER.error(msg);
+                        Platform.runLater(() -> this.warningArea.setText(msg));
+                    } catch (IOException e) {
+                        LOGGER.error("Error enviando solicitud: {}", e.getMessage());
+                    }
+                }).start()
+        );
+    }
+
+    private static Map<String, Integer> parseVariables(String text) throws ParseException {
+        Map<String, Integer> assignments = new HashMap<>();
+        for (String assignment : text.split(",")) {
+            if (assignment.isBlank()) continue;
+            int eq = assignment.indexOf('=');
+            if (eq < 0) throw new ParseException("Se esperaba nombre=valor: " + assignment.trim(), 0);
+            assignments.put(assignment.substring(0, eq).trim(), Integer.parseInt(assignment.substring(eq + 1).trim()));
+        }
+        return assignments;
+    }
+
+    // Reduce una lista de operandos con un flujo (unos cuantos mensajes en lugar de una solicitud por operando).
+    // Acepta números separados por comas o espacios, o un rango `a..b`.
+    private void setupStreamEventHandler() {
+        streamButton.setOnAction(event -> new Thread(() -> {
+                    try {
+                        int[] values = parseStreamValues(streamValuesField.getText());
+                        Aggregation aggregation = streamAggregationBox.getValue();
+                        Platform.runLater(() -> this.warningArea.setText(""));
+                        messageManager.submitStream(connection.getIdentifier(), aggregation, values,
+                                        (partial) -> Platform.runLater(() -> this.warningArea.setText(
+                                                String.format("Flujo: %d fragmentos acumulados, parcial %d", partial.chunksFolded(), partial.value()))))
+                                .whenComplete((result, e) -> {
+                                    if (e != null) {
+                                        LOGGER.warn("Flujo no enviado: {}", e.getMessage());
+                                        Platform.runLater(() -> this.warningArea.setText("Flujo no enviado: " + e.getMessage()));
+                                        return;
+                                    }
+                                    Platform.runLater(() -> this.warningArea.setText(""));
+                                    writeRes(String.format("%s de %d operandos = %d", aggregation, result.count(), result.value()));
+                                });
+                    } catch (NumberFormatException e) {
+                        String msg = "Los operandos del flujo deben ser números enteros";
+                        LOGGER.error(msg);
+                        Platform.runLater(() -> this.warningArea.setText(msg));
+                    }
+                }).start()
+        );
+    }
+
+    private static int[] parseStreamValues(String text) {
+        String trimmed = text.trim();
+        int range = trimmed.indexOf("..");
+        if (range >= 0) {
+            int from = Integer.parseInt(trimmed.substring(0, range).trim());
+            int to = Integer.parseInt(trimmed.substring(range + 2).trim());
+            return IntStream.rangeClosed(from, to).toArray();
+        }
+        if (trimmed.isEmpty()) return new int[0];
+        return Arrays.stream(trimmed.split("[,\\s]+")).mapToInt(Integer::parseInt).toArray();
     }
 
     private void setupButtonEventHandler(Button btn) {
@@ -169,12 +377,20 @@ public class CelulaSolicitante extends Application {
                             return;
                         }
                         // Construye el mensaje de solicitud.
-                        Message request = Message.buildRequest(identifier, op, n1, n2);
-                        // Añade el mensaje a la cola de despacho.
-                        this.messageManager.addMsgToDispatchQueue(request);
-                        LOGGER.info("Solicitud añadida a lista de salida: {}", request);
-                        // Limpia advertencias en UI.
-                        Platform.runLater(() -> this.warningArea.setText(""));
+                        Message request = Message.buildRequest(connection.getIdentifier(), op, n1, n2);
+                        // Añade el mensaje a la cola de despacho (con la política BLOCK espera a que haya espacio).
+                        CompletableFuture<Integer> result = messageManager.submit(request);
+                        // Si la cola estaba llena o la solicitud se descartó, se avisa en la UI.
+                        result.exceptionally((e) -> {
+                            LOGGER.warn("Solicitud no enviada: {}", e.getMessage());
+                            Platform.runLater(() -> this.warningArea.setText("Solicitud no enviada: " + e.getMessage()));
+                            return null;
+                        });
+                        if (!result.isCompletedExceptionally()) {
+                            LOGGER.info("Solicitud añadida a lista de salida: {}", request);
+                            // Limpia advertencias en UI.
+                            Platform.runLater(() -> this.warningArea.setText(""));
+                        }
                     } catch (ParseException e) {
                         // Esto no debería ocurrir ya que las operaciones vienen de botones predefinidos.
                         String msg = "Operación no válida";
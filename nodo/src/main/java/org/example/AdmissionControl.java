@@ -0,0 +1,137 @@
+package org.example;
+
+import org.apache.logging.log4j.Logger;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Control de admisión de los mensajes que las células envían al nodo, aplicado en el hilo lector de cada conexión.
+// Cada conexión de célula tiene dos cubetas de fichas (solicitudes y mensajes de datos) y además todas comparten el
+// presupuesto global del nodo. Al exceder un límite, el nodo retrasa la lectura (DELAY: la célula queda frenada por
+// el control de flujo de TCP) o descarta el mensaje y responde con Busy (REJECT).
+// Solo se limitan los mensajes de datos (Priority.DATA): ACKs, cancelaciones y demás mensajes de control, y los
+// resultados de los servidores, se reenvían siempre. Un ACK rechazado se perdería (la célula no puede asociar el
+// Busy a un mensaje que no espera ACK) y provocaría retransmisiones justo cuando el nodo está saturado.
+// Los mensajes que llegan de otros nodos ya fueron admitidos por el nodo de entrada y no se limitan.
+public class AdmissionControl {
+    // Contadores por identificador de célula, para encontrar células abusivas.
+    public static final class SenderStats {
+        public final LongAdder admitted = new LongAdder();
+        public final LongAdder delayed = new LongAdder();
+        public final LongAdder rejected = new LongAdder();
+        public final LongAdder delayedNanos = new LongAdder(); // Tiempo total que se retrasó la lectura.
+        private long lastAdmitted;
+        private long lastDelayed;
+        private long lastRejected;
+    }
+
+    // Cubetas de una conexión de célula.
+    private record ConnectionBuckets(TokenBucket requests, TokenBucket messages) {
+    }
+
+    private final Logger LOGGER;
+    private final AdmissionOverflow overflow;
+    private final ConfigReader.Config config;
+    private final TokenBucket nodeBucket; // Presupuesto global del nodo; null si no hay límite.
+    private final Map<ConnectionHandler.Connection, ConnectionBuckets> buckets = new ConcurrentHashMap<>();
+    private final Map<ByteBuffer, SenderStats> statsBySender = new ConcurrentHashMap<>();
+
+    public AdmissionControl(Logger logger, ConfigReader.Config config) {
+        this.LOGGER = logger;
+        this.config = config;
+        this.overflow = config.ADMISSION_OVERFLOW;
+        this.nodeBucket = config.NODE_MSG_RATE > 0 ? new TokenBucket(config.NODE_MSG_RATE, config.NODE_MSG_BURST) : null;
+        if (config.ADMISSION_STATS_INTERVAL_MILIS > 0) {
+            Thread statsThread = new Thread(() -> statsLoop(config.ADMISSION_STATS_INTERVAL_MILIS), "admissionStatsThread");
+            statsThread.setDaemon(true);
+            statsThread.start();
+        }
+    }
+
+    // Decide si se reenvía un mensaje recibido de una célula. Con DELAY bloquea hasta que haya fichas y siempre
+    // lo admite; con REJECT devuelve la espera sugerida (ms) si se rechaza. Devuelve 0 si el mensaje se admite.
+    public int admit(ConnectionHandler.Connection conn, Message msg) throws InterruptedIOException {
+        if (Priority.of(msg.getNumServicio()) != Priority.DATA) return 0;
+        SenderStats stats = this.statsBySender.computeIfAbsent(ByteBuffer.wrap(conn.getPeerIdentifier()), (k) -> new SenderStats());
+        ConnectionBuckets connBuckets = this.buckets.computeIfAbsent(conn, (k) -> new ConnectionBuckets(
+                this.config.CELL_REQUEST_RATE > 0 ? new TokenBucket(this.config.CELL_REQUEST_RATE, this.config.CELL_REQUEST_BURST) : null,
+                this.config.CELL_MSG_RATE > 0 ? new TokenBucket(this.config.CELL_MSG_RATE, this.config.CELL_MSG_BURST) : null));
+        // Los fragmentos de un flujo no consumen de la cubeta de solicitudes (la apertura ya cuenta como solicitud);
+        // todos los mensajes de datos consumen de las demás.
+        TokenBucket[] applicable = {
+                msg.getNumServicio() != ServiceNumber.StreamChunk ? connBuckets.requests : null,
+                connBuckets.messages,
+                this.nodeBucket
+        };
+        if (this.overflow == AdmissionOverflow.DELAY) {
+            long waitNanos = 0;
+            for (TokenBucket bucket : applicable) {
+                if (bucket != null) waitNanos = Math.max(waitNanos, bucket.reserve());
+            }
+            if (waitNanos > 0) {
+                stats.delayed.increment();
+                stats.delayedNanos.add(waitNanos);
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Lectura interrumpida durante el control de admisión");
+                }
+            }
+            stats.admitted.increment();
+            return 0;
+        }
+
+        for (int i = 0; i < applicable.length; i++) {
+            if (applicable[i] == null || applicable[i].tryAcquire()) continue;
+            // Rechazado: se devuelven las fichas ya tomadas de las otras cubetas.
+            for (int j = 0; j < i; j++) {
+                if (applicable[j] != null) applicable[j].refund();
+            }
+            stats.rejected.increment();
+            return (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(applicable[i].nanosUntilAvailable()));
+        }
+        stats.admitted.increment();
+        return 0;
+    }
+
+    // Libera las cubetas de una conexión cerrada (los contadores por célula se conservan).
+    public void forget(ConnectionHandler.Connection conn) {
+        this.buckets.remove(conn);
+    }
+
+    public Map<ByteBuffer, SenderStats> getStatsBySender() {
+        return this.statsBySender;
+    }
+
+    // Registra periódicamente los contadores de las células que enviaron mensajes en el último periodo.
+    private void statsLoop(int intervalMilis) {
+        while (true) {
+            try {
+                Thread.sleep(intervalMilis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (Map.Entry<ByteBuffer, SenderStats> entry : this.statsBySender.entrySet()) {
+                SenderStats stats = entry.getValue();
+                long admitted = stats.admitted.sum();
+                long delayed = stats.delayed.sum();
+                long rejected = stats.rejected.sum();
+                if (admitted == stats.lastAdmitted && delayed == stats.lastDelayed && rejected == stats.lastRejected)
+                    continue;
+                LOGGER.info("Admisión célula {}: admitidos {} (+{}), retrasados {} (+{}, {}ms en total), rechazados {} (+{})",
+                        Utils.byteArrayToHexString(entry.getKey().array()),
+                        admitted, admitted - stats.lastAdmitted,
+                        delayed, delayed - stats.lastDelayed, TimeUnit.NANOSECONDS.toMillis(stats.delayedNanos.sum()),
+                        rejected, rejected - stats.lastRejected);
+                stats.lastAdmitted = admitted;
+                stats.lastDelayed = delayed;
+                stats.lastRejected = rejected;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Lee en orden los registros de una captura escrita por CaptureWriter.
+public class CaptureReader implements Closeable {
+    // Un registro de la captura. En IN/OUT `payload` es el mensaje serializado (ver `message`).
+    public record Entry(byte type, long nanos, int connectionId, byte[] payload) {
+        public Message message() throws IOException {
+            return DecoderEncoder.decode(this.payload, 0);
+        }
+
+        // Tipo de programa al otro lado de la conexión (solo en OPEN).
+        public ProgramType programType() {
+            short value = (short) (((this.payload[0] & 0xFF) << 8) | (this.payload[1] & 0xFF));
+            return ProgramType.fromShort(value).orElseThrow(() -> new IllegalStateException("Unexpected program type: " + value));
+        }
+
+        // Identificador de la entidad al otro lado de la conexión (solo en OPEN).
+        public byte[] peerIdentifier() {
+            byte[] identifier = new byte[this.payload.length - 2];
+            System.arraycopy(this.payload, 2, identifier, 0, identifier.length);
+            return identifier;
+        }
+    }
+
+    private final DataInputStream in;
+    private final long startEpochMillis;
+
+    public CaptureReader(Path path) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(path.toFile()), 1 << 16));
+        if (this.in.readInt() != CaptureWriter.MAGIC) throw new IOException("No es un archivo de captura: " + path);
+        short version = this.in.readShort();
+        if (version != CaptureWriter.VERSION) throw new IOException("Versión de captura no soportada: " + version);
+        this.startEpochMillis = this.in.readLong();
+    }
+
+    public long getStartEpochMillis() {
+        return this.startEpochMillis;
+    }
+
+    // Siguiente registro, o null al final de la captura.
+    public Entry next() throws IOException {
+        byte type;
+        try {
+            type = this.in.readByte();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (type == 0) return null;
+        long nanos = this.in.readLong();
+        int connectionId = this.in.readInt();
+        byte[] payload = new byte[this.in.readInt()];
+        this.in.readFully(payload);
+        return new Entry(type, nanos, connectionId, payload);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Captura del tráfico de un nodo (CAPTURE_FILE) para reproducirlo después (ver CaptureReader).
+// Se escribe en segmentos del archivo mapeados en memoria: cada registro es una copia a memoria y el sistema
+// operativo lo lleva al disco, así que el hilo que lee o envía el mensaje no espera la escritura.
+// Formato (big-endian):
+// - Encabezado: MAGIC (int), VERSION (short), inicio de la captura en ms desde la época (long).
+// - Registros: tipo (byte), ns desde el inicio (long), id de conexión (int), longitud (int) y contenido:
+//     OPEN: tipo de programa al otro lado (short) e identificador (8 bytes).
+//     IN/OUT: el mensaje en el formato de DecoderEncoder.writeMsg.
+// Un tipo 0 marca el final (el resto del último segmento está en ceros si el nodo no cerró la captura).
+public class CaptureWriter implements Closeable {
+    static final int MAGIC = 0x43415054; // "CAPT"
+    static final short VERSION = 1;
+    static final int RECORD_HEADER_BYTES = 17;
+    // Tipos de registro.
+    public static final byte OPEN = 1; // Nueva conexión.
+    public static final byte IN = 2;   // Mensaje leído por el nodo.
+    public static final byte OUT = 3;  // Mensaje enviado por el nodo.
+
+    private final FileChannel channel;
+    private final int segmentBytes;
+    private final long startNanos = System.nanoTime();
+    private MappedByteBuffer segment;
+    private long segmentStart; // Posición del segmento actual en el archivo.
+    private boolean closed;
+    private boolean failed; // No se pudo mapear otro segmento: se deja de capturar, pero close() aún recorta y cierra.
+
+    public CaptureWriter(Path path, int segmentBytes) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.segmentBytes = segmentBytes;
+        this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        this.segment.putInt(MAGIC);
+        this.segment.putShort(VERSION);
+        this.segment.putLong(System.currentTimeMillis());
+    }
+
+    public synchronized void open(int connectionId, ProgramType programType, byte[] peerIdentifier) {
+        if (!this.begin(OPEN, connectionId, 2 + peerIdentifier.length)) return;
+        this.segment.putShort(programType.toShort());
+        this.segment.put(peerIdentifier);
+    }
+
+    public synchronized void frame(byte direction, int connectionId, Message msg) {
+        int length = DecoderEncoder.frameLength(msg);
+        if (!this.begin(direction, connectionId, length)) return;
+        // Sobre una vista del tamaño reservado: si la traza del mensaje gana saltos mientras tanto, no se escriben.
+        DecoderEncoder.writeMsg(this.segment.slice(this.segment.position(), length), msg);
+        this.segment.position(this.segment.position() + length);
+    }
+
+    // Mensaje ya serializado (ver DecoderEncoder.encode).
+    public synchronized void frame(byte direction, int connectionId, byte[] frame) {
+        if (!this.begin(direction, connectionId, frame.length)) return;
+        this.segment.put(frame);
+    }
+
+    // Escribe el encabezado del registro, mapeando otro segmento si no cabe en el actual.
+    private boolean begin(byte type, int connectionId, int length) {
+        if (this.closed || this.failed) return false;
+        int recordBytes = RECORD_HEADER_BYTES + length;
+        // Se deja al menos un byte para el tipo 0 que marca el final.
+        if (this.segment.remaining() < recordBytes + 1) {
+            long position = this.segmentStart + this.segment.position();
+            try {
+                this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(this.segmentBytes, recordBytes + 1));
+            } catch (IOException e) {
+                this.failed = true; // Sin espacio en disco, p. ej.: se deja de capturar sin afectar al nodo.
+                return false;
+            }
+            this.segmentStart = position;
+        }
+        this.segment.put(type);
+        this.segment.putLong(System.nanoTime() - this.startNanos);
+        this.segment.putInt(connectionId);
+        this.segment.putInt(length);
+        return true;
+    }
+
+    // Lleva al disco lo capturado y recorta el archivo a lo escrito.
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) return;
+        this.closed = true;
+        long length = this.segmentStart + this.segment.position();
+        this.segment.force();
+        this.channel.truncate(length);
+        this.channel.close();
+    }
+}
\ No newline at end of file
@@ -5,86 +5,295 @@ import org.apache.logging.log4j.Logger;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 // Gestiona las conexiones activas, separando entre nodos y clientes (células).
-public class ConnectionHandler {
+// Reacciona a los eventos de membresía: al caer un miembro se cierra la conexión con él.
+public class ConnectionHandler implements Membership.Listener {
     private final Logger LOGGER;
+    private final byte[] identifier; // Identificador de este nodo.
     private final Set<Connection> nodeConnections;
     private final Set<Connection> clientConnections;
+    // Conexión vigente con cada nodo vecino, por identificador (ByteBuffer para comparar por contenido).
+    private final Map<ByteBuffer, Connection> nodeConnectionsById;
+    // Confiabilidad salto a salto entre nodos; null si está deshabilitada (LINK_RELIABILITY=false).
+    private volatile LinkReliability linkReliability;
+    // Hilos que escriben los mensajes reenviados (sendToClients/sendToNodes).
+    private final ForwardingEngine forwardingEngine;
+    private final Metrics metrics; // Tráfico de cada conexión abierta y estado del reenvío.
 
-    public ConnectionHandler(Logger logger) {
+    public ConnectionHandler(Logger logger, byte[] identifier, ConfigReader.Config config, Metrics metrics) {
         this.LOGGER = logger;
+        this.identifier = identifier;
         // Conjuntos concurrentes para almacenar conexiones a otros nodos y a clientes.
         this.nodeConnections = ConcurrentHashMap.newKeySet();
         this.clientConnections = ConcurrentHashMap.newKeySet();
+        this.nodeConnectionsById = new ConcurrentHashMap<>();
+        this.forwardingEngine = new ForwardingEngine(logger, this::write, config);
+        this.metrics = metrics;
+        this.forwardingEngine.registerMetrics(metrics);
+        metrics.gauge("connections", "Conexiones abiertas", this.nodeConnections::size, "type", "node");
+        metrics.gauge("connections", "Conexiones abiertas", this.clientConnections::size, "type", "cell");
     }
 
     // Envía un mensaje a todas las conexiones de clientes (células servidoras/solicitantes).
+    // El mensaje se serializa una sola vez y se encola en el shard de reenvío de cada destino.
     public void sendToClients(Message msg) throws IOException {
+        if (this.clientConnections.isEmpty()) return;
+        byte[] frame = DecoderEncoder.encode(msg);
         for (Connection conn : this.clientConnections) {
-            conn.sendMsg(msg);
+            this.forwardingEngine.submit(conn, msg, frame);
         }
     }
 
     // Envía un mensaje a todas las conexiones de nodos.
     public void sendToNodes(Message msg) throws IOException {
+        sendToNodesExcept(null, msg);
+    }
+
+    // Envía un mensaje a todas las conexiones de nodos excepto a `except` (de donde llegó el mensaje).
+    public void sendToNodesExcept(Connection except, Message msg) throws IOException {
+        if (this.nodeConnections.isEmpty()) return;
+        // Con confiabilidad de enlace cada destino recibe su propio LinkData: no hay serialización compartida.
+        byte[] frame = this.linkReliability == null ? DecoderEncoder.encode(msg) : null;
         for (Connection conn : this.nodeConnections) {
-            conn.sendMsg(msg);
+            if (conn != except) this.forwardingEngine.submit(conn, msg, frame);
         }
     }
 
+    // Escritura efectiva, en el hilo del shard del destino. Hacia otros nodos, con acuse y retransmisión si la
+    // confiabilidad de enlace está habilitada.
+    private void write(Connection destination, Message msg, byte[] frame) throws IOException {
+        LinkReliability reliability = this.linkReliability;
+        if (destination.type == ProgramType.NODE && reliability != null) reliability.send(destination, msg);
+        else destination.sendFrame(msg, frame);
+    }
+
+    public ForwardingEngine getForwardingEngine() {
+        return this.forwardingEngine;
+    }
+
+    public void setLinkReliability(LinkReliability linkReliability) {
+        this.linkReliability = linkReliability;
+    }
+
+    // Número de células conectadas; es la carga que el nodo reporta en los pings.
+    public int getClientCount() {
+        return this.clientConnections.size();
+    }
+
     // Añade una nueva conexión, clasificándola como NODO o CLIENTE.
-    public void addConnection(Connection conn) {
+    // Si dos nodos se conectan entre sí al mismo tiempo, ambos conservan la conexión iniciada por el nodo
+    // de menor identificador y cierran la otra. Devuelve false si la nueva conexión fue descartada.
+    public synchronized boolean addConnection(Connection conn) {
         switch (conn.type) {
-            case NODE -> this.nodeConnections.add(conn);
+            case NODE -> {
+                ByteBuffer peerId = ByteBuffer.wrap(conn.peerIdentifier);
+                Connection existing = this.nodeConnectionsById.get(peerId);
+                if (existing != null && !conn.supersedes(existing, this.identifier)) {
+                    LOGGER.debug("Conexión duplicada con nodo {} descartada", Utils.byteArrayToHexString(conn.peerIdentifier));
+                    conn.closeQuietly();
+                    return false;
+                }
+                if (existing != null) {
+                    LOGGER.debug("Conexión duplicada con nodo {} reemplazada", Utils.byteArrayToHexString(conn.peerIdentifier));
+                    this.nodeConnections.remove(existing);
+                    existing.unregisterMetrics(this.metrics);
+                    existing.closeQuietly();
+                }
+                this.nodeConnectionsById.put(peerId, conn);
+                this.nodeConnections.add(conn);
+            }
             default ->
                     this.clientConnections.add(conn); // Células Servidoras y Solicitantes se tratan como clientes del nodo.
         }
+        conn.registerMetrics(this.metrics);
         LOGGER.debug("Nueva conexión de tipo: {}", conn.type);
+        return true;
     }
 
     // Elimina una conexión.
-    public void removeConnection(Connection conn) {
+    public synchronized void removeConnection(Connection conn) {
         switch (conn.type) {
-            case NODE -> this.nodeConnections.remove(conn);
+            case NODE -> {
+                this.nodeConnections.remove(conn);
+                // Solo se elimina si sigue siendo la conexión vigente con ese nodo (pudo haber sido reemplazada).
+                this.nodeConnectionsById.remove(ByteBuffer.wrap(conn.peerIdentifier), conn);
+                this.notifyAll(); // Despierta a los hilos que esperan para reconectar.
+            }
             default -> this.clientConnections.remove(conn);
         }
-        LOGGER.debug("Conexión eliminada ({}) de tipo: {}", conn.socket.getPort(), conn.type);
+        conn.unregisterMetrics(this.metrics);
+        LOGGER.debug("Conexión eliminada ({}) de tipo: {}", conn.transport, conn.type);
+    }
+
+    // Conexiones con otros nodos (vista concurrente, para latidos y propagación de miembros).
+    public Set<Connection> getNodeConnections() {
+        return this.nodeConnections;
+    }
+
+    // Conexión vigente con el nodo indicado, o null si no hay.
+    public Connection getNodeConnection(byte[] peerIdentifier) {
+        return this.nodeConnectionsById.get(ByteBuffer.wrap(peerIdentifier));
+    }
+
+    public boolean hasNodeConnection(byte[] peerIdentifier) {
+        return this.nodeConnectionsById.containsKey(ByteBuffer.wrap(peerIdentifier));
+    }
+
+    @Override
+    public void memberUp(Membership.Member member) {
+        LOGGER.debug("Miembro activo con conexión: {}", member.getAddress());
+    }
+
+    // Un miembro caído deja de recibir tráfico: se elimina y cierra su conexión (si queda alguna).
+    @Override
+    public void memberDown(Membership.Member member) {
+        closeNodeConnection(member.getIdentifier());
+    }
+
+    // Elimina y cierra la conexión con el nodo indicado, si hay alguna.
+    public void closeNodeConnection(byte[] peerIdentifier) {
+        Connection conn = this.nodeConnectionsById.get(ByteBuffer.wrap(peerIdentifier));
+        if (conn == null) return;
+        removeConnection(conn);
+        conn.closeQuietly();
+    }
+
+    // Bloquea mientras exista una conexión con el nodo indicado.
+    public synchronized void awaitNodeDisconnected(byte[] peerIdentifier) throws InterruptedException {
+        ByteBuffer peerId = ByteBuffer.wrap(peerIdentifier);
+        while (this.nodeConnectionsById.containsKey(peerId)) {
+            this.wait();
+        }
     }
 
     // Clase interna que representa una conexión individual.
     public static final class Connection {
+        private static final AtomicInteger nextId = new AtomicInteger();
+        private final int id = nextId.incrementAndGet(); // Identifica la conexión en la captura de tráfico.
         private final ProgramType type; // Tipo de entidad al otro lado (NODO, SERVIDOR, SOLICITANTE).
-        private final Socket socket;
+        private final byte[] peerIdentifier; // Identificador de la entidad al otro lado.
+        private final boolean outbound; // true si este nodo inició la conexión.
+        private final Transport transport;
         private final DataOutputStream dataOutputStream; // Stream de salida para esta conexión.
         private final DataInputStream dataInputStream;   // Stream de entrada para esta conexión.
+        private volatile long lastReceivedNanos = System.nanoTime(); // Último mensaje recibido (para los latidos).
+        private volatile CaptureWriter capture; // null si no se captura el tráfico (CAPTURE_FILE vacío).
+        private final LongAdder framesSent = new LongAdder();
+        private final LongAdder framesReceived = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
 
-        public Connection(ProgramType programType, Socket socket, DataInputStream dis, DataOutputStream dos) throws IOException {
+        public Connection(ProgramType programType, byte[] peerIdentifier, boolean outbound, Transport transport) {
             this.type = programType;
-            this.socket = socket;
-            this.dataInputStream = dis;
-            this.dataOutputStream = dos;
+            this.peerIdentifier = peerIdentifier;
+            this.outbound = outbound;
+            this.transport = transport;
+            this.dataInputStream = transport.input();
+            this.dataOutputStream = transport.output();
+        }
+
+        // Decide si esta conexión debe reemplazar a `existing` (ambas con el mismo nodo).
+        // Se conserva la iniciada por el nodo de menor identificador; si ambas las inició el mismo nodo,
+        // la nueva reemplaza a la anterior (reconexión antes de detectar la caída de la vieja).
+        private boolean supersedes(Connection existing, byte[] localIdentifier) {
+            if (this.outbound == existing.outbound) return true;
+            byte[] thisDialer = this.outbound ? localIdentifier : this.peerIdentifier;
+            byte[] existingDialer = existing.outbound ? localIdentifier : existing.peerIdentifier;
+            return Arrays.compareUnsigned(thisDialer, existingDialer) < 0;
         }
 
-        // Envía un mensaje a través de esta conexión.
-        public void sendMsg(Message msg) throws IOException {
+        // Envía un mensaje a través de esta conexión y vacía el stream.
+        // Sincronizado porque escriben varios hilos (reenvío desde otras conexiones y latidos).
+        public synchronized void sendMsg(Message msg) throws IOException {
             DecoderEncoder.writeMsg(this.dataOutputStream, msg);
+            this.dataOutputStream.flush();
+            this.framesSent.increment();
+            this.bytesSent.add(DecoderEncoder.frameLength(msg));
+            CaptureWriter capture = this.capture;
+            if (capture != null) capture.frame(CaptureWriter.OUT, this.id, msg);
+        }
+
+        // Envía un mensaje ya serializado (`frame`, ver DecoderEncoder.encode) sin vaciar el stream: el shard de
+        // reenvío llama a `flush` al terminar su lote (ver ForwardingEngine).
+        public synchronized void sendFrame(Message msg, byte[] frame) throws IOException {
+            FlightEvents.FrameWrite event = new FlightEvents.FrameWrite();
+            event.begin();
+            this.dataOutputStream.write(frame);
+            event.commit(msg);
+            this.framesSent.increment();
+            this.bytesSent.add(frame.length);
+            CaptureWriter capture = this.capture;
+            if (capture != null) capture.frame(CaptureWriter.OUT, this.id, frame);
+        }
+
+        public synchronized void flush() throws IOException {
+            this.dataOutputStream.flush();
         }
 
         // Lee un mensaje de esta conexión.
         public Message readMsg() throws IOException {
-            return DecoderEncoder.readMsg(this.dataInputStream);
+            Message msg = DecoderEncoder.readMsg(this.dataInputStream);
+            this.lastReceivedNanos = System.nanoTime();
+            this.framesReceived.increment();
+            this.bytesReceived.add(DecoderEncoder.frameLength(msg));
+            CaptureWriter capture = this.capture;
+            if (capture != null) capture.frame(CaptureWriter.IN, this.id, msg);
+            return msg;
+        }
+
+        // Empieza a capturar los mensajes de esta conexión, registrando primero con quién es.
+        public void setCapture(CaptureWriter capture) {
+            capture.open(this.id, this.type, this.peerIdentifier);
+            this.capture = capture;
+        }
+
+        // Etiquetas de las series de esta conexión: id (el de la captura), tipo e identificador de la entidad al otro lado.
+        private String[] metricLabels() {
+            return new String[]{"connection", String.valueOf(this.id), "type", this.type.name(), "peer", Utils.byteArrayToHexString(this.peerIdentifier)};
+        }
+
+        private void registerMetrics(Metrics metrics) {
+            String[] labels = this.metricLabels();
+            metrics.counter("frames_sent_total", "Mensajes enviados", this.framesSent::sum, labels);
+            metrics.counter("frames_received_total", "Mensajes recibidos", this.framesReceived::sum, labels);
+            metrics.counter("bytes_sent_total", "Bytes enviados", this.bytesSent::sum, labels);
+            metrics.counter("bytes_received_total", "Bytes recibidos", this.bytesReceived::sum, labels);
+        }
+
+        private void unregisterMetrics(Metrics metrics) {
+            metrics.removeSeries(this.metricLabels());
+        }
+
+        // Tiempo sin recibir mensajes por esta conexión.
+        public long idleNanos() {
+            return System.nanoTime() - this.lastReceivedNanos;
         }
 
         public void closeSocket() throws IOException {
-            this.socket.close();
+            this.transport.close();
+        }
+
+        private void closeQuietly() {
+            try {
+                this.transport.close();
+            } catch (IOException ignored) {
+            }
         }
 
         public ProgramType getType() {
             return this.type;
         }
+
+        public byte[] getPeerIdentifier() {
+            return this.peerIdentifier;
+        }
     }
-}
\ No newline at end of file
+}
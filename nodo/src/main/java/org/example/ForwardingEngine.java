@@ -0,0 +1,204 @@
+package org.example;
+
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Etapa de reenvío del nodo: N hilos (shards), por defecto uno por núcleo, que escriben los mensajes reenviados.
+// Cada destino se asigna siempre al mismo shard según su identificador, así que el orden por destino (dentro de
+// cada clase de prioridad) se conserva mientras la serialización y escritura hacia distintos destinos ocurre en
+// paralelo. Los hilos lectores de las conexiones solo leen, deciden a dónde va el mensaje y lo encolan: una conexión
+// muy activa ya no ocupa un solo núcleo con todas las escrituras de su difusión.
+// Cada shard tiene un carril por clase de prioridad (ver Priority): los acuses y mensajes de control no esperan
+// detrás de una acumulación de solicitudes hacia el mismo destino.
+public class ForwardingEngine {
+    // Escritura de un mensaje hacia un destino (la define ConnectionHandler).
+    public interface Writer {
+        void write(ConnectionHandler.Connection destination, Message msg, byte[] frame) throws IOException;
+    }
+
+    // Mensaje pendiente de escribir. `frame` es el mensaje ya serializado, compartido entre todos los destinos
+    // de una misma difusión para serializar una sola vez.
+    private record Forward(ConnectionHandler.Connection destination, Message msg, byte[] frame) {
+    }
+
+    private final Logger LOGGER;
+    private final Writer writer;
+    private final Shard[] shards;
+    // Solicitudes canceladas por los clientes ((solicitante, hash) -> instante): sus copias en cola o por llegar no se
+    // reenvían. La clave incluye al solicitante: la solicitud idéntica de otra célula tiene el mismo hash.
+    private final Map<Pair<ByteBuffer, ByteBuffer>, Long> cancelledRequests = new ConcurrentHashMap<>();
+    private final long cancelWindowNanos;
+    private final AtomicLong cancelledDrops = new AtomicLong();
+
+    private final class Shard implements Runnable {
+        private final int index;
+        private final PriorityLanes<Forward> queue;
+        private final AtomicLong forwarded = new AtomicLong(); // Mensajes escritos.
+        private final AtomicLong failed = new AtomicLong();    // Escrituras fallidas.
+        private long lastForwarded; // Para calcular el rendimiento entre registros de estadísticas.
+        private final int flushEvery;
+
+        Shard(int index, ConfigReader.Config config) {
+            this.index = index;
+            this.queue = new PriorityLanes<>(config, Math.max(1, config.FORWARD_QUEUE_CAPACITY));
+            this.flushEvery = Math.max(1, config.FORWARD_FLUSH_EVERY);
+        }
+
+        // Las tramas se escriben en el búfer de cada destino sin vaciarlo; cuando la cola del shard queda vacía se
+        // vacían todos los destinos escritos desde entonces, así una ráfaga hacia un destino sale en pocos segmentos.
+        // Con carga sostenida la cola casi nunca se vacía: también se vacía todo cada FORWARD_FLUSH_EVERY tramas, y
+        // el destino de una trama de control (ACK, cancelación...) se vacía en cuanto se escribe.
+        @Override
+        public void run() {
+            List<ConnectionHandler.Connection> unflushed = new ArrayList<>();
+            int writtenSinceFlush = 0;
+            while (true) {
+                Forward forward;
+                try {
+                    forward = this.queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    writer.write(forward.destination, forward.msg, forward.frame);
+                    this.forwarded.incrementAndGet();
+                    if (Priority.of(forward.msg.getNumServicio()) == Priority.CONTROL) {
+                        unflushed.remove(forward.destination);
+                        this.flush(forward.destination);
+                    } else if (!unflushed.contains(forward.destination)) {
+                        unflushed.add(forward.destination);
+                    }
+                } catch (IOException e) {
+                    // El hilo lector del destino detecta la conexión rota y la elimina.
+                    this.failed.incrementAndGet();
+                    LOGGER.debug("Error reenviando al destino {}: {}", Utils.byteArrayToHexString(forward.destination.getPeerIdentifier()), e.getMessage());
+                }
+                if (++writtenSinceFlush >= this.flushEvery || this.queue.size() == 0) {
+                    for (ConnectionHandler.Connection destination : unflushed) this.flush(destination);
+                    unflushed.clear();
+                    writtenSinceFlush = 0;
+                }
+            }
+        }
+
+        private void flush(ConnectionHandler.Connection destination) {
+            try {
+                destination.flush();
+            } catch (IOException e) {
+                this.failed.incrementAndGet();
+                LOGGER.debug("Error vaciando el destino {}: {}", Utils.byteArrayToHexString(destination.getPeerIdentifier()), e.getMessage());
+            }
+        }
+    }
+
+    public ForwardingEngine(Logger logger, Writer writer, ConfigReader.Config config) {
+        this.LOGGER = logger;
+        this.writer = writer;
+        this.cancelWindowNanos = config.CANCEL_WINDOW_MILIS * 1_000_000L;
+        int count = config.FORWARD_SHARDS > 0 ? config.FORWARD_SHARDS : Runtime.getRuntime().availableProcessors();
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new Shard(i, config);
+            Thread thread = new Thread(this.shards[i], "forwardShard-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        if (config.FORWARD_STATS_INTERVAL_MILIS > 0) {
+            Thread statsThread = new Thread(() -> statsLoop(config.FORWARD_STATS_INTERVAL_MILIS), "forwardStatsThread");
+            statsThread.setDaemon(true);
+            statsThread.start();
+        }
+        LOGGER.info("Reenvío con {} shards", count);
+    }
+
+    // Encola un mensaje hacia `destination` en el carril de su prioridad. Si el carril de su shard está lleno,
+    // bloquea al lector que lo reenvía (contrapresión hacia la conexión de origen, como cuando la escritura era directa).
+    public void submit(ConnectionHandler.Connection destination, Message msg, byte[] frame) throws IOException {
+        if (Priority.of(msg.getNumServicio()) == Priority.DATA && this.isCancelled(msg)) {
+            this.cancelledDrops.incrementAndGet();
+            return;
+        }
+        Shard shard = this.shards[shardOf(destination)];
+        try {
+            shard.queue.put(Priority.of(msg.getNumServicio()), new Forward(destination, msg, frame));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reenvío interrumpido");
+        }
+    }
+
+    // Registra la cancelación de una solicitud de `requester` y quita de las colas las copias que aún no se escriben.
+    public void cancel(byte[] requester, byte[] requestHash) {
+        long now = System.nanoTime();
+        this.cancelledRequests.values().removeIf((cancelledAt) -> now - cancelledAt > this.cancelWindowNanos);
+        this.cancelledRequests.put(Pair.with(ByteBuffer.wrap(requester), ByteBuffer.wrap(requestHash)), now);
+        for (Shard shard : this.shards) {
+            int removed = shard.queue.removeIf(Priority.DATA, (forward) -> Arrays.equals(forward.msg.getHash(), requestHash)
+                    && Arrays.equals(forward.msg.getSenderIdentifier(), requester));
+            this.cancelledDrops.addAndGet(removed);
+        }
+    }
+
+    private boolean isCancelled(Message msg) {
+        if (this.cancelledRequests.isEmpty()) return false;
+        Long cancelledAt = this.cancelledRequests.get(Pair.with(ByteBuffer.wrap(msg.getSenderIdentifier()), ByteBuffer.wrap(msg.getHash())));
+        return cancelledAt != null && System.nanoTime() - cancelledAt <= this.cancelWindowNanos;
+    }
+
+    // Shard de un destino: hash de su identificador, estable durante toda la conexión.
+    private int shardOf(ConnectionHandler.Connection destination) {
+        return Math.floorMod(Arrays.hashCode(destination.getPeerIdentifier()), this.shards.length);
+    }
+
+    // Mensajes en espera en cada shard.
+    public int[] getQueueDepths() {
+        return Arrays.stream(this.shards).mapToInt((shard) -> shard.queue.size()).toArray();
+    }
+
+    // Mensajes escritos por cada shard desde que arrancó el nodo.
+    public long[] getForwardedCounts() {
+        return Arrays.stream(this.shards).mapToLong((shard) -> shard.forwarded.get()).toArray();
+    }
+
+    // Publica en `metrics`, por shard, la profundidad de cola, los mensajes escritos y los errores.
+    public void registerMetrics(Metrics metrics) {
+        for (Shard shard : this.shards) {
+            String index = String.valueOf(shard.index);
+            metrics.gauge("forward_queue_depth", "Mensajes en espera de reenvío", shard.queue::size, "shard", index);
+            metrics.counter("forwarded_total", "Mensajes reenviados", shard.forwarded::get, "shard", index);
+            metrics.counter("forward_failed_total", "Escrituras de reenvío fallidas", shard.failed::get, "shard", index);
+        }
+        metrics.counter("forward_cancelled_total", "Copias de solicitudes canceladas no reenviadas", this.cancelledDrops::get);
+    }
+
+    // Registra periódicamente, por shard, la profundidad de cola (total y de control), el rendimiento (mensajes/s)
+    // y los errores.
+    private void statsLoop(int intervalMilis) {
+        while (true) {
+            try {
+                Thread.sleep(intervalMilis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            StringBuilder stats = new StringBuilder();
+            for (Shard shard : this.shards) {
+                long forwarded = shard.forwarded.get();
+                long rate = (forwarded - shard.lastForwarded) * 1_000 / intervalMilis;
+                shard.lastForwarded = forwarded;
+                stats.append(String.format("[%d: cola %d (control %d), %d msg/s, errores %d] ", shard.index, shard.queue.size(),
+                        shard.queue.size(Priority.CONTROL), rate, shard.failed.get()));
+            }
+            LOGGER.info("Reenvío: {}, descartados por cancelación {}", stats.toString().trim(), this.cancelledDrops.get());
+        }
+    }
+}
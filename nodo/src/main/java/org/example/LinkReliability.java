@@ -0,0 +1,192 @@
+package org.example;
+
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Triplet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Confiabilidad salto a salto entre nodos (LINK_RELIABILITY=true).
+// Cada mensaje enviado a otro nodo se envuelve en un LinkData con un número de secuencia propio del enlace y se
+// guarda hasta recibir su LinkAck; si el acuse no llega a tiempo se retransmite solo en ese enlace. El estado se
+// guarda por nodo vecino (no por socket), así que los mensajes pendientes se reenvían también tras una reconexión.
+// Del lado receptor, las secuencias repetidas se descartan (pero se vuelven a reconocer). Cada LinkData lleva la
+// menor secuencia que el emisor aún retiene: las anteriores que falten (descartadas con el búfer lleno, o enviadas
+// antes de que el receptor se reiniciara) se dan por perdidas en lugar de esperarse para siempre.
+public class LinkReliability {
+    private final Logger LOGGER;
+    private final byte[] identifier;
+    private final ConnectionHandler connectionHandler;
+    private final int retransmitMilis;
+    private final int bufferMax;
+    // Sesión de este nodo: permite a los vecinos reiniciar su estado si el nodo se reinicia.
+    private final long session = new Random().nextLong();
+    private final Map<ByteBuffer, Outbound> outbound = new ConcurrentHashMap<>();
+    private final Map<ByteBuffer, Inbound> inbound = new ConcurrentHashMap<>();
+    private final AtomicLong retransmissions = new AtomicLong();
+
+    // Mensaje enviado a un vecino que espera su LinkAck.
+    private static final class Pending {
+        final long seq;
+        final Message msg;
+        volatile long sentNanos;
+
+        Pending(long seq, Message msg) {
+            this.seq = seq;
+            this.msg = msg;
+            this.sentNanos = System.nanoTime();
+        }
+    }
+
+    // Estado de envío hacia un vecino.
+    private static final class Outbound {
+        final AtomicLong nextSeq = new AtomicLong();
+        final ConcurrentSkipListMap<Long, Pending> unacked = new ConcurrentSkipListMap<>();
+    }
+
+    // Estado de recepción desde un vecino: sesión del vecino, mayor secuencia contigua recibida y las recibidas después
+    // (a lo sumo LINK_BUFFER_MAX).
+    private static final class Inbound {
+        long session;
+        long contiguous = -1;
+        final TreeSet<Long> received = new TreeSet<>();
+    }
+
+    public LinkReliability(Logger logger, byte[] identifier, ConnectionHandler connectionHandler, ConfigReader.Config config) {
+        this.LOGGER = logger;
+        this.identifier = identifier;
+        this.connectionHandler = connectionHandler;
+        this.retransmitMilis = config.LINK_RETRANSMIT_MILIS;
+        this.bufferMax = config.LINK_BUFFER_MAX;
+    }
+
+    // Inicia el hilo que retransmite los mensajes sin acuse.
+    public void start() {
+        Thread retransmitThread = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(Math.max(1, this.retransmitMilis / 2));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                retransmitExpired();
+            }
+        }, "linkRetransmitThread");
+        retransmitThread.setDaemon(true);
+        retransmitThread.start();
+    }
+
+    // Envía `msg` a un vecino con número de secuencia y lo guarda hasta recibir su acuse.
+    public void send(ConnectionHandler.Connection conn, Message msg) throws IOException {
+        Outbound out = this.outbound.computeIfAbsent(ByteBuffer.wrap(conn.getPeerIdentifier()), (k) -> new Outbound());
+        long seq = out.nextSeq.getAndIncrement();
+        Pending pending = new Pending(seq, msg);
+        out.unacked.put(seq, pending);
+        // Si el vecino no reconoce por mucho tiempo se descartan los más antiguos para acotar la memoria.
+        while (out.unacked.size() > this.bufferMax) {
+            Map.Entry<Long, Pending> dropped = out.unacked.pollFirstEntry();
+            if (dropped != null)
+                LOGGER.warn("Búfer del enlace lleno, se descarta la secuencia {}", dropped.getKey());
+        }
+        conn.sendMsg(this.linkData(out, pending));
+    }
+
+    // LinkData de un mensaje pendiente, con la menor secuencia que el emisor retiene en este momento (las
+    // retransmisiones también la actualizan).
+    private Message linkData(Outbound out, Pending pending) throws IOException {
+        Map.Entry<Long, Pending> lowest = out.unacked.firstEntry();
+        long lowestSeq = lowest != null ? Math.min(lowest.getKey(), pending.seq) : pending.seq;
+        return Message.buildLinkData(this.identifier, this.session, pending.seq, lowestSeq, pending.msg);
+    }
+
+    // Procesa un LinkData recibido: envía el acuse y devuelve el mensaje original, o null si es un duplicado.
+    public Message receive(ConnectionHandler.Connection conn, Message linkData) throws IOException {
+        Triplet<Long, Long, Long> header = DecoderEncoder.processLinkData(linkData);
+        long session = header.getValue0();
+        long seq = header.getValue1();
+        long lowestSeq = header.getValue2();
+        Inbound in = this.inbound.computeIfAbsent(ByteBuffer.wrap(conn.getPeerIdentifier()), (k) -> new Inbound());
+        boolean duplicate;
+        long contiguous;
+        synchronized (in) {
+            if (in.session != session) {
+                // El vecino se reinició: su numeración empieza de nuevo.
+                in.session = session;
+                in.contiguous = -1;
+                in.received.clear();
+            }
+            if (lowestSeq - 1 > in.contiguous) {
+                // El emisor ya no retransmitirá las anteriores a `lowestSeq`: se dejan de esperar.
+                in.contiguous = lowestSeq - 1;
+                in.received.headSet(in.contiguous, true).clear();
+            }
+            duplicate = seq <= in.contiguous || !in.received.add(seq);
+            // Cota de memoria si el emisor no informa el hueco (p. ej. retransmisiones atrasadas).
+            while (in.received.size() > this.bufferMax) {
+                in.contiguous = in.received.pollFirst();
+            }
+            while (in.received.remove(in.contiguous + 1)) {
+                in.contiguous++;
+            }
+            contiguous = in.contiguous;
+        }
+        conn.sendMsg(Message.buildLinkAck(this.identifier, session, contiguous, seq));
+        if (duplicate) return null;
+        return DecoderEncoder.decode(linkData.getInformacion(), 24);
+    }
+
+    // Procesa un LinkAck: libera el mensaje reconocido y todos los anteriores a la secuencia acumulada.
+    public void acknowledge(ConnectionHandler.Connection conn, Message linkAck) throws IOException {
+        Triplet<Long, Long, Long> ack = DecoderEncoder.processLinkAck(linkAck);
+        if (ack.getValue0() != this.session) return; // Acuse de una sesión anterior de este nodo.
+        Outbound out = this.outbound.get(ByteBuffer.wrap(conn.getPeerIdentifier()));
+        if (out == null) return;
+        out.unacked.headMap(ack.getValue1(), true).clear();
+        out.unacked.remove(ack.getValue2());
+    }
+
+    // Reenvía de inmediato todo lo pendiente hacia un vecino con el que se acaba de (re)establecer conexión.
+    public void resendPending(ConnectionHandler.Connection conn) {
+        Outbound out = this.outbound.get(ByteBuffer.wrap(conn.getPeerIdentifier()));
+        if (out == null) return;
+        for (Pending pending : out.unacked.values()) {
+            try {
+                conn.sendMsg(this.linkData(out, pending));
+                pending.sentNanos = System.nanoTime();
+                this.retransmissions.incrementAndGet();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    // Retransmite, por la conexión vigente con cada vecino, los mensajes sin acuse tras LINK_RETRANSMIT_MILIS.
+    private void retransmitExpired() {
+        long now = System.nanoTime();
+        long timeoutNanos = this.retransmitMilis * 1_000_000L;
+        for (Map.Entry<ByteBuffer, Outbound> entry : this.outbound.entrySet()) {
+            ConnectionHandler.Connection conn = this.connectionHandler.getNodeConnection(entry.getKey().array());
+            if (conn == null) continue; // Sin conexión: se reenviará todo al reconectar.
+            for (Pending pending : entry.getValue().unacked.values()) {
+                if (now - pending.sentNanos < timeoutNanos) continue;
+                try {
+                    conn.sendMsg(this.linkData(entry.getValue(), pending));
+                    pending.sentNanos = now;
+                    this.retransmissions.incrementAndGet();
+                } catch (IOException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    public long getRetransmissions() {
+        return this.retransmissions.get();
+    }
+}
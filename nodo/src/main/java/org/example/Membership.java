@@ -0,0 +1,108 @@
+package org.example;
+
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Miembros del clúster. Parte de los nodos de la configuración (semillas) y crece con las listas que los
+// nodos se propagan entre sí, de modo que un nodo nuevo solo necesita conocer alguna semilla para unirse.
+// El estado (activo/caído) de cada miembro es local: lo determinan las conexiones y los latidos.
+public class Membership {
+    // Eventos de membresía. Los métodos tienen implementación vacía para implementar solo los necesarios.
+    public interface Listener {
+        // Se conoció un miembro nuevo (semilla o recibido por propagación).
+        default void memberAdded(Member member) {
+        }
+
+        // Se estableció conexión con el miembro.
+        default void memberUp(Member member) {
+        }
+
+        // Se perdió la conexión con el miembro o dejó de enviar latidos.
+        default void memberDown(Member member) {
+        }
+    }
+
+    public static final class Member {
+        private final Pair<String, Integer> address;
+        private final byte[] identifier;
+        private volatile boolean up;
+
+        Member(Pair<String, Integer> address) {
+            this.address = address;
+            this.identifier = Utils.createIdentifier(address.getValue0(), address.getValue1());
+        }
+
+        public Pair<String, Integer> getAddress() {
+            return this.address;
+        }
+
+        public byte[] getIdentifier() {
+            return this.identifier;
+        }
+
+        public boolean isUp() {
+            return this.up;
+        }
+    }
+
+    private final Logger LOGGER;
+    private final Pair<String, Integer> self;
+    // Miembros por identificador (ByteBuffer para comparar por contenido).
+    private final Map<ByteBuffer, Member> members = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public Membership(Logger logger, Pair<String, Integer> self) {
+        this.LOGGER = logger;
+        this.self = self;
+    }
+
+    public void addListener(Listener listener) {
+        this.listeners.add(listener);
+    }
+
+    // Añade los miembros desconocidos de `addresses` y notifica cada alta.
+    public void merge(Collection<Pair<String, Integer>> addresses) {
+        for (Pair<String, Integer> address : addresses) {
+            if (address.equals(this.self)) continue;
+            Member member = new Member(address);
+            if (this.members.putIfAbsent(ByteBuffer.wrap(member.identifier), member) == null) {
+                LOGGER.info("Nuevo miembro del clúster: {}", address);
+                for (Listener listener : this.listeners) listener.memberAdded(member);
+            }
+        }
+    }
+
+    // Lista de miembros para propagar: este nodo y los miembros activos.
+    public List<Pair<String, Integer>> addressesToGossip() {
+        List<Pair<String, Integer>> addresses = new ArrayList<>();
+        addresses.add(this.self);
+        for (Member member : this.members.values()) {
+            if (member.up) addresses.add(member.address);
+        }
+        return addresses;
+    }
+
+    public void markUp(byte[] identifier) {
+        Member member = this.members.get(ByteBuffer.wrap(identifier));
+        if (member == null || member.up) return;
+        member.up = true;
+        LOGGER.info("Miembro activo: {}", member.address);
+        for (Listener listener : this.listeners) listener.memberUp(member);
+    }
+
+    public void markDown(byte[] identifier) {
+        Member member = this.members.get(ByteBuffer.wrap(identifier));
+        if (member == null || !member.up) return;
+        member.up = false;
+        LOGGER.warn("Miembro caído: {}", member.address);
+        for (Listener listener : this.listeners) listener.memberDown(member);
+    }
+}
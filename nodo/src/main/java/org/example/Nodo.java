@@ -6,17 +6,32 @@ import org.javatuples.Pair;
 
 import java.io.*;
 import java.net.*;
+import java.nio.file.Path;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 
 public class Nodo {
     private static final Logger LOGGER = LogManager.getLogger(Nodo.class);
-    private static final ConfigReader.Config CONFIG = ConfigReader.readConfig(LOGGER);
     private static final String HOST = "localhost";
+    private final ConfigReader.Config CONFIG; // De cada instancia: el arnés de carga inicia varios nodos en una JVM.
     private byte[] identifier;
+    private Overlay overlay;
+    private Membership membership;
+    private LinkReliability linkReliability; // null si LINK_RELIABILITY=false.
+    private AdmissionControl admissionControl; // Límites de tráfico de las células conectadas a este nodo.
+    private CaptureWriter capture; // Captura del tráfico; null si CAPTURE_FILE está vacío.
+    private Metrics metrics; // Métricas publicadas por JMX y, con METRICS_PORT, por HTTP.
+    private EventRing events = EventRing.DISABLED; // Eventos por mensaje (ver EventRing), en lugar de una línea de log por mensaje.
+    private final CountDownLatch ready = new CountDownLatch(1); // Se libera cuando el nodo acepta conexiones.
 
     Nodo() {
+        this(ConfigReader.readConfig(LOGGER));
+    }
+
+    Nodo(ConfigReader.Config config) {
+        this.CONFIG = config;
     }
 
     public static void main(String[] args) throws InterruptedException {
@@ -26,125 +41,421 @@ public class Nodo {
 
     public void start(String[] args) throws InterruptedException {
         if (args.length < 1) {
-            System.err.println("Usage: Nodo");
+            System.err.println("Usage: Nodo [puerto]");
         }
-        // Manejador de las conexiones del nodo.
-        ConnectionHandler connectionHandler = new ConnectionHandler(LOGGER);
-
         LOGGER.info("Nodos: {}", Arrays.toString(CONFIG.NODES.toArray()));
 
-        // Retraso aleatorio para permitir la sincronización de nodos al inicio.
-        long delay = new Random().nextLong(1, 15) * 300 + 400;
-        LOGGER.info("Startup sleeping {}ms", delay);
-        Thread.sleep(delay);
-
-        // Intenta crear un ServerSocket en uno de los puertos configurados.
-        ServerSocket server = createServerSocket(CONFIG.getNodePorts());
+        // Con un puerto explícito el nodo puede unirse a un clúster en marcha aunque no esté en NODES
+        // (los nodos de la configuración actúan como semillas). Si no, usa uno de los puertos configurados.
+        ServerSocket server = args.length > 0
+                ? createServerSocket(new int[]{Integer.parseInt(args[0])})
+                : createServerSocket(CONFIG.getNodePorts());
 
         LOGGER.info("Nodo escuchando en {}:{}", server.getInetAddress(), server.getLocalPort());
         // Identificador único para este nodo.
         this.identifier = Utils.createIdentifier(HOST, server.getLocalPort());
-
-        // Conectarse a otros nodos especificados en la configuración.
-        for (Pair<String, Integer> node : CONFIG.NODES) {
-            if (node.getValue1() == server.getLocalPort())
-                // No conectarse a sí mismo.
-                continue;
+        this.metrics = Metrics.start("nodo-" + server.getLocalPort(), CONFIG, LOGGER);
+        this.events = EventRing.start("nodo-" + server.getLocalPort(), CONFIG, LOGGER, this.metrics);
+        // Manejador de las conexiones del nodo.
+        ConnectionHandler connectionHandler = new ConnectionHandler(LOGGER, this.identifier, CONFIG, this.metrics);
+        // Acuses y retransmisión en cada enlace entre nodos, para no depender del reintento extremo a extremo de las células.
+        if (CONFIG.LINK_RELIABILITY) {
+            this.linkReliability = new LinkReliability(LOGGER, this.identifier, connectionHandler, CONFIG);
+            connectionHandler.setLinkReliability(this.linkReliability);
+            this.linkReliability.start();
+        }
+        // Captura de todos los mensajes que el nodo lee y envía, para reproducirlos después (CaptureReplay).
+        if (!CONFIG.CAPTURE_FILE.isEmpty()) {
+            Path capturePath = Path.of(CONFIG.CAPTURE_FILE.replace("{port}", String.valueOf(server.getLocalPort())));
             try {
-                LOGGER.info("Tratando de conectarse a {}:{}", node.getValue0(), node.getValue1());
-                // Establece conexión con otro nodo.
-                Socket socket = new Socket(node.getValue0(), node.getValue1());
-                DataInputStream in = new DataInputStream(socket.getInputStream());
-                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
-                // Envía mensaje de identificación al nodo al que se conecta.
-                DecoderEncoder.writeMsg(out, Message.buildIdentify(ProgramType.NODE, identifier, ProgramType.NODE));
-
-                // El primer mensaje recibido debe ser una identificación.
-                ProgramType programType = DecoderEncoder.processIdentification(DecoderEncoder.readMsg(in));
-                ConnectionHandler.Connection currentNodeConn = new ConnectionHandler.Connection(programType, socket, in, out);
-                connectionHandler.addConnection(currentNodeConn); // Añade la conexión al manejador.
-
-                // Inicia un hilo para manejar la comunicación con este nodo conectado.
-                Thread currNodeConnectionThread = new Thread(() -> handle(connectionHandler, currentNodeConn), "currNodeConnectionThread");
-                currNodeConnectionThread.start();
-                LOGGER.info("Este nodo conectado a nodo: {}", node);
-            } catch (IOException ignored) {
-                // Ignora si no se puede conectar a un nodo (puede que aún no esté activo).
+                this.capture = new CaptureWriter(capturePath, CONFIG.CAPTURE_SEGMENT_BYTES);
+            } catch (IOException e) {
+                LOGGER.fatal("No se pudo crear el archivo de captura {}: {}", capturePath, e.getMessage());
+                System.exit(1);
             }
+            CaptureWriter capture = this.capture;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    capture.close();
+                } catch (IOException e) {
+                    LOGGER.error("Error cerrando la captura: {}", e.getMessage());
+                }
+            }, "captureShutdown"));
+            LOGGER.info("Capturando el tráfico en {}", capturePath);
         }
+        // Límites de tráfico por célula y del nodo (CELL_*_RATE, NODE_MSG_RATE).
+        this.admissionControl = new AdmissionControl(LOGGER, CONFIG);
+        // Topología entre nodos (malla completa o anillo k-regular).
+        Pair<String, Integer> self = Pair.with(HOST, server.getLocalPort());
+        this.overlay = new Overlay(CONFIG, self);
+        // Miembros del clúster, empezando por las semillas de la configuración.
+        this.membership = new Membership(LOGGER, self);
+        this.membership.addListener(connectionHandler);
+        this.membership.addListener(new Membership.Listener() {
+            @Override
+            public void memberAdded(Membership.Member member) {
+                overlay.addNode(member.getAddress());
+                // Puede que el miembro ya se haya conectado a este nodo antes de conocer su dirección.
+                if (connectionHandler.hasNodeConnection(member.getIdentifier()))
+                    membership.markUp(member.getIdentifier());
+                // Hilo que, mientras sea vecino en la topología, reconecta al miembro (con retroceso
+                // exponencial) cuando se pierde la conexión.
+                Thread dialer = new Thread(() -> dialPeerLoop(connectionHandler, member.getAddress()), "peerDialer-" + member.getAddress().getValue1());
+                dialer.setDaemon(true);
+                dialer.start();
+            }
+
+            @Override
+            public void memberUp(Membership.Member member) {
+                closeReplacedNeighbors(connectionHandler, overlay.markReachable(member.getAddress()));
+            }
+
+            @Override
+            public void memberDown(Membership.Member member) {
+                // Con la topología RING, el siguiente nodo del anillo pasa a reemplazarlo como vecino.
+                overlay.markUnreachable(member.getAddress());
+            }
+        });
 
         // Hilo para aceptar nuevas conexiones entrantes (de otras células o nodos).
+        // La identificación se hace en el hilo de cada conexión para que una entidad lenta no bloquee al resto.
+        Thread acceptingThread = startAccepting(connectionHandler, Transport.listen(server, CONFIG), "acceptingThread");
+        // Si alguna entrada de NODES marca este nodo con `unix:`, las entidades del mismo equipo se conectan por su
+        // socket de dominio Unix; el puerto TCP sigue abierto para las demás.
+        Path unixPath = CONFIG.unixSocketPath(server.getLocalPort());
+        if (unixPath != null) {
+            try {
+                startAccepting(connectionHandler, Transport.listenUnix(unixPath, CONFIG), "unixAcceptingThread");
+                LOGGER.info("Nodo escuchando en {}", unixPath);
+            } catch (IOException e) {
+                LOGGER.fatal("No se pudo crear el socket de dominio Unix {}: {}", unixPath, e.getMessage());
+                System.exit(1);
+            }
+        }
+        // A partir de aquí el nodo ya puede atender células y nodos: lo indica con su identificación al aceptar.
+        this.ready.countDown();
+        LOGGER.info("Nodo listo");
+
+        // Conectarse en paralelo a los otros nodos: registrar las semillas inicia un hilo de conexión por cada una.
+        this.membership.merge(CONFIG.NODES);
+        LOGGER.info("Topología {}, vecinos: {}", this.overlay.getMode(), this.overlay.neighbors());
+
+        // Latidos y detección de fallos: un vecino que no envía nada durante HEARTBEAT_TIMEOUT_MILIS se
+        // considera caído y su conexión se cierra, así que deja de recibir tráfico en un tiempo acotado.
+        Thread heartbeatThread = new Thread(() -> heartbeatLoop(connectionHandler), "heartbeatThread");
+        heartbeatThread.setDaemon(true);
+        heartbeatThread.start();
+
+        try {
+            acceptingThread.join(); // Espera a que el hilo de aceptación termine (aunque en este diseño es un bucle infinito).
+        } catch (InterruptedException e) {
+            LOGGER.error(e);
+            e.printStackTrace();
+        }
+    }
+
+    private Thread startAccepting(ConnectionHandler connectionHandler, Transport.Listener listener, String name) {
         Thread acceptingThread = new Thread(() -> {
             while (true) {
                 try {
-                    // Preparación para identificar la nueva conexión.
-                    Socket socket = server.accept(); // Espera y acepta una nueva conexión.
-                    DataInputStream in = new DataInputStream(socket.getInputStream());
-                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
-                    // Envía un mensaje de identificación a la entidad que se acaba de conectar.
-                    // Se identifica como NODO, esperando una respuesta de un SERVIDOR (célula) o NODO.
-                    DecoderEncoder.writeMsg(out, Message.buildIdentify(ProgramType.NODE, identifier, ProgramType.SERVER));
-
-                    // El primer mensaje recibido debe ser una identificación.
-                    ProgramType programType = DecoderEncoder.processIdentification(DecoderEncoder.readMsg(in)); // Lee la identificación de la entidad conectada.
-                    ConnectionHandler.Connection currentNodeConn = new ConnectionHandler.Connection(programType, socket, in, out);
-                    connectionHandler.addConnection(currentNodeConn); // Añade la nueva conexión al manejador.
-
-                    // Inicia un hilo para manejar esta nueva conexión.
-                    Thread handle = new Thread(() -> handle(connectionHandler, currentNodeConn), "handleThread");
-                    handle.start();
-                    LOGGER.info("Nueva conexión recibida: {}, {}", socket.getPort(), programType);
+                    Transport transport = listener.accept(); // Espera y acepta una nueva conexión.
+                    new Thread(() -> acceptConnection(connectionHandler, transport), "handleThread").start();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
             }
-        }, "acceptingThread");
+        }, name);
         acceptingThread.start();
+        return acceptingThread;
+    }
+
+    // Espera hasta que el nodo acepte conexiones.
+    public void awaitReady() throws InterruptedException {
+        this.ready.await();
+    }
+
+    // Identifica una conexión recién aceptada y, si no es un sondeo, la registra y atiende sus mensajes.
+    private void acceptConnection(ConnectionHandler connectionHandler, Transport transport) {
         try {
-            acceptingThread.join(); // Espera a que el hilo de aceptación termine (aunque en este diseño es un bucle infinito).
-        } catch (InterruptedException e) {
-            LOGGER.error(e);
-            e.printStackTrace();
+            DataInputStream in = transport.input();
+            DataOutputStream out = transport.output();
+            // Envía un mensaje de identificación a la entidad que se acaba de conectar.
+            // Se identifica como NODO, esperando una respuesta de un SERVIDOR (célula) o NODO.
+            DecoderEncoder.writeMsg(out, Message.buildIdentify(ProgramType.NODE, identifier, ProgramType.SERVER));
+            out.flush();
+
+            Message firstMsg = DecoderEncoder.readMsg(in);
+            if (firstMsg.getNumServicio() == ServiceNumber.Ping) {
+                // Sondeo de una célula que está eligiendo nodo: se responde sin registrar la conexión.
+                answerProbe(connectionHandler, transport, firstMsg);
+                return;
+            }
+            // En otro caso, el primer mensaje recibido debe ser una identificación.
+            ProgramType programType = DecoderEncoder.processIdentification(firstMsg); // Lee la identificación de la entidad conectada.
+            ConnectionHandler.Connection currentConn = new ConnectionHandler.Connection(programType, firstMsg.getSenderIdentifier(), false, transport);
+            if (this.capture != null) currentConn.setCapture(this.capture);
+            if (!connectionHandler.addConnection(currentConn)) return; // Conexión duplicada con otro nodo, ya cerrada.
+            if (programType == ProgramType.NODE) nodeConnected(currentConn);
+            LOGGER.info("Nueva conexión recibida: {}, {}", transport, programType);
+            handle(connectionHandler, currentConn);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Error identificando conexión entrante ({}): {}", transport, e.getMessage());
+            try {
+                transport.close();
+            } catch (IOException ignored) {
+            }
         }
     }
 
+    // Mantiene la conexión con un nodo vecino: intenta conectarse mientras no haya conexión con él, duplicando la espera
+    // entre intentos fallidos hasta NODE_RECONNECT_MAX_MILIS, y espera a que la conexión se pierda para reconectar.
+    private void dialPeerLoop(ConnectionHandler connectionHandler, Pair<String, Integer> node) {
+        byte[] peerIdentifier = Utils.createIdentifier(node.getValue0(), node.getValue1());
+        int backoff = CONFIG.NODE_RECONNECT_MIN_MILIS;
+        while (true) {
+            try {
+                // Si ya hay conexión (p. ej. porque el otro nodo se conectó primero), espera a que se pierda.
+                connectionHandler.awaitNodeDisconnected(peerIdentifier);
+                // Solo se conecta con sus vecinos en la topología.
+                this.overlay.awaitNeighbor(node);
+                if (dialPeer(connectionHandler, node)) {
+                    closeReplacedNeighbors(connectionHandler, this.overlay.markReachable(node));
+                    backoff = CONFIG.NODE_RECONNECT_MIN_MILIS;
+                    continue;
+                }
+                // Con la topología RING, el siguiente nodo del anillo pasa a reemplazarlo como vecino.
+                this.overlay.markUnreachable(node);
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, CONFIG.NODE_RECONNECT_MAX_MILIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Con la topología RING, cierra las conexiones con los nodos que reemplazaban a un vecino que volvió; de lo
+    // contrario quedarían abiertas (y recibiendo reenvíos) aunque ya no sean vecinos.
+    private void closeReplacedNeighbors(ConnectionHandler connectionHandler, Set<Pair<String, Integer>> replaced) {
+        for (Pair<String, Integer> node : replaced) {
+            LOGGER.info("{} deja de ser vecino", node);
+            connectionHandler.closeNodeConnection(Utils.createIdentifier(node.getValue0(), node.getValue1()));
+        }
+    }
+
+    // Establece e identifica una conexión saliente con otro nodo. Devuelve false si el nodo no está disponible.
+    private boolean dialPeer(ConnectionHandler connectionHandler, Pair<String, Integer> node) {
+        Transport transport = null;
+        try {
+            LOGGER.debug("Tratando de conectarse a {}:{}", node.getValue0(), node.getValue1());
+            transport = Transport.connect(node, CONFIG.NODE_CONNECT_TIMEOUT_MILIS, CONFIG);
+            // Límite de espera solo durante la identificación.
+            transport.setReadTimeout(CONFIG.NODE_CONNECT_TIMEOUT_MILIS);
+            DataInputStream in = transport.input();
+            DataOutputStream out = transport.output();
+            // Envía mensaje de identificación al nodo al que se conecta.
+            DecoderEncoder.writeMsg(out, Message.buildIdentify(ProgramType.NODE, identifier, ProgramType.NODE));
+            out.flush();
+
+            // El primer mensaje recibido debe ser una identificación.
+            Message identMsg = DecoderEncoder.readMsg(in);
+            ProgramType programType = DecoderEncoder.processIdentification(identMsg);
+            transport.setReadTimeout(0);
+            ConnectionHandler.Connection currentNodeConn = new ConnectionHandler.Connection(programType, identMsg.getSenderIdentifier(), true, transport);
+            if (this.capture != null) currentNodeConn.setCapture(this.capture);
+            if (!connectionHandler.addConnection(currentNodeConn)) return true; // El otro nodo ya tenía la conexión que se conserva.
+            nodeConnected(currentNodeConn);
+
+            // Inicia un hilo para manejar la comunicación con este nodo conectado.
+            Thread currNodeConnectionThread = new Thread(() -> handle(connectionHandler, currentNodeConn), "currNodeConnectionThread");
+            currNodeConnectionThread.start();
+            LOGGER.info("Este nodo conectado a nodo: {}", node);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // El nodo puede no estar activo todavía; se reintentará.
+            try {
+                if (transport != null) transport.close();
+            } catch (IOException ignored) {
+            }
+            return false;
+        }
+    }
+
+    // Registra un salto en la traza del mensaje, si la lleva (ver Trace).
+    private void traceHop(Message msg, Trace.Stage stage) {
+        if (msg.getTrace() != null) msg.getTrace().append(stage, this.identifier);
+    }
+
+    // Registra que el mensaje, recibido por `from`, se encoló para reenviarlo.
+    private void forwarded(Message msg, ConnectionHandler.Connection from) {
+        this.traceHop(msg, Trace.Stage.NODE_FORWARD);
+        this.events.record(EventRing.Type.FORWARD, msg, from.getType().toShort());
+    }
+
     // Maneja la comunicación para una conexión específica.
-    private static void handle(ConnectionHandler connHandler, ConnectionHandler.Connection connection) {
+    private void handle(ConnectionHandler connHandler, ConnectionHandler.Connection connection) {
         while (true) {
             try {
                 Message msg = connection.readMsg(); // Lee un mensaje de la conexión.
-                LOGGER.info(msg);
+                FlightEvents.NodeForward forwardEvent = new FlightEvents.NodeForward();
+                forwardEvent.begin();
+                this.traceHop(msg, Trace.Stage.NODE_RECEIVE);
+                this.events.record(EventRing.Type.RECEIVE, msg, DecoderEncoder.frameLength(msg));
                 switch (connection.getType()) {
                     case ProgramType.NODE:
-                        // Si el mensaje viene de otro NODO, lo reenvía solo a células, pues se asume que
-                        // todos los nodos están conectados cada uno entre sí (4 en este caso).
-                        // Para topologías más grandes/complejas, esta lógica necesitaría revisión.
+                        // Mensajes de control entre nodos: no se reenvían.
+                        if (msg.getNumServicio() == ServiceNumber.Heartbeat) break;
+                        if (msg.getNumServicio() == ServiceNumber.Membership) {
+                            this.membership.merge(DecoderEncoder.processMembership(msg));
+                            break;
+                        }
+                        if (this.linkReliability != null) {
+                            if (msg.getNumServicio() == ServiceNumber.LinkAck) {
+                                this.linkReliability.acknowledge(connection, msg);
+                                break;
+                            }
+                            if (msg.getNumServicio() == ServiceNumber.LinkData) {
+                                // Se reconoce y se procesa el mensaje original, salvo que sea una retransmisión ya recibida.
+                                msg = this.linkReliability.receive(connection, msg);
+                                if (msg == null) break;
+                                this.traceHop(msg, Trace.Stage.NODE_RECEIVE);
+                            }
+                        }
+                        if (msg.getNumServicio() == ServiceNumber.Cancel)
+                            connHandler.getForwardingEngine().cancel(msg.getSenderIdentifier(), DecoderEncoder.processCancel(msg));
+                        if (this.overlay.getMode() == OverlayMode.MESH) {
+                            // Si el mensaje viene de otro NODO, lo reenvía solo a células, pues en la malla
+                            // todos los nodos están conectados cada uno entre sí.
+                            this.forwarded(msg, connection);
+                            connHandler.sendToClients(msg);
+                            break;
+                        }
+                        // En el anillo, el mensaje puede llegar por varios caminos: solo se procesa la primera copia.
+                        if (!this.overlay.firstSeen(msg)) break;
+                        this.forwarded(msg, connection);
                         connHandler.sendToClients(msg);
+                        // Se reenvía a los demás vecinos mientras le queden saltos.
+                        if (msg.getTtl() > 1) {
+                            connHandler.sendToNodesExcept(connection, msg.withTtl(msg.getTtl() - 1));
+                        }
                         break;
                     default: // Si viene de una CÉLULA (SOLICITANTE o SERVIDOR)
-                        // Reenvía el mensaje a todos los NODOS y a todos los CLIENTES.
+                        // Límites de tráfico de la célula y del nodo: con DELAY, admit espera; con REJECT, se avisa a la célula.
+                        int retryAfterMilis = this.admissionControl.admit(connection, msg);
+                        if (retryAfterMilis > 0) {
+                            // Por el shard de la conexión, como el resto de lo que se le escribe.
+                            Message busy = Message.buildBusy(connection.getType(), this.identifier, msg.getHash(), retryAfterMilis);
+                            connHandler.getForwardingEngine().submit(connection, busy, DecoderEncoder.encode(busy));
+                            break;
+                        }
+                        // Reenvía el mensaje a todos los NODOS (vecinos) y a todos los CLIENTES.
                         // Las células receptoras descartarán el mensaje si no es para ellas.
+                        // Una cancelación descarta las copias de la solicitud que este nodo aún no reenvía.
+                        if (msg.getNumServicio() == ServiceNumber.Cancel)
+                            connHandler.getForwardingEngine().cancel(msg.getSenderIdentifier(), DecoderEncoder.processCancel(msg));
+                        if (this.overlay.getMode() == OverlayMode.RING) {
+                            // Se marca como visto para descartar las copias que regresen por el anillo.
+                            this.overlay.firstSeen(msg);
+                            msg = msg.withTtl(this.overlay.getTtl());
+                        }
+                        this.forwarded(msg, connection);
                         connHandler.sendToNodes(msg);
                         connHandler.sendToClients(msg);
                         break;
                 }
+                forwardEvent.sourceType = connection.getType().name();
+                forwardEvent.commit(msg);
             } catch (IOException e) {
                 // Si hay un error de IO (ej. desconexión), elimina la conexión y termina el hilo.
                 connHandler.removeConnection(connection);
+                this.admissionControl.forget(connection);
                 try {
                     connection.closeSocket();
                 } catch (IOException ignored) {
                 }
+                // Si era un nodo y no quedó otra conexión con él (p. ej. una duplicada que la reemplazó), está caído.
+                if (connection.getType() == ProgramType.NODE && !connHandler.hasNodeConnection(connection.getPeerIdentifier()))
+                    this.membership.markDown(connection.getPeerIdentifier());
                 return;
             }
         }
     }
 
+    // Registra como activo al nodo recién conectado y le envía la lista de miembros conocidos.
+    // Con confiabilidad de enlace, también reenvía lo que quedó sin acuse en la conexión anterior con ese nodo.
+    private void nodeConnected(ConnectionHandler.Connection connection) {
+        this.membership.markUp(connection.getPeerIdentifier());
+        try {
+            connection.sendMsg(Message.buildMembership(this.identifier, this.membership.addressesToGossip()));
+        } catch (IOException e) {
+            LOGGER.debug("No se pudo enviar la lista de miembros: {}", e.getMessage());
+        }
+        if (this.linkReliability != null) this.linkReliability.resendPending(connection);
+    }
+
+    // Envía latidos periódicos a los nodos vecinos, propaga la lista de miembros cada GOSSIP_INTERVAL_MILIS
+    // y cierra las conexiones de los vecinos que llevan más de HEARTBEAT_TIMEOUT_MILIS sin enviar nada.
+    private void heartbeatLoop(ConnectionHandler connectionHandler) {
+        long timeoutNanos = CONFIG.HEARTBEAT_TIMEOUT_MILIS * 1_000_000L;
+        long lastGossip = System.nanoTime();
+        while (true) {
+            try {
+                Thread.sleep(CONFIG.HEARTBEAT_INTERVAL_MILIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            Message heartbeat = Message.buildHeartbeat(this.identifier);
+            Message gossip = null;
+            if (System.nanoTime() - lastGossip >= CONFIG.GOSSIP_INTERVAL_MILIS * 1_000_000L) {
+                lastGossip = System.nanoTime();
+                try {
+                    gossip = Message.buildMembership(this.identifier, this.membership.addressesToGossip());
+                } catch (IOException ignored) {
+                }
+            }
+            for (ConnectionHandler.Connection conn : connectionHandler.getNodeConnections()) {
+                if (conn.idleNanos() > timeoutNanos) {
+                    LOGGER.warn("Nodo {} sin latidos por más de {}ms", Utils.byteArrayToHexString(conn.getPeerIdentifier()), CONFIG.HEARTBEAT_TIMEOUT_MILIS);
+                    connectionHandler.removeConnection(conn);
+                    try {
+                        conn.closeSocket();
+                    } catch (IOException ignored) {
+                    }
+                    this.membership.markDown(conn.getPeerIdentifier());
+                    continue;
+                }
+                try {
+                    conn.sendMsg(heartbeat);
+                    if (gossip != null) conn.sendMsg(gossip);
+                } catch (IOException ignored) {
+                    // El hilo de la conexión detecta el error y la elimina.
+                }
+            }
+        }
+    }
+
+    // Responde los pings de una célula que sondea la latencia y carga de este nodo, hasta que cierre la conexión.
+    private void answerProbe(ConnectionHandler connHandler, Transport transport, Message ping) {
+        try (transport) {
+            transport.setTcpNoDelay(true); // Las respuestas son pequeñas; sin Nagle el RTT medido es el real.
+            DataInputStream in = transport.input();
+            DataOutputStream out = transport.output();
+            while (ping.getNumServicio() == ServiceNumber.Ping) {
+                long timestamp = DecoderEncoder.processPing(ping).getValue0();
+                // Devuelve la marca de tiempo recibida junto con la carga actual (células conectadas).
+                DecoderEncoder.writeMsg(out, Message.buildPing(ProgramType.SOLICITANT, identifier, timestamp, connHandler.getClientCount()));
+                out.flush();
+                ping = DecoderEncoder.readMsg(in);
+            }
+        } catch (IOException ignored) {
+            // La célula cierra la conexión al terminar el sondeo.
+        }
+    }
+
     // Intenta crear un ServerSocket en la lista de puertos disponibles.
-    private static ServerSocket createServerSocket(int[] nodePorts) {
+    private ServerSocket createServerSocket(int[] nodePorts) {
         for (int port : nodePorts) {
             try {
-                return new ServerSocket(port); // Devuelve el primer ServerSocket que se pueda crear.
+                return Sockets.listen(port, CONFIG); // Devuelve el primer ServerSocket que se pueda crear.
             } catch (IOException ignored) {
                 // Si el puerto está en uso, prueba el siguiente.
             }
@@ -0,0 +1,130 @@
+package org.example;
+
+import org.javatuples.Pair;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Topología lógica entre nodos.
+// - MESH: cada nodo se conecta con todos los demás y los mensajes de otro nodo solo se entregan a células.
+// - RING: los nodos se ordenan en un anillo y cada uno se conecta con OVERLAY_DEGREE/2 vecinos a cada lado
+//   (grafo circulante k-regular). Los mensajes se reenvían entre nodos decrementando el TTL y un conjunto de
+//   mensajes vistos evita entregarlos dos veces. Si un vecino no responde se salta y se toma el siguiente del
+//   anillo, de modo que el grafo se repara solo cuando se cae un enlace.
+public final class Overlay {
+    private final OverlayMode mode;
+    private final int degree;
+    private final int ttl;
+    private final long seenWindowNanos;
+    private final Pair<String, Integer> self;
+    private final List<Pair<String, Integer>> ring; // Miembros del clúster (incluido este nodo), en orden.
+    private int selfIndex;
+    // Nodos que no respondieron al último intento de conexión; se excluyen al elegir vecinos.
+    private final Set<Pair<String, Integer>> unreachable = ConcurrentHashMap.newKeySet();
+    // Mensajes reenviados recientemente (remitente + servicio + hash) con el instante en que se vieron.
+    private final Map<ByteBuffer, Long> seen = new ConcurrentHashMap<>();
+    private volatile long lastPurge = System.nanoTime();
+
+    public Overlay(ConfigReader.Config config, Pair<String, Integer> self) {
+        this.mode = config.OVERLAY_MODE;
+        this.degree = Math.max(2, config.OVERLAY_DEGREE);
+        this.ttl = Math.min(255, Math.max(1, config.OVERLAY_TTL));
+        this.seenWindowNanos = config.OVERLAY_SEEN_WINDOW_MILIS * 1_000_000L;
+        this.self = self;
+        this.ring = new ArrayList<>();
+        addNode(self);
+    }
+
+    // Añade un miembro al anillo (p. ej. un nodo que se unió al clúster) y recalcula los vecinos.
+    public synchronized void addNode(Pair<String, Integer> node) {
+        if (this.ring.contains(node)) return;
+        this.ring.add(node);
+        this.ring.sort(Comparator.comparing((Pair<String, Integer> p) -> p.getValue0()).thenComparing(Pair::getValue1));
+        this.selfIndex = this.ring.indexOf(this.self);
+        this.notifyAll();
+    }
+
+    public OverlayMode getMode() {
+        return this.mode;
+    }
+
+    // TTL con el que el nodo de entrada reenvía a otros nodos el mensaje de una célula.
+    public int getTtl() {
+        return this.ttl;
+    }
+
+    // Vecinos actuales: los primeros degree/2 nodos alcanzables en cada sentido del anillo.
+    public synchronized Set<Pair<String, Integer>> neighbors() {
+        return neighbors(null);
+    }
+
+    // Calcula los vecinos tratando a `assumeReachable` como alcanzable aunque su último intento haya fallado.
+    private Set<Pair<String, Integer>> neighbors(Pair<String, Integer> assumeReachable) {
+        Set<Pair<String, Integer>> result = new HashSet<>();
+        int n = this.ring.size();
+        if (this.mode == OverlayMode.MESH) {
+            result.addAll(this.ring);
+            result.remove(this.self);
+            return result;
+        }
+        for (int direction : new int[]{1, -1}) {
+            int taken = 0;
+            for (int step = 1; step < n && taken < this.degree / 2; step++) {
+                Pair<String, Integer> candidate = this.ring.get(Math.floorMod(this.selfIndex + direction * step, n));
+                if (this.unreachable.contains(candidate) && !candidate.equals(assumeReachable)) continue;
+                result.add(candidate);
+                taken++;
+            }
+        }
+        return result;
+    }
+
+    // Bloquea mientras este nodo no deba conectarse con `node`. Un vecino caído se sigue intentando
+    // (además de su reemplazo) para recuperar la topología original cuando vuelva.
+    public synchronized void awaitNeighbor(Pair<String, Integer> node) throws InterruptedException {
+        while (!neighbors(node).contains(node)) {
+            this.wait();
+        }
+    }
+
+    // Marca a `node` como alcanzable y devuelve los nodos que por ello dejan de ser vecinos (los que lo
+    // reemplazaban mientras estuvo caído): sus conexiones ya no forman parte de la topología.
+    public synchronized Set<Pair<String, Integer>> markReachable(Pair<String, Integer> node) {
+        if (!this.unreachable.contains(node)) return Set.of();
+        Set<Pair<String, Integer>> replaced = neighbors(null);
+        this.unreachable.remove(node);
+        this.notifyAll();
+        replaced.removeAll(neighbors(null));
+        return replaced;
+    }
+
+    public synchronized void markUnreachable(Pair<String, Integer> node) {
+        if (this.unreachable.add(node)) this.notifyAll();
+    }
+
+    // Registra el mensaje y devuelve true si no se había visto dentro de la ventana configurada.
+    public boolean firstSeen(Message msg) {
+        long now = System.nanoTime();
+        if (now - this.lastPurge > this.seenWindowNanos) {
+            this.lastPurge = now;
+            Iterator<Long> it = this.seen.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next() > this.seenWindowNanos) it.remove();
+            }
+        }
+        ByteBuffer key = ByteBuffer.allocate(8 + 2 + msg.getHash().length)
+                .put(msg.getSenderIdentifier())
+                .putShort(msg.getNumServicio().toShort())
+                .put(msg.getHash())
+                .flip();
+        Long previous = this.seen.put(key, now);
+        return previous == null || now - previous > this.seenWindowNanos;
+    }
+}
@@ -0,0 +1,47 @@
+package org.example;
+
+// Cubeta de fichas: admite `rate` eventos por segundo en promedio, con ráfagas de hasta `burst` eventos.
+public class TokenBucket {
+    private final double ratePerNano;
+    private final double burst;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(int rate, int burst) {
+        this.ratePerNano = rate / 1e9;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    private void refill(long now) {
+        this.tokens = Math.min(this.burst, this.tokens + (now - this.lastRefillNanos) * this.ratePerNano);
+        this.lastRefillNanos = now;
+    }
+
+    // Toma una ficha si hay disponible.
+    public synchronized boolean tryAcquire() {
+        refill(System.nanoTime());
+        if (this.tokens < 1) return false;
+        this.tokens -= 1;
+        return true;
+    }
+
+    // Toma una ficha aunque no haya (queda en deuda) y devuelve cuánto hay que esperar para respetar la tasa.
+    public synchronized long reserve() {
+        refill(System.nanoTime());
+        this.tokens -= 1;
+        return this.tokens >= 0 ? 0 : (long) (-this.tokens / this.ratePerNano);
+    }
+
+    // Devuelve una ficha tomada con tryAcquire (p. ej. si otra cubeta rechazó el mismo evento).
+    public synchronized void refund() {
+        this.tokens = Math.min(this.burst, this.tokens + 1);
+    }
+
+    // Tiempo hasta que haya una ficha disponible.
+    public synchronized long nanosUntilAvailable() {
+        refill(System.nanoTime());
+        return this.tokens >= 1 ? 0 : (long) ((1 - this.tokens) / this.ratePerNano);
+    }
+}
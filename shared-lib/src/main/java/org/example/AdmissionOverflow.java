@@ -0,0 +1,7 @@
+package org.example;
+
+// Qué hace el nodo cuando una célula excede su límite de admisión (ver AdmissionControl en el nodo).
+public enum AdmissionOverflow {
+    DELAY, // Retrasa la lectura: la célula queda frenada por el control de flujo de TCP.
+    REJECT // Descarta el mensaje y responde con Busy.
+}
@@ -0,0 +1,64 @@
+package org.example;
+
+import java.util.Optional;
+
+// Reducciones que el servidor aplica a los operandos de un flujo (ver StreamAggregator).
+// Los valores se acumulan en `long`; la suma no desborda con menos de 2^32 operandos, el producto sí puede
+// desbordar y entonces conserva los 64 bits bajos (como la multiplicación de enteros del resto del sistema).
+public enum Aggregation {
+    SUM, PRODUCT, MIN, MAX, COUNT;
+
+    // Indica si la reducción de un flujo sin operandos tiene valor (MIN y MAX no lo tienen: su identidad es un centinela).
+    public boolean definedOnEmpty() {
+        return this != MIN && this != MAX;
+    }
+
+    // Valor acumulado de un flujo sin operandos.
+    public long identity() {
+        return switch (this) {
+            case SUM, COUNT -> 0;
+            case PRODUCT -> 1;
+            case MIN -> Long.MAX_VALUE;
+            case MAX -> Long.MIN_VALUE;
+        };
+    }
+
+    // Acumula los operandos de un fragmento sobre `acc`.
+    public long fold(long acc, int[] values) {
+        switch (this) {
+            case SUM -> {
+                for (int value : values) acc += value;
+            }
+            case PRODUCT -> {
+                for (int value : values) acc *= value;
+            }
+            case MIN -> {
+                for (int value : values) acc = Math.min(acc, value);
+            }
+            case MAX -> {
+                for (int value : values) acc = Math.max(acc, value);
+            }
+            case COUNT -> acc += values.length;
+        }
+        return acc;
+    }
+
+    public byte toByte() {
+        return (byte) this.ordinal();
+    }
+
+    public static Optional<Aggregation> fromByte(byte b) {
+        return b >= 0 && b < values().length ? Optional.of(values()[b]) : Optional.empty();
+    }
+
+    public static Optional<Aggregation> fromString(String str) {
+        return switch (str.trim().toUpperCase()) {
+            case "SUM" -> Optional.of(SUM);
+            case "PRODUCT" -> Optional.of(PRODUCT);
+            case "MIN" -> Optional.of(MIN);
+            case "MAX" -> Optional.of(MAX);
+            case "COUNT" -> Optional.of(COUNT);
+            default -> Optional.empty();
+        };
+    }
+}
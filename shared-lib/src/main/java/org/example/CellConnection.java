@@ -0,0 +1,182 @@
+package org.example;
+
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.LongAdder;
+
+// Conexión de una célula (servidora o solicitante) con su nodo.
+// Permite migrar a otro nodo sin detener los hilos receptor y despachador: las lecturas y escrituras
+// que fallan por el cierre de la conexión anterior se reintentan sobre la nueva.
+// Los mensajes salientes pasan por carriles de prioridad (ver Priority) que vacía un hilo escritor, de modo que los
+// ACKs del hilo receptor no esperan detrás de las solicitudes o retransmisiones que encola el despachador.
+// Cada carril admite hasta CELL_OUTGOING_CAPACITY mensajes: si el nodo deja de leer (o la célula está migrando),
+// las retransmisiones bloquean al despachador en lugar de acumularse sin límite.
+public class CellConnection {
+    private static final String HOST = "localhost";
+    private final Logger LOGGER;
+    private final ConfigReader.Config config;
+    private final ProgramType programType; // Tipo de esta célula (SERVIDOR o SOLICITANTE).
+    private final byte[] identifier;       // Identificador de la célula; se conserva al migrar de nodo.
+    private final Object writeLock = new Object(); // Protege el cambio de conexión respecto a las escrituras.
+    private final PriorityLanes<Message> outgoing; // Mensajes pendientes de escribir, por prioridad.
+    // Tráfico con el nodo (de todas las conexiones, si la célula migró).
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder framesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    private volatile Pair<String, Integer> node;
+    private volatile Transport transport;
+    private volatile DataInputStream in;
+    private volatile DataOutputStream out;
+
+    private CellConnection(Logger logger, ProgramType programType, byte[] identifier, Pair<String, Integer> node, Transport transport, ConfigReader.Config config) {
+        this.LOGGER = logger;
+        this.config = config;
+        this.outgoing = new PriorityLanes<>(config, Math.max(1, config.CELL_OUTGOING_CAPACITY));
+        this.programType = programType;
+        this.identifier = identifier;
+        this.node = node;
+        this.transport = transport;
+        this.in = transport.input();
+        this.out = transport.output();
+    }
+
+    // Crea la conexión inicial con el nodo (con reintentos) y realiza la identificación.
+    public static CellConnection connect(ProgramType programType, Pair<String, Integer> node, ConfigReader.Config config, Logger LOGGER) throws IOException, InterruptedException {
+        Transport transport = Utils.cellTryToConnect(node, config.NODE_RECONNECT_MIN_MILIS, config.CELL_CONN_DELAY_MILIS, config, LOGGER);
+        // El identificador de la célula se deriva de su primera conexión (en TCP, de su puerto local).
+        byte[] identifier = transport.localIdentifier(HOST);
+        CellConnection conn = new CellConnection(LOGGER, programType, identifier, node, transport, config);
+        try {
+            handshake(programType, identifier, conn.in, conn.out);
+        } catch (IOException e) {
+            transport.close();
+            throw e;
+        }
+        Thread writerThread = new Thread(conn::writerLoop, "cellWriterThread");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        return conn;
+    }
+
+    // Identificación entre la célula y el nodo: la célula envía su identificación y verifica que
+    // el primer mensaje recibido sea la identificación de un nodo.
+    private static void handshake(ProgramType programType, byte[] identifier, DataInputStream in, DataOutputStream out) throws IOException {
+        DecoderEncoder.writeMsg(out, Message.buildIdentify(programType, identifier, ProgramType.NODE));
+        out.flush();
+        Message nodeIdentMsg = DecoderEncoder.readMsg(in);
+        if (nodeIdentMsg.getNumServicio() != ServiceNumber.Identification) {
+            throw new IOException("Número de servicio incorrecto, primer mensaje debió ser identificación: " + nodeIdentMsg.getNumServicio());
+        }
+        if (DecoderEncoder.processIdentification(nodeIdentMsg) != ProgramType.NODE) {
+            throw new IOException("Conexión a identidad distinta a 'nodo'");
+        }
+    }
+
+    // Migra la conexión a otro nodo. La nueva conexión se establece e identifica antes de cerrar la anterior,
+    // de modo que si falla la célula sigue conectada a su nodo actual.
+    public synchronized void switchTo(Pair<String, Integer> newNode) throws IOException {
+        Transport newTransport = Transport.connect(newNode, 0, this.config);
+        try {
+            handshake(this.programType, this.identifier, newTransport.input(), newTransport.output());
+        } catch (IOException e) {
+            newTransport.close();
+            throw e;
+        }
+        Transport oldTransport = this.transport;
+        synchronized (this.writeLock) {
+            this.in = newTransport.input();
+            this.out = newTransport.output();
+            this.transport = newTransport;
+            this.node = newNode;
+        }
+        // Cerrar la conexión anterior desbloquea al hilo receptor, que continúa leyendo de la nueva.
+        oldTransport.close();
+        LOGGER.info("Célula migrada al nodo {}", newNode);
+    }
+
+    // Encola un mensaje para el nodo actual en el carril de su prioridad; bloquea mientras el carril esté lleno.
+    public void writeMsg(Message msg) throws IOException {
+        try {
+            this.outgoing.put(Priority.of(msg.getNumServicio()), msg);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Envío interrumpido");
+        }
+    }
+
+    // Bucle del hilo escritor: escribe los mensajes encolados según su prioridad. Si la escritura falla porque la
+    // conexión fue reemplazada durante una migración, el mensaje se reintenta sobre la nueva conexión.
+    // El stream se vacía al socket cuando no quedan mensajes encolados: los que se acumularon mientras se escribía
+    // salen juntos, sin retrasar al último.
+    private void writerLoop() {
+        while (true) {
+            Message msg;
+            try {
+                msg = this.outgoing.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            while (true) {
+                DataOutputStream currentOut = this.out;
+                try {
+                    synchronized (this.writeLock) {
+                        DecoderEncoder.writeMsg(this.out, msg);
+                        if (this.outgoing.size() == 0) this.out.flush();
+                    }
+                    this.framesSent.increment();
+                    this.bytesSent.add(DecoderEncoder.frameLength(msg));
+                    break;
+                } catch (IOException e) {
+                    if (currentOut != this.out) continue;
+                    LOGGER.fatal("Error enviando mensaje al nodo {}: {}", this.node, e.getMessage());
+                    System.exit(1);
+                }
+            }
+        }
+    }
+
+    // Lee el siguiente mensaje del nodo actual. Si la lectura falla porque la conexión fue
+    // reemplazada durante una migración, se continúa leyendo de la nueva conexión.
+    public Message readMsg() throws IOException {
+        while (true) {
+            DataInputStream currentIn = this.in;
+            try {
+                Message msg = DecoderEncoder.readMsg(currentIn);
+                this.framesReceived.increment();
+                this.bytesReceived.add(DecoderEncoder.frameLength(msg));
+                return msg;
+            } catch (IOException e) {
+                if (currentIn == this.in) throw e;
+            }
+        }
+    }
+
+    // Publica en `metrics` el tráfico de esta conexión y los mensajes en espera de escribirse, con la etiqueta
+    // connection=`name` (la célula solicitante puede tener una conexión de cobertura además de la principal).
+    public void registerMetrics(Metrics metrics, String name) {
+        metrics.counter("frames_sent_total", "Mensajes enviados", this.framesSent::sum, "connection", name);
+        metrics.counter("frames_received_total", "Mensajes recibidos", this.framesReceived::sum, "connection", name);
+        metrics.counter("bytes_sent_total", "Bytes enviados", this.bytesSent::sum, "connection", name);
+        metrics.counter("bytes_received_total", "Bytes recibidos", this.bytesReceived::sum, "connection", name);
+        metrics.gauge("outgoing_queue_depth", "Mensajes en espera de escribirse", this.outgoing::size, "connection", name);
+    }
+
+    public void close() throws IOException {
+        this.transport.close();
+    }
+
+    public byte[] getIdentifier() {
+        return this.identifier;
+    }
+
+    public Pair<String, Integer> getNode() {
+        return this.node;
+    }
+}
@@ -5,6 +5,7 @@ import org.javatuples.Pair;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Properties;
 import java.util.Set;
@@ -13,15 +14,149 @@ import java.util.stream.Collectors;
 public class ConfigReader {
     public static class Config {
         public final Set<Pair<String, Integer>> NODES; // Almacena los hosts y puertos de los nodos.
+        public final Set<Pair<String, Integer>> UNIX_NODES; // Nodos de NODES marcados `unix:` (ver unixSocketPath).
         public final int MAX_PENDING_ACKS; // Máximo número de ACKs pendientes antes de reintentar.
         public final int SENDER_WAIT_MILIS; // Tiempo de espera del despachador.
-        public final int CELL_CONN_DELAY_MILIS; // Retraso para reintentos de conexión de células.
+        public final int CELL_CONN_DELAY_MILIS; // Espera máxima entre reintentos de conexión de células.
+        // Propiedades opcionales: si no aparecen en el archivo se usa el valor por defecto indicado.
+        public final int NODE_PROBE_TIMEOUT_MILIS; // Tiempo máximo para sondear (conectar y hacer ping a) un nodo.
+        public final int NODE_PROBE_SAMPLES; // Número de pings por nodo; se toma el RTT mínimo.
+        public final int NODE_LOAD_WEIGHT_MICROS; // Penalización (en µs de RTT) por cada célula conectada al nodo.
+        public final int NODE_RESELECT_INTERVAL_MILIS; // Periodo de reevaluación del nodo de la célula (0 = desactivado).
+        public final int NODE_RESELECT_THRESHOLD_MICROS; // Diferencia mínima de puntaje para cambiarse de nodo.
+        public final int NODE_CONNECT_TIMEOUT_MILIS; // Tiempo máximo para conectar e identificarse con otro nodo.
+        public final int NODE_RECONNECT_MIN_MILIS; // Espera inicial entre intentos de conexión (nodos y células).
+        public final int NODE_RECONNECT_MAX_MILIS; // Espera máxima entre intentos de conexión con otro nodo.
+        public final OverlayMode OVERLAY_MODE; // Topología entre nodos: MESH (todos con todos) o RING (grafo k-regular).
+        public final int OVERLAY_DEGREE; // Número de vecinos de cada nodo en la topología RING.
+        public final int OVERLAY_TTL; // Saltos máximos de un mensaje entre nodos en la topología RING.
+        public final int OVERLAY_SEEN_WINDOW_MILIS; // Tiempo durante el cual un mensaje repetido se descarta (RING).
+        public final int HEARTBEAT_INTERVAL_MILIS; // Periodo de envío de latidos entre nodos.
+        public final int HEARTBEAT_TIMEOUT_MILIS; // Silencio tras el cual un nodo vecino se considera caído.
+        public final int GOSSIP_INTERVAL_MILIS; // Periodo de propagación de la lista de miembros.
+        public final boolean LINK_RELIABILITY; // Secuencia, ACKs y retransmisión por enlace entre nodos.
+        public final int LINK_RETRANSMIT_MILIS; // Espera antes de retransmitir un LinkData sin acuse.
+        public final int LINK_BUFFER_MAX; // Máximo de mensajes sin acuse guardados por enlace.
+        public final int ACK_TIMEOUT_MILIS; // Espera de las células antes de retransmitir un mensaje sin ACK (extremo a extremo).
+        public final int FORWARD_SHARDS; // Hilos de reenvío del nodo (0 = uno por núcleo).
+        public final int FORWARD_QUEUE_CAPACITY; // Mensajes en espera por hilo de reenvío antes de bloquear al lector.
+        public final int FORWARD_FLUSH_EVERY; // Tramas escritas por un hilo de reenvío antes de vaciar sus destinos.
+        public final int FORWARD_STATS_INTERVAL_MILIS; // Periodo de registro de estadísticas de reenvío (0 = desactivado).
+        public final PriorityLanes.Scheduling PRIORITY_SCHEDULING; // STRICT o WEIGHTED entre las clases de Priority.
+        public final int[] PRIORITY_WEIGHTS; // Pesos CONTROL,RESULT,DATA para la planificación WEIGHTED.
+        public final AdmissionOverflow ADMISSION_OVERFLOW; // Qué hace el nodo cuando una célula excede su límite: DELAY o REJECT.
+        public final int CELL_REQUEST_RATE; // Solicitudes por segundo admitidas por conexión de célula (0 = sin límite).
+        public final int CELL_REQUEST_BURST; // Ráfaga máxima de solicitudes por conexión de célula.
+        public final int CELL_MSG_RATE; // Mensajes de datos (incluidos fragmentos de flujo) por segundo por conexión de célula (0 = sin límite).
+        public final int CELL_MSG_BURST; // Ráfaga máxima de mensajes por conexión de célula.
+        public final int NODE_MSG_RATE; // Mensajes de datos por segundo admitidos por el nodo de todas sus células (0 = sin límite).
+        public final int NODE_MSG_BURST; // Ráfaga máxima de mensajes de todas las células del nodo.
+        public final int ADMISSION_STATS_INTERVAL_MILIS; // Periodo de registro de contadores por célula (0 = desactivado).
+        public final int CLIENT_QUEUE_CAPACITY; // Solicitudes en espera de despacho en el cliente (0 = sin límite).
+        public final MessageManager.QueuePolicy CLIENT_QUEUE_POLICY; // Con la cola llena: BLOCK, REJECT o SHED_OLDEST.
+        public final int CELL_OUTGOING_CAPACITY; // Mensajes en espera de escribirse al nodo, por carril de prioridad.
+        public final boolean HEDGE_ENABLED; // Reenviar (por otro nodo) las solicitudes que tardan más que el percentil dado.
+        public final int HEDGE_PERCENTILE; // Percentil de la latencia observada tras el cual se reenvía la solicitud.
+        public final int HEDGE_MIN_DELAY_MILIS; // Espera mínima antes de reenviar una solicitud.
+        public final int HEDGE_INITIAL_DELAY_MILIS; // Espera antes de reenviar mientras no haya suficientes muestras.
+        public final int REQUEST_DEADLINE_MILIS; // Tiempo máximo de espera de un resultado en el cliente (0 = sin límite).
+        public final int CANCEL_WINDOW_MILIS; // Tiempo durante el cual nodos y servidores recuerdan una cancelación.
+        public final int STREAM_CHUNK_SIZE; // Operandos por fragmento en los flujos del cliente.
+        public final int STREAM_PARTIAL_EVERY; // Cada cuántos fragmentos pide el cliente un resultado parcial (0 = solo el final).
+        public final int STREAM_IDLE_MILIS; // Inactividad tras la cual el servidor descarta un flujo incompleto (0 = nunca).
+        public final boolean EXPRESSION_OPTIMIZE; // Plegado de constantes y subexpresiones compartidas al compilar expresiones.
+        public final boolean COMPUTE_VECTORIZED; // Kernels con la Vector API en el servidor (requiere --add-modules jdk.incubator.vector).
+        public final String CAPTURE_FILE; // Archivo de captura del tráfico del nodo ({port} = puerto del nodo; vacío = sin captura).
+        public final int CAPTURE_SEGMENT_BYTES; // Tamaño de cada segmento del archivo de captura mapeado en memoria.
+        public final int METRICS_PORT; // Puerto del endpoint HTTP de métricas (Prometheus); el siguiente libre si está ocupado (0 = desactivado).
+        public final String METRICS_BIND_ADDRESS; // Interfaz del endpoint HTTP de métricas (vacío = loopback; 0.0.0.0 = todas).
+        public final boolean METRICS_JMX; // Publicar las métricas como MBean de JMX.
+        public final int TRACE_SAMPLE_EVERY; // El cliente traza una de cada tantas solicitudes (0 = sin trazas).
+        public final int EVENT_RING_SIZE; // Eventos que guarda la bitácora binaria de cada componente (0 = desactivada).
+        public final int EVENT_RING_DRAIN_MILIS; // Cada cuánto pasa la bitácora sus eventos nuevos al log (0 = solo bajo demanda).
+        // Opciones de los sockets de nodos y células (ver Sockets). Los tamaños de búfer en 0 dejan los del sistema.
+        public final boolean SOCKET_TCP_NODELAY;
+        public final boolean SOCKET_KEEPALIVE;
+        public final boolean SOCKET_REUSE_ADDRESS;
+        public final int SOCKET_SEND_BUFFER;    // SO_SNDBUF en bytes.
+        public final int SOCKET_RECEIVE_BUFFER; // SO_RCVBUF en bytes.
+        public final int SOCKET_BACKLOG;        // Conexiones pendientes de aceptar en el nodo.
+        public final int SOCKET_OUTPUT_BUFFER;  // Búfer del stream de salida (0 = una escritura al sistema por campo).
+        public final int SOCKET_INPUT_BUFFER;   // Búfer del stream de entrada (0 = una lectura al sistema por campo).
+        public final String UNIX_SOCKET_PATH;   // Ruta del socket de dominio Unix de un nodo; {port} es su puerto.
 
-        Config(Set<Pair<String, Integer>> nodes, int maxPendingAcks, int senderWaitMilis, int cellConnDelayMilis) {
+        Config(Set<Pair<String, Integer>> nodes, int maxPendingAcks, int senderWaitMilis, int cellConnDelayMilis, Properties prop) {
             NODES = nodes;
+            UNIX_NODES = parseNodes(prop.getProperty("NODES", ""), true);
             MAX_PENDING_ACKS = maxPendingAcks;
             SENDER_WAIT_MILIS = senderWaitMilis;
             CELL_CONN_DELAY_MILIS = cellConnDelayMilis;
+            NODE_PROBE_TIMEOUT_MILIS = intProperty(prop, "NODE_PROBE_TIMEOUT_MILIS", 500);
+            NODE_PROBE_SAMPLES = intProperty(prop, "NODE_PROBE_SAMPLES", 3);
+            NODE_LOAD_WEIGHT_MICROS = intProperty(prop, "NODE_LOAD_WEIGHT_MICROS", 1_000);
+            NODE_RESELECT_INTERVAL_MILIS = intProperty(prop, "NODE_RESELECT_INTERVAL_MILIS", 30_000);
+            NODE_RESELECT_THRESHOLD_MICROS = intProperty(prop, "NODE_RESELECT_THRESHOLD_MICROS", 3_000);
+            NODE_CONNECT_TIMEOUT_MILIS = intProperty(prop, "NODE_CONNECT_TIMEOUT_MILIS", 1_000);
+            NODE_RECONNECT_MIN_MILIS = intProperty(prop, "NODE_RECONNECT_MIN_MILIS", 50);
+            NODE_RECONNECT_MAX_MILIS = intProperty(prop, "NODE_RECONNECT_MAX_MILIS", 5_000);
+            OVERLAY_MODE = OverlayMode.valueOf(prop.getProperty("OVERLAY_MODE", "MESH").trim().toUpperCase());
+            OVERLAY_DEGREE = intProperty(prop, "OVERLAY_DEGREE", 4);
+            OVERLAY_TTL = intProperty(prop, "OVERLAY_TTL", 16);
+            OVERLAY_SEEN_WINDOW_MILIS = intProperty(prop, "OVERLAY_SEEN_WINDOW_MILIS", 500);
+            HEARTBEAT_INTERVAL_MILIS = intProperty(prop, "HEARTBEAT_INTERVAL_MILIS", 500);
+            HEARTBEAT_TIMEOUT_MILIS = intProperty(prop, "HEARTBEAT_TIMEOUT_MILIS", 2_000);
+            GOSSIP_INTERVAL_MILIS = intProperty(prop, "GOSSIP_INTERVAL_MILIS", 2_000);
+            LINK_RELIABILITY = Boolean.parseBoolean(prop.getProperty("LINK_RELIABILITY", "false").trim());
+            LINK_RETRANSMIT_MILIS = intProperty(prop, "LINK_RETRANSMIT_MILIS", 200);
+            LINK_BUFFER_MAX = intProperty(prop, "LINK_BUFFER_MAX", 10_000);
+            ACK_TIMEOUT_MILIS = intProperty(prop, "ACK_TIMEOUT_MILIS", 5_000);
+            FORWARD_SHARDS = intProperty(prop, "FORWARD_SHARDS", 0);
+            FORWARD_QUEUE_CAPACITY = intProperty(prop, "FORWARD_QUEUE_CAPACITY", 1_024);
+            FORWARD_FLUSH_EVERY = intProperty(prop, "FORWARD_FLUSH_EVERY", 32);
+            FORWARD_STATS_INTERVAL_MILIS = intProperty(prop, "FORWARD_STATS_INTERVAL_MILIS", 10_000);
+            PRIORITY_SCHEDULING = PriorityLanes.Scheduling.valueOf(prop.getProperty("PRIORITY_SCHEDULING", "STRICT").trim().toUpperCase());
+            PRIORITY_WEIGHTS = Arrays.stream(prop.getProperty("PRIORITY_WEIGHTS", "8,4,1").split(","))
+                    .mapToInt((w) -> Integer.parseInt(w.trim()))
+                    .toArray();
+            ADMISSION_OVERFLOW = AdmissionOverflow.valueOf(prop.getProperty("ADMISSION_OVERFLOW", "DELAY").trim().toUpperCase());
+            CELL_REQUEST_RATE = intProperty(prop, "CELL_REQUEST_RATE", 0);
+            CELL_REQUEST_BURST = intProperty(prop, "CELL_REQUEST_BURST", 100);
+            CELL_MSG_RATE = intProperty(prop, "CELL_MSG_RATE", 0);
+            CELL_MSG_BURST = intProperty(prop, "CELL_MSG_BURST", 200);
+            NODE_MSG_RATE = intProperty(prop, "NODE_MSG_RATE", 0);
+            NODE_MSG_BURST = intProperty(prop, "NODE_MSG_BURST", 1_000);
+            ADMISSION_STATS_INTERVAL_MILIS = intProperty(prop, "ADMISSION_STATS_INTERVAL_MILIS", 10_000);
+            CLIENT_QUEUE_CAPACITY = intProperty(prop, "CLIENT_QUEUE_CAPACITY", 1_000);
+            CLIENT_QUEUE_POLICY = MessageManager.QueuePolicy.valueOf(prop.getProperty("CLIENT_QUEUE_POLICY", "BLOCK").trim().toUpperCase());
+            CELL_OUTGOING_CAPACITY = intProperty(prop, "CELL_OUTGOING_CAPACITY", 1_024);
+            HEDGE_ENABLED = Boolean.parseBoolean(prop.getProperty("HEDGE_ENABLED", "false").trim());
+            HEDGE_PERCENTILE = intProperty(prop, "HEDGE_PERCENTILE", 95);
+            HEDGE_MIN_DELAY_MILIS = intProperty(prop, "HEDGE_MIN_DELAY_MILIS", 50);
+            HEDGE_INITIAL_DELAY_MILIS = intProperty(prop, "HEDGE_INITIAL_DELAY_MILIS", 1_000);
+            REQUEST_DEADLINE_MILIS = intProperty(prop, "REQUEST_DEADLINE_MILIS", 0);
+            CANCEL_WINDOW_MILIS = intProperty(prop, "CANCEL_WINDOW_MILIS", 1_000);
+            STREAM_CHUNK_SIZE = intProperty(prop, "STREAM_CHUNK_SIZE", 4_096);
+            STREAM_PARTIAL_EVERY = intProperty(prop, "STREAM_PARTIAL_EVERY", 0);
+            STREAM_IDLE_MILIS = intProperty(prop, "STREAM_IDLE_MILIS", 60_000);
+            EXPRESSION_OPTIMIZE = Boolean.parseBoolean(prop.getProperty("EXPRESSION_OPTIMIZE", "true").trim());
+            COMPUTE_VECTORIZED = Boolean.parseBoolean(prop.getProperty("COMPUTE_VECTORIZED", "true").trim());
+            CAPTURE_FILE = prop.getProperty("CAPTURE_FILE", "").trim();
+            CAPTURE_SEGMENT_BYTES = intProperty(prop, "CAPTURE_SEGMENT_BYTES", 64 << 20);
+            METRICS_PORT = intProperty(prop, "METRICS_PORT", 0);
+            METRICS_BIND_ADDRESS = prop.getProperty("METRICS_BIND_ADDRESS", "").trim();
+            METRICS_JMX = Boolean.parseBoolean(prop.getProperty("METRICS_JMX", "true").trim());
+            TRACE_SAMPLE_EVERY = intProperty(prop, "TRACE_SAMPLE_EVERY", 0);
+            EVENT_RING_SIZE = intProperty(prop, "EVENT_RING_SIZE", 16_384);
+            EVENT_RING_DRAIN_MILIS = intProperty(prop, "EVENT_RING_DRAIN_MILIS", 0);
+            SOCKET_TCP_NODELAY = Boolean.parseBoolean(prop.getProperty("SOCKET_TCP_NODELAY", "true").trim());
+            SOCKET_KEEPALIVE = Boolean.parseBoolean(prop.getProperty("SOCKET_KEEPALIVE", "true").trim());
+            SOCKET_REUSE_ADDRESS = Boolean.parseBoolean(prop.getProperty("SOCKET_REUSE_ADDRESS", "true").trim());
+            SOCKET_SEND_BUFFER = intProperty(prop, "SOCKET_SEND_BUFFER", 0);
+            SOCKET_RECEIVE_BUFFER = intProperty(prop, "SOCKET_RECEIVE_BUFFER", 0);
+            SOCKET_BACKLOG = intProperty(prop, "SOCKET_BACKLOG", 128);
+            SOCKET_OUTPUT_BUFFER = intProperty(prop, "SOCKET_OUTPUT_BUFFER", 8_192);
+            SOCKET_INPUT_BUFFER = intProperty(prop, "SOCKET_INPUT_BUFFER", 8_192);
+            UNIX_SOCKET_PATH = prop.getProperty("UNIX_SOCKET_PATH", "/tmp/compdist-nodo-{port}.sock").trim();
         }
 
         public int[] getNodePorts() {
@@ -29,6 +164,18 @@ public class ConfigReader {
             return this.NODES.stream().mapToInt(Pair::getValue1).toArray();
         }
 
+        // Socket de dominio Unix por el que se llega a `node`, o null si su entrada de NODES no lleva `unix:` (TCP).
+        public Path unixSocketPath(Pair<String, Integer> node) {
+            return this.UNIX_NODES.contains(node) ? this.unixSocketPath(node.getValue1()) : null;
+        }
+
+        // Socket de dominio Unix en el que escucha, además de en TCP, el nodo del puerto `port` si alguna entrada
+        // de NODES con ese puerto lleva `unix:`; null si no.
+        public Path unixSocketPath(int port) {
+            if (this.UNIX_NODES.stream().noneMatch((node) -> node.getValue1() == port)) return null;
+            return Path.of(this.UNIX_SOCKET_PATH.replace("{port}", String.valueOf(port)));
+        }
+
         // Configuración por defecto si no se encuentra o falla la carga del archivo.
         public static final Config defaultConfig =
                 new Config(
@@ -38,10 +185,40 @@ public class ConfigReader {
                                 Pair.with("localhost", 31012),
                                 Pair.with("localhost", 31013)
                         )
-                        , 10, 5_000, 5_000
+                        , 10, 5_000, 5_000, new Properties()
                 );
     }
 
+    // Lee una propiedad entera opcional, devolviendo `defaultValue` si no está definida.
+    static int intProperty(Properties prop, String key, int defaultValue) {
+        String value = prop.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    // Parsea la cadena NODES="host1:port1,unix:host2:port2" en un Set de Pares (javatuples): todas las entradas o,
+    // con `onlyUnix`, solo las que llevan el prefijo `unix:`. El prefijo elige el transporte (socket de dominio Unix
+    // en lugar de TCP) y no forma parte de la dirección: la identidad del nodo sigue siendo su host y puerto.
+    static Set<Pair<String, Integer>> parseNodes(String nodes, boolean onlyUnix) {
+        return Arrays.stream(nodes.split(","))
+                .map(String::trim)
+                .filter((str) -> !str.isEmpty() && (!onlyUnix || str.startsWith("unix:")))
+                .map((str) -> {
+                    String[] split = str.replaceFirst("^unix:", "").split(":");
+                    return Pair.with(split[0], Integer.parseInt(split[1]));
+                }).collect(Collectors.toUnmodifiableSet());
+    }
+
+    // Construye la configuración a partir de propiedades ya cargadas (el archivo config.properties u otras
+    // creadas en memoria, p. ej. por el arnés de carga de benchmarks). NODES, MAX_PENDING_ACKS, SENDER_WAIT_MILIS
+    // y CELL_CONN_DELAY_MILIS son obligatorias.
+    public static Config fromProperties(Properties prop) {
+        Set<Pair<String, Integer>> NODES = parseNodes(prop.getProperty("NODES"), false);
+        int MAX_PENDING_ACKS = Integer.parseInt(prop.getProperty("MAX_PENDING_ACKS").trim());
+        int SENDER_WAIT_MILIS = Integer.parseInt(prop.getProperty("SENDER_WAIT_MILIS").trim());
+        int CELL_CONN_DELAY_MILIS = Integer.parseInt(prop.getProperty("CELL_CONN_DELAY_MILIS").trim());
+        return new Config(NODES, MAX_PENDING_ACKS, SENDER_WAIT_MILIS, CELL_CONN_DELAY_MILIS, prop);
+    }
+
     public static Config readConfig(Logger LOGGER) {
         Properties prop = new Properties();
         InputStream input = null;
@@ -58,22 +235,8 @@ public class ConfigReader {
             // Cargar las propiedades
             prop.load(input);
 
-            // Obtener las propiedades
-            // Parsea la cadena NODES="host1:port1,host2:port2" en un Set de Pares.
-            Set<Pair> a = Arrays.stream(prop.getProperty("NODES").split(","))
-                    .map((str) -> {
-                        String[] split = str.split(":");
-                        return Pair.with(split[0], Integer.parseInt(split[1])); // Crea un Pair (javatuples) por cada nodo.
-                    }).collect(Collectors.toSet());
-            LOGGER.info("Class {}", a.getClass()); // Loguea la clase del Set (debug).
-            // Convierte el Set<Pair> a Set<Pair<String, Integer>> con casting explícito.
-            Set<Pair<String, Integer>> NODES = a.stream().map((v) -> (Pair<String, Integer>) v).collect(Collectors.toUnmodifiableSet());
-
-            int MAX_PENDING_ACKS = Integer.parseInt(prop.getProperty("MAX_PENDING_ACKS"));
-            int SENDER_WAIT_MILIS = Integer.parseInt(prop.getProperty("SENDER_WAIT_MILIS"));
-            int CELL_CONN_DELAY_MILIS = Integer.parseInt(prop.getProperty("CELL_CONN_DELAY_MILIS"));
-            resConfig = new Config(NODES, MAX_PENDING_ACKS, SENDER_WAIT_MILIS, CELL_CONN_DELAY_MILIS);
-        } catch (IOException | NumberFormatException |
+            resConfig = fromProperties(prop);
+        } catch (IOException | IllegalArgumentException |
                  NullPointerException e) {
             LOGGER.error("Error leyendo configuración, usando defaults: {}", e.getMessage());
             resConfig = Config.defaultConfig; // Vuelve a la configuración por defecto en caso de error.
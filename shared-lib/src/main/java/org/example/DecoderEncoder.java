@@ -1,22 +1,40 @@
 package org.example;
 
 import org.javatuples.Pair;
+import org.javatuples.Triplet;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 // Clase para serializar (escribir) y deserializar (leer) mensajes.
 public class DecoderEncoder {
+    // Bit alto del destinatario: el mensaje lleva una extensión de traza (Trace) después de la información.
+    // Los mensajes sin traza se serializan igual que antes.
+    static final int TRACE_FLAG = 0x8000;
+
     // Escribe un objeto Message en un DataOutputStream según un formato definido.
     public static void writeMsg(DataOutputStream dos, Message msg) throws IOException {
-        // 2 bytes: Destinatario (como short).
-        dos.writeShort(msg.getReceiver().toShort());
+        FlightEvents.FrameWrite event = new FlightEvents.FrameWrite();
+        event.begin();
+        writeFields(dos, msg);
+        event.commit(msg);
+    }
+
+    private static void writeFields(DataOutputStream dos, Message msg) throws IOException {
+        // 2 bytes: Destinatario (como short), con TRACE_FLAG si lleva traza.
+        dos.writeShort(receiverField(msg));
         // 8 bytes: Identificador del remitente.
         dos.write(msg.getSenderIdentifier());
         // 2 bytes: Número de servicio (como short).
         dos.writeShort(msg.getNumServicio().toShort());
+        // 1 byte: TTL (saltos restantes entre nodos).
+        dos.writeByte(msg.getTtl());
         byte[] bytesInfo = msg.getInformacion();
         byte[] bytesHash = msg.getHash();
         // 2 bytes: Longitud del hash del evento/información.
@@ -27,18 +45,35 @@ public class DecoderEncoder {
         dos.writeInt(bytesInfo.length);
         // (variable): Bytes de la información de servicio.
         dos.write(bytesInfo);
+        // (opcional): Extensión de traza.
+        if (msg.getTrace() != null) msg.getTrace().writeTo(dos);
+    }
+
+    private static int receiverField(Message msg) {
+        return msg.getTrace() != null ? msg.getReceiver().toShort() | TRACE_FLAG : msg.getReceiver().toShort();
     }
 
     // Lee desde un DataInputStream y reconstruye un objeto Message.
     public static Message readMsg(DataInputStream dis) throws IOException {
-        // Lee los campos en el mismo orden y tipo en que fueron escritos.
-        // 2 bytes: Destinatario.
+        // 2 bytes: Destinatario. Se lee antes de iniciar el evento para no contar la espera de un mensaje nuevo.
         short destinatario = dis.readShort();
+        FlightEvents.FrameRead event = new FlightEvents.FrameRead();
+        event.begin();
+        Message msg = readFields(dis, destinatario);
+        event.commit(msg);
+        return msg;
+    }
+
+    // Lee el resto del mensaje, después del destinatario.
+    private static Message readFields(DataInputStream dis, short destinatario) throws IOException {
+        // Lee los campos en el mismo orden y tipo en que fueron escritos.
         // 8 bytes: Identificador del remitente.
         byte[] identifier = new byte[8];
         dis.readFully(identifier); // Asegura leer exactamente 8 bytes.
         // 2 bytes: Número de servicio.
         short numServicio = dis.readShort();
+        // 1 byte: TTL.
+        byte ttl = dis.readByte();
         // 2 bytes: Longitud del hash.
         short longitudHash = dis.readShort();
         // (variable): Bytes del hash.
@@ -49,15 +84,58 @@ public class DecoderEncoder {
         // (variable): Bytes de la información.
         byte[] infoMsg = new byte[longitudInfo];
         dis.readFully(infoMsg);
+        // (opcional): Extensión de traza.
+        Trace trace = (destinatario & TRACE_FLAG) != 0 ? Trace.readFrom(dis) : null;
+        short receiver = (short) (destinatario & ~TRACE_FLAG);
 
         return new Message(
-                ProgramType.fromShort(destinatario).orElseThrow( // Convierte short a ProgramType.
-                        () -> new IllegalStateException("Unexpected receiver number: " + destinatario)),
+                ProgramType.fromShort(receiver).orElseThrow( // Convierte short a ProgramType.
+                        () -> new IllegalStateException("Unexpected receiver number: " + receiver)),
                 identifier,
                 ServiceNumber.fromShort(numServicio).orElseThrow( // Convierte short a ServiceNumber.
                         () -> new IllegalStateException("Unexpected service number: " + numServicio)),
+                ttl,
                 hash,
-                infoMsg);
+                infoMsg,
+                trace);
+    }
+
+    // Tamaño en bytes de un mensaje serializado con writeMsg (encabezado fijo de 19 bytes, hash, información y traza).
+    public static int frameLength(Message msg) {
+        int length = 19 + msg.getHash().length + msg.getInformacion().length;
+        return msg.getTrace() != null ? length + msg.getTrace().encodedLength() : length;
+    }
+
+    // Igual que writeMsg, sobre un ByteBuffer (p. ej. un archivo mapeado en memoria) con al menos frameLength bytes libres.
+    // Si la traza gana saltos entre frameLength y esta llamada, se escriben solo los que caben.
+    public static void writeMsg(ByteBuffer buf, Message msg) {
+        buf.putShort((short) receiverField(msg));
+        buf.put(msg.getSenderIdentifier());
+        buf.putShort(msg.getNumServicio().toShort());
+        buf.put((byte) msg.getTtl());
+        buf.putShort((short) msg.getHash().length);
+        buf.put(msg.getHash());
+        buf.putInt(msg.getInformacion().length);
+        buf.put(msg.getInformacion());
+        if (msg.getTrace() != null) msg.getTrace().writeTo(buf);
+    }
+
+    // Serializa un mensaje completo a un arreglo de bytes (mismo formato que writeMsg).
+    public static byte[] encode(Message msg) throws IOException {
+        FlightEvents.FrameEncode event = new FlightEvents.FrameEncode();
+        event.begin();
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(frameLength(msg));
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            writeFields(dataStream, msg);
+        }
+        event.commit(msg);
+        return byteStream.toByteArray();
+    }
+
+    // Reconstruye un mensaje serializado con `encode`, a partir de `offset`.
+    public static Message decode(byte[] bytes, int offset) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes, offset, bytes.length - offset));
+        return readFields(dis, dis.readShort());
     }
 
     // Procesa un mensaje de tipo solicitud (operación aritmética).
@@ -80,9 +158,43 @@ public class DecoderEncoder {
         };
     }
 
+    // Procesa una solicitud de tipo Expression: lee el plan y los valores de sus variables y evalúa la expresión.
+    public static int processExpression(Message msg) throws RuntimeException, IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
+        ExpressionPlan plan = ExpressionPlan.readFrom(in);
+        int[] values = new int[plan.getVariableCount()];
+        for (int i = 0; i < values.length; i++) values[i] = in.readInt(); // 4 bytes por variable.
+        return plan.evaluate(values);
+    }
+
+    // Procesa una solicitud de tipo TypedRequest: devuelve la operación y sus operandos (la evalúa el servidor).
+    public static Pair<Operation, TypedOperands> processTypedRequest(Message msg) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
+        short id = dis.readShort(); // 2 bytes: Operación.
+        Operation operation = OperationRegistry.fromId(id).orElseThrow(() -> new IOException("Operación desconocida: " + id));
+        byte code = dis.readByte(); // 1 byte: Tipo de los operandos.
+        NumericType type = NumericType.fromByte(code).orElseThrow(() -> new IOException("Tipo numérico desconocido: " + code));
+        int count = dis.readUnsignedByte(); // 1 byte: Número de operandos.
+        if (count != operation.arity() || !operation.types().contains(type))
+            throw new IOException(operation + " no acepta " + count + " operandos " + type);
+        return new Pair<>(operation, type.readOperands(dis, count));
+    }
+
+    // Procesa un mensaje de tipo TypedResult.
+    // Extrae el hash de la solicitud original y el resultado con su tipo.
+    public static Triplet<byte[], TypedValue, String> processTypedResult(Message msg) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
+        short hashLen = dis.readShort();
+        byte[] requestEventHash = new byte[hashLen];
+        dis.readFully(requestEventHash);
+        TypedValue value = TypedValue.readFrom(dis);
+        return new Triplet<>(requestEventHash, value, dis.available() > 0 ? dis.readUTF() : null);
+    }
+
     // Procesa un mensaje de tipo resultado.
-    // Extrae el hash de la solicitud original y el resultado numérico.
-    public static Pair<byte[], Integer> processResult(Message msg) throws IOException {
+    // Extrae el hash de la solicitud original, el resultado numérico y la descripción del error (null si la
+    // solicitud se calculó; ver Message.buildErrorResult).
+    public static Triplet<byte[], Integer, String> processResult(Message msg) throws IOException {
         DataInputStream dis = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
         // 2 bytes: Longitud del hash de la solicitud original.
         short hashLen = dis.readShort();
@@ -91,7 +203,9 @@ public class DecoderEncoder {
         dis.readFully(requestEventHash);
         // 4 bytes: Resultado de la operación.
         int res = dis.readInt();
-        return new Pair<>(requestEventHash, res); // Devuelve el hash y el resultado.
+        // (opcional): Descripción del error.
+        String error = dis.available() > 0 ? dis.readUTF() : null;
+        return new Triplet<>(requestEventHash, res, error); // Devuelve el hash, el resultado y el error.
     }
 
     // Procesa un mensaje de tipo identificación.
@@ -115,4 +229,115 @@ public class DecoderEncoder {
         dis.readFully(hash);
         return hash;
     }
+
+    // Procesa un mensaje de tipo Cancel.
+    // Extrae el hash de la solicitud cancelada (mismo formato que un Ack).
+    public static byte[] processCancel(Message msg) throws IOException {
+        return processAck(msg);
+    }
+
+    // Procesa un mensaje de tipo Busy.
+    // Extrae el hash del mensaje rechazado y la espera sugerida (ms) antes de reintentar.
+    public static Pair<byte[], Integer> processBusy(Message msg) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
+        // 2 bytes: Longitud del hash del mensaje rechazado.
+        short hashLen = dis.readShort();
+        // (variable): Bytes del hash del mensaje rechazado.
+        byte[] hash = new byte[hashLen];
+        dis.readFully(hash);
+        // 4 bytes: Espera sugerida.
+        int retryAfterMilis = dis.readInt();
+        return new Pair<>(hash, retryAfterMilis);
+    }
+
+    // Procesa un mensaje de tipo Ping.
+    // Extrae la marca de tiempo original y la carga reportada por el nodo.
+    public static Pair<Long, Integer> processPing(Message msg) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
+        // 8 bytes: Marca de tiempo del emisor del ping.
+        long timestamp = dis.readLong();
+        // 4 bytes: Carga del nodo.
+        int load = dis.readInt();
+        return new Pair<>(timestamp, load);
+    }
+
+    // Procesa un mensaje de tipo Membership.
+    // Extrae la lista de miembros (host y puerto) conocidos por el nodo emisor.
+    public static List<Pair<String, Integer>> processMembership(Message msg) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
+        // 2 bytes: Número de miembros.
+        int count = dis.readUnsignedShort();
+        List<Pair<String, Integer>> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String host = dis.readUTF(); // Host.
+            int port = dis.readInt();    // 4 bytes: Puerto.
+            members.add(Pair.with(host, port));
+        }
+        return members;
+    }
+
+    // Procesa un mensaje de tipo LinkData.
+    // Devuelve la sesión, la secuencia y la menor secuencia pendiente del emisor; el mensaje original se obtiene con
+    // `decode(msg.getInformacion(), 24)`.
+    public static Triplet<Long, Long, Long> processLinkData(Message msg) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
+        long session = dis.readLong();   // 8 bytes: Sesión del emisor.
+        long seq = dis.readLong();       // 8 bytes: Secuencia en el enlace.
+        long lowestSeq = dis.readLong(); // 8 bytes: Menor secuencia pendiente del emisor.
+        return new Triplet<>(session, seq, lowestSeq);
+    }
+
+    // Procesa un mensaje de tipo LinkAck.
+    // Devuelve la sesión, la secuencia acumulada y la secuencia reconocida.
+    public static Triplet<Long, Long, Long> processLinkAck(Message msg) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
+        long session = dis.readLong();    // 8 bytes: Sesión.
+        long cumulative = dis.readLong(); // 8 bytes: Secuencia acumulada.
+        long seq = dis.readLong();        // 8 bytes: Secuencia reconocida.
+        return new Triplet<>(session, cumulative, seq);
+    }
+
+    // Procesa un mensaje de tipo StreamOpen.
+    // Devuelve el identificador del flujo, la reducción y la frecuencia de resultados parciales.
+    public static Triplet<Long, Aggregation, Integer> processStreamOpen(Message msg) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
+        long streamId = dis.readLong(); // 8 bytes: Identificador del flujo.
+        byte code = dis.readByte();     // 1 byte: Reducción.
+        Aggregation aggregation = Aggregation.fromByte(code).orElseThrow(
+                () -> new IOException("Reducción desconocida: " + code));
+        int partialEvery = dis.readInt(); // 4 bytes: Frecuencia de resultados parciales.
+        return new Triplet<>(streamId, aggregation, partialEvery);
+    }
+
+    // Procesa un mensaje de tipo StreamChunk.
+    // Devuelve el identificador del flujo, el índice del fragmento y sus operandos.
+    public static Triplet<Long, Integer, int[]> processStreamChunk(Message msg) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
+        long streamId = dis.readLong(); // 8 bytes: Identificador del flujo.
+        int index = dis.readInt();      // 4 bytes: Índice del fragmento.
+        int length = dis.readInt();     // 4 bytes: Número de operandos.
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) values[i] = dis.readInt();
+        return new Triplet<>(streamId, index, values);
+    }
+
+    // Procesa un mensaje de tipo StreamClose.
+    // Devuelve el identificador del flujo y el número total de fragmentos.
+    public static Pair<Long, Integer> processStreamClose(Message msg) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
+        long streamId = dis.readLong(); // 8 bytes: Identificador del flujo.
+        int chunkCount = dis.readInt(); // 4 bytes: Fragmentos enviados.
+        return new Pair<>(streamId, chunkCount);
+    }
+
+    // Procesa un mensaje de tipo StreamResult.
+    public static StreamProgress processStreamResult(Message msg) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(msg.getInformacion()));
+        long streamId = dis.readLong();       // 8 bytes: Identificador del flujo.
+        boolean isFinal = dis.readBoolean();  // 1 byte: Resultado final o parcial.
+        int chunksFolded = dis.readInt();     // 4 bytes: Fragmentos acumulados (frontera confirmada).
+        long count = dis.readLong();          // 8 bytes: Operandos acumulados.
+        long value = dis.readLong();          // 8 bytes: Valor de la reducción.
+        return new StreamProgress(streamId, isFinal, chunksFolded, count, value);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package org.example;
+
+import org.apache.logging.log4j.Logger;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Bitácora binaria en memoria de los eventos de los caminos calientes (un mensaje leído, despachado, reconocido...),
+// en lugar de una línea de log con hashes en hexadecimal por mensaje. Es un anillo de EVENT_RING_SIZE ranuras
+// reservado al inicio: registrar un evento no reserva memoria, no formatea nada y no toma bloqueos (un
+// getAndIncrement para reclamar la ranura y escrituras en un long[]). Los eventos más viejos se sobrescriben.
+// Se decodifica solo al consultarlo: `snapshot` (o GET /events en el endpoint de métricas) y, con
+// EVENT_RING_DRAIN_MILIS > 0, un hilo que cada tanto pasa los eventos nuevos al log (INFO) fuera del camino caliente.
+//
+// Cada ranura ocupa SLOT_WORDS longs: secuencia + 1 (0 = nunca escrita), instante (System.nanoTime), tipo, servicio y
+// puerto del remitente, primeros 8 bytes del hash y un valor que depende del tipo. La secuencia se publica al final
+// (como un seqlock): quien lee descarta las ranuras en escritura o sobrescritas mientras las leía. Dos escritores solo
+// comparten ranura si el anillo da una vuelta completa mientras uno de ellos escribe.
+public class EventRing {
+    public enum Type {
+        RECEIVE,      // Mensaje leído de la conexión (valor: tamaño de la trama).
+        FORWARD,      // El nodo encoló el reenvío del mensaje (valor: ProgramType de la conexión de origen).
+        DISPATCH,     // Mensaje sacado de una cola de despacho y enviado (valor: espera en la cola, ns).
+        ACK_SENT,     // ACK enviado por el mensaje.
+        ACK_RECEIVED, // ACK recibido de un mensaje que lo esperaba (valor: RTT, ns).
+        RETRANSMIT,   // Mensaje reenviado por falta de ACK (valor: tiempo desde el envío anterior, ns).
+        RESULT_QUEUED,// El servidor encoló el resultado de la solicitud (valor: tiempo desde que empezó a calcularlo, ns).
+        CANCELLED,    // Solicitud cancelada o descartada por una cancelación.
+        RESULT        // El cliente recibió el resultado (valor: 1 si lo esperaba, 0 si era un duplicado).
+    }
+
+    // Evento decodificado. `service` es el número de servicio (-1 si no aplica); `peer`, el puerto del remitente.
+    public record Event(long sequence, long nanos, Type type, int service, int peer, long hashPrefix, long value) {
+        @Override
+        public String toString() {
+            String serviceName = this.service < 0 ? "-"
+                    : ServiceNumber.fromShort((short) this.service).map(Enum::name).orElse(String.valueOf(this.service));
+            return String.format("#%d %d %s %s de %d hash %016x valor %d", this.sequence, this.nanos, this.type, serviceName,
+                    this.peer, this.hashPrefix, this.value);
+        }
+    }
+
+    // Anillo vacío: `record` no hace nada. Es el de los MessageManager hasta que se les asigna uno.
+    public static final EventRing DISABLED = new EventRing(0);
+
+    private static final int SLOT_WORDS = 5;
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle HASH_PREFIX = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final long WRITING = -1; // Secuencia de una ranura mientras se escribe.
+
+    private final long[] words;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong(); // Siguiente número de secuencia (eventos registrados).
+
+    // `capacity` se redondea a la siguiente potencia de 2; 0 crea un anillo desactivado.
+    public EventRing(int capacity) {
+        int slots = capacity <= 0 ? 0 : capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.words = new long[slots * SLOT_WORDS];
+        this.mask = slots - 1;
+    }
+
+    // Crea el anillo de un componente según la configuración y lo publica en GET /events de `metrics` (si hay endpoint).
+    public static EventRing start(String component, ConfigReader.Config config, Logger logger, Metrics metrics) {
+        if (config.EVENT_RING_SIZE <= 0) return DISABLED;
+        EventRing ring = new EventRing(config.EVENT_RING_SIZE);
+        metrics.endpoint("/events", () -> {
+            StringBuilder out = new StringBuilder();
+            for (Event event : ring.snapshot()) out.append(event).append('\n');
+            return out.toString();
+        });
+        metrics.counter("event_ring_events_total", "Eventos registrados en la bitácora binaria", ring::getCount);
+        if (config.EVENT_RING_DRAIN_MILIS > 0) ring.startDraining(component, logger, config.EVENT_RING_DRAIN_MILIS);
+        return ring;
+    }
+
+    public int getCapacity() {
+        return this.mask + 1;
+    }
+
+    // Eventos registrados desde el inicio (incluidos los ya sobrescritos).
+    public long getCount() {
+        return this.next.get();
+    }
+
+    public void record(Type type, Message msg, long value) {
+        this.record(type, msg.getNumServicio().toShort(), msg.getSenderIdentifier(), msg.getHash(), value);
+    }
+
+    // `identifier` es el del remitente (se guarda su puerto) y `hash`, el del mensaje; ambos pueden ser null.
+    public void record(Type type, int service, byte[] identifier, byte[] hash, long value) {
+        if (this.mask < 0) return;
+        long sequence = this.next.getAndIncrement();
+        int base = (int) (sequence & this.mask) * SLOT_WORDS;
+        int peer = identifier == null || identifier.length < 2
+                ? 0 : ((identifier[identifier.length - 2] & 0xFF) << 8) | (identifier[identifier.length - 1] & 0xFF);
+        WORDS.setOpaque(this.words, base, WRITING);
+        VarHandle.storeStoreFence(); // Los campos no se adelantan a la marca de escritura.
+        this.words[base + 1] = System.nanoTime();
+        this.words[base + 2] = ((long) type.ordinal() << 48) | ((long) (service & 0xFFFF) << 16) | peer;
+        this.words[base + 3] = hash == null || hash.length < 8 ? 0 : (long) HASH_PREFIX.get(hash, 0);
+        this.words[base + 4] = value;
+        WORDS.setRelease(this.words, base, sequence + 1);
+    }
+
+    // Decodifica los eventos desde la secuencia `from` (o desde el más viejo que siga en el anillo) y devuelve la
+    // siguiente secuencia a leer. Los eventos en escritura al leerlos se omiten.
+    public long read(long from, Consumer<Event> consumer) {
+        long end = this.next.get();
+        long start = Math.max(from, end - this.getCapacity());
+        for (long sequence = start; sequence < end; sequence++) {
+            int base = (int) (sequence & this.mask) * SLOT_WORDS;
+            if ((long) WORDS.getAcquire(this.words, base) != sequence + 1) continue;
+            long nanos = this.words[base + 1];
+            long meta = this.words[base + 2];
+            long hashPrefix = this.words[base + 3];
+            long value = this.words[base + 4];
+            VarHandle.loadLoadFence();
+            if ((long) WORDS.getOpaque(this.words, base) != sequence + 1) continue; // Sobrescrito mientras se leía.
+            int service = (short) (meta >>> 16);
+            consumer.accept(new Event(sequence, nanos, Type.values()[(int) (meta >>> 48)], service, (int) (meta & 0xFFFF), hashPrefix, value));
+        }
+        return end;
+    }
+
+    // Los eventos que siguen en el anillo, del más viejo al más reciente.
+    public List<Event> snapshot() {
+        List<Event> events = new ArrayList<>();
+        this.read(0, events::add);
+        return events;
+    }
+
+    // Pasa al log, cada `intervalMilis`, los eventos registrados desde la pasada anterior.
+    public void startDraining(String component, Logger logger, int intervalMilis) {
+        Thread drainer = new Thread(() -> {
+            long from = 0;
+            while (true) {
+                try {
+                    Thread.sleep(intervalMilis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long oldest = this.next.get() - this.getCapacity();
+                if (from < oldest) logger.warn("Bitácora de {}: {} eventos sobrescritos antes de pasarlos al log", component, oldest - from);
+                from = this.read(from, (event) -> logger.info("{}", event));
+            }
+        }, "eventRing-" + component);
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,235 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Compila expresiones aritméticas como `(a+b)*(c-d)/e` a un ExpressionPlan que el servidor evalúa en una sola
+// solicitud. Acepta enteros, variables (identificadores), + - * /, menos unario y paréntesis.
+// Con `optimize` se pliegan las constantes (salvo la división entre cero, que se deja para que falle al evaluar)
+// y las subexpresiones repetidas se calculan una sola vez.
+public final class ExpressionCompiler {
+    // Nodo del árbol de la expresión. Con `optimize` los nodos iguales se comparten (un DAG), así que dos
+    // apariciones de la misma subexpresión son el mismo objeto.
+    private static final class Node {
+        final byte op;
+        final Node left;
+        final Node right;
+        final int value; // Constante o índice de variable.
+
+        Node(byte op, Node left, Node right, int value) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+            this.value = value;
+        }
+
+        // Los hijos ya están compartidos, así que basta compararlos por identidad (un solo nivel).
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Node other && this.op == other.op && this.value == other.value
+                    && this.left == other.left && this.right == other.right;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.op, this.value, System.identityHashCode(this.left), System.identityHashCode(this.right));
+        }
+    }
+
+    private final String text;
+    private final boolean optimize;
+    private int pos;
+    private final List<String> variables = new ArrayList<>();
+    private final Map<Node, Node> interned = new HashMap<>();
+
+    private ExpressionCompiler(String text, boolean optimize) {
+        this.text = text;
+        this.optimize = optimize;
+    }
+
+    public static ExpressionPlan compile(String text, boolean optimize) throws ParseException {
+        ExpressionCompiler compiler = new ExpressionCompiler(text, optimize);
+        Node root = compiler.parseExpression();
+        compiler.skipSpaces();
+        if (compiler.pos < text.length())
+            throw new ParseException("Carácter inesperado '" + text.charAt(compiler.pos) + "'", compiler.pos);
+        return compiler.emit(root);
+    }
+
+    // ============================== Análisis ==============================
+
+    // expresión := término (('+' | '-') término)*
+    private Node parseExpression() throws ParseException {
+        Node node = this.parseTerm();
+        while (true) {
+            char c = this.peek();
+            if (c == '+' || c == '-') {
+                this.pos++;
+                node = this.binary(c == '+' ? ExpressionPlan.ADD : ExpressionPlan.SUB, node, this.parseTerm());
+            } else {
+                return node;
+            }
+        }
+    }
+
+    // término := unario (('*' | '/') unario)*
+    private Node parseTerm() throws ParseException {
+        Node node = this.parseUnary();
+        while (true) {
+            char c = this.peek();
+            if (c == '*' || c == '/') {
+                this.pos++;
+                node = this.binary(c == '*' ? ExpressionPlan.MUL : ExpressionPlan.DIV, node, this.parseUnary());
+            } else {
+                return node;
+            }
+        }
+    }
+
+    // unario := '-' unario | primario
+    private Node parseUnary() throws ParseException {
+        if (this.peek() == '-') {
+            this.pos++;
+            Node operand = this.parseUnary();
+            if (this.optimize && operand.op == ExpressionPlan.CONST)
+                return this.node(ExpressionPlan.CONST, null, null, -operand.value);
+            return this.node(ExpressionPlan.NEG, operand, null, 0);
+        }
+        return this.parsePrimary();
+    }
+
+    // primario := entero | variable | '(' expresión ')'
+    private Node parsePrimary() throws ParseException {
+        char c = this.peek();
+        int start = this.pos;
+        if (c == '(') {
+            this.pos++;
+            Node node = this.parseExpression();
+            if (this.peek() != ')') throw new ParseException("Falta ')'", this.pos);
+            this.pos++;
+            return node;
+        }
+        if (Character.isDigit(c)) {
+            while (this.pos < this.text.length() && Character.isDigit(this.text.charAt(this.pos))) this.pos++;
+            try {
+                return this.node(ExpressionPlan.CONST, null, null, Integer.parseInt(this.text.substring(start, this.pos)));
+            } catch (NumberFormatException e) {
+                throw new ParseException("Entero fuera de rango: " + this.text.substring(start, this.pos), start);
+            }
+        }
+        if (Character.isLetter(c) || c == '_') {
+            while (this.pos < this.text.length() && (Character.isLetterOrDigit(this.text.charAt(this.pos)) || this.text.charAt(this.pos) == '_'))
+                this.pos++;
+            String name = this.text.substring(start, this.pos);
+            int index = this.variables.indexOf(name);
+            if (index < 0) {
+                index = this.variables.size();
+                this.variables.add(name);
+            }
+            return this.node(ExpressionPlan.VAR, null, null, index);
+        }
+        throw new ParseException(c == 0 ? "Expresión incompleta" : "Carácter inesperado '" + c + "'", this.pos);
+    }
+
+    private Node binary(byte op, Node left, Node right) {
+        if (this.optimize && left.op == ExpressionPlan.CONST && right.op == ExpressionPlan.CONST
+                && !(op == ExpressionPlan.DIV && right.value == 0)) {
+            return this.node(ExpressionPlan.CONST, null, null, ExpressionPlan.apply(op, left.value, right.value));
+        }
+        return this.node(op, left, right, 0);
+    }
+
+    private Node node(byte op, Node left, Node right, int value) {
+        Node node = new Node(op, left, right, value);
+        if (!this.optimize) return node;
+        return this.interned.computeIfAbsent(node, (k) -> k);
+    }
+
+    private char peek() {
+        this.skipSpaces();
+        return this.pos < this.text.length() ? this.text.charAt(this.pos) : 0;
+    }
+
+    private void skipSpaces() {
+        while (this.pos < this.text.length() && Character.isWhitespace(this.text.charAt(this.pos))) this.pos++;
+    }
+
+    // ============================== Generación ==============================
+
+    private final Map<Node, Integer> references = new IdentityHashMap<>();
+    private final Map<Node, Integer> tempSlots = new IdentityHashMap<>();
+    private int depth;
+    private int maxDepth;
+
+    private ExpressionPlan emit(Node root) {
+        this.countReferences(root);
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(byteStream)) {
+            this.emit(root, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // No ocurre al escribir en memoria.
+        }
+        return new ExpressionPlan(byteStream.toByteArray(), Math.max(1, this.maxDepth), this.tempSlots.size(), List.copyOf(this.variables));
+    }
+
+    // Cuenta cuántas veces se usa cada nodo; los hijos de un nodo compartido solo se cuentan una vez.
+    private void countReferences(Node node) {
+        if (node == null) return;
+        if (this.references.merge(node, 1, Integer::sum) > 1) return;
+        this.countReferences(node.left);
+        this.countReferences(node.right);
+    }
+
+    private void emit(Node node, DataOutputStream out) throws IOException {
+        Integer slot = this.tempSlots.get(node);
+        if (slot != null) { // Subexpresión ya calculada: se reutiliza.
+            out.writeByte(ExpressionPlan.TEMP);
+            out.writeShort(slot);
+            this.push();
+            return;
+        }
+        switch (node.op) {
+            case ExpressionPlan.CONST -> {
+                out.writeByte(ExpressionPlan.CONST);
+                out.writeInt(node.value);
+                this.push();
+            }
+            case ExpressionPlan.VAR -> {
+                out.writeByte(ExpressionPlan.VAR);
+                out.writeShort(node.value);
+                this.push();
+            }
+            case ExpressionPlan.NEG -> {
+                this.emit(node.left, out);
+                out.writeByte(ExpressionPlan.NEG);
+            }
+            default -> {
+                this.emit(node.left, out);
+                this.emit(node.right, out);
+                out.writeByte(node.op);
+                this.depth--;
+            }
+        }
+        // Las constantes y variables son tan baratas de apilar como un temporal: solo se guardan las operaciones.
+        if (this.references.get(node) > 1 && node.op != ExpressionPlan.CONST && node.op != ExpressionPlan.VAR) {
+            int newSlot = this.tempSlots.size();
+            this.tempSlots.put(node, newSlot);
+            out.writeByte(ExpressionPlan.TEE);
+            out.writeShort(newSlot);
+        }
+    }
+
+    private void push() {
+        this.depth++;
+        this.maxDepth = Math.max(this.maxDepth, this.depth);
+    }
+}
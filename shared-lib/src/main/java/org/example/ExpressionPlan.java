@@ -0,0 +1,168 @@
+package org.example;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+// Expresión aritmética compilada (ver ExpressionCompiler) en forma postfija, para evaluarla en una sola solicitud.
+// El programa trabaja sobre una pila de `int` con la misma aritmética que las solicitudes individuales
+// (desbordamiento de Java y error en la división entre cero). Las subexpresiones compartidas se calculan una vez,
+// se guardan en un temporal (TEE) y se reutilizan (TEMP).
+public final class ExpressionPlan {
+    // Códigos de operación. CONST lleva un int; VAR, TEE y TEMP llevan un índice (short).
+    static final byte CONST = 0; // Apila una constante.
+    static final byte VAR = 1;   // Apila el valor de una variable.
+    static final byte ADD = 2;
+    static final byte SUB = 3;
+    static final byte MUL = 4;
+    static final byte DIV = 5;
+    static final byte NEG = 6;   // Cambia el signo del tope.
+    static final byte TEE = 7;   // Copia el tope en un temporal (sin sacarlo de la pila).
+    static final byte TEMP = 8;  // Apila un temporal.
+
+    private final byte[] code;
+    private final int maxStack;
+    private final int tempCount;
+    // Nombres de las variables en el orden de sus índices. Solo los conoce quien compiló la expresión;
+    // en el servidor (plan leído de un mensaje) solo se conserva su número.
+    private final List<String> variables;
+
+    ExpressionPlan(byte[] code, int maxStack, int tempCount, List<String> variables) {
+        this.code = code;
+        this.maxStack = maxStack;
+        this.tempCount = tempCount;
+        this.variables = variables;
+    }
+
+    public List<String> getVariables() {
+        return this.variables;
+    }
+
+    public int getVariableCount() {
+        return this.variables.size();
+    }
+
+    // Tamaño del programa en bytes.
+    public int getCodeLength() {
+        return this.code.length;
+    }
+
+    // Evalúa la expresión con los valores de las variables (en el orden de getVariables()).
+    public int evaluate(int[] values) {
+        if (values.length != this.variables.size())
+            throw new IllegalArgumentException("Se esperaban " + this.variables.size() + " variables y se recibieron " + values.length);
+        int[] stack = new int[this.maxStack];
+        int[] temps = new int[this.tempCount];
+        int top = -1;
+        int pc = 0;
+        while (pc < this.code.length) {
+            byte op = this.code[pc++];
+            switch (op) {
+                case CONST -> {
+                    stack[++top] = readInt(pc);
+                    pc += 4;
+                }
+                case VAR -> {
+                    stack[++top] = values[readShort(pc)];
+                    pc += 2;
+                }
+                case TEE -> {
+                    temps[readShort(pc)] = stack[top];
+                    pc += 2;
+                }
+                case TEMP -> {
+                    stack[++top] = temps[readShort(pc)];
+                    pc += 2;
+                }
+                case NEG -> stack[top] = -stack[top];
+                case ADD, SUB, MUL, DIV -> {
+                    int n2 = stack[top--];
+                    int n1 = stack[top];
+                    stack[top] = apply(op, n1, n2);
+                }
+                default -> throw new IllegalStateException("Código de operación desconocido: " + op);
+            }
+        }
+        if (top != 0) throw new IllegalStateException("Programa mal formado: la pila termina con " + (top + 1) + " valores");
+        return stack[0];
+    }
+
+    // Aplica un operador binario (también lo usa el compilador para plegar constantes).
+    static int apply(byte op, int n1, int n2) {
+        return switch (op) {
+            case ADD -> n1 + n2;
+            case SUB -> n1 - n2;
+            case MUL -> n1 * n2;
+            case DIV -> {
+                if (n2 == 0)
+                    throw new RuntimeException("División por cero: " + n1 + "/" + n2);
+                yield n1 / n2;
+            }
+            default -> throw new IllegalStateException("Operador desconocido: " + op);
+        };
+    }
+
+    private int readInt(int pos) {
+        return (this.code[pos] << 24) | ((this.code[pos + 1] & 0xFF) << 16) | ((this.code[pos + 2] & 0xFF) << 8) | (this.code[pos + 3] & 0xFF);
+    }
+
+    private int readShort(int pos) {
+        return ((this.code[pos] & 0xFF) << 8) | (this.code[pos + 1] & 0xFF);
+    }
+
+    // Escribe el plan: profundidad máxima de la pila, temporales, número de variables y el programa.
+    public void writeTo(DataOutputStream dos) throws IOException {
+        dos.writeShort(this.maxStack);
+        dos.writeShort(this.tempCount);
+        dos.writeShort(this.variables.size());
+        dos.writeInt(this.code.length);
+        dos.write(this.code);
+    }
+
+    // Lee un plan escrito con `writeTo`. Las variables quedan sin nombre.
+    public static ExpressionPlan readFrom(DataInputStream dis) throws IOException {
+        int maxStack = dis.readUnsignedShort();
+        int tempCount = dis.readUnsignedShort();
+        int variableCount = dis.readUnsignedShort();
+        byte[] code = new byte[dis.readInt()];
+        dis.readFully(code);
+        return new ExpressionPlan(code, maxStack, tempCount, Collections.nCopies(variableCount, "?"));
+    }
+
+    // Representación legible del programa, para logging.
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        int pc = 0;
+        while (pc < this.code.length) {
+            byte op = this.code[pc++];
+            if (!sb.isEmpty()) sb.append(' ');
+            switch (op) {
+                case CONST -> {
+                    sb.append(readInt(pc));
+                    pc += 4;
+                }
+                case VAR -> {
+                    sb.append(this.variables.get(readShort(pc)));
+                    pc += 2;
+                }
+                case TEE -> {
+                    sb.append("tee#").append(readShort(pc));
+                    pc += 2;
+                }
+                case TEMP -> {
+                    sb.append("#").append(readShort(pc));
+                    pc += 2;
+                }
+                case ADD -> sb.append('+');
+                case SUB -> sb.append('-');
+                case MUL -> sb.append('*');
+                case DIV -> sb.append('/');
+                case NEG -> sb.append("neg");
+                default -> sb.append("?").append(op);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,110 @@
+package org.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Eventos de Java Flight Recorder del ciclo de vida de los mensajes: lectura, serialización y escritura de tramas,
+// encolado y despacho en MessageManager, ACKs y retransmisiones, reenvío en el nodo y cálculo en el servidor.
+// Sin una grabación activa, `begin`/`shouldCommit` no hacen nada y el hash no se formatea, así que pueden quedar en
+// producción. Para grabar: java -XX:StartFlightRecording=filename=rec.jfr ... y después
+// jfr print --events 'org.example.*' rec.jfr (o abrir rec.jfr en JDK Mission Control junto con GC y safepoints).
+// Se omite la pila de llamadas de cada evento: con miles de mensajes por segundo es el costo dominante de grabar.
+public final class FlightEvents {
+    private FlightEvents() {
+    }
+
+    // Campos comunes: el mensaje al que se refiere el evento.
+    @Category({"compdist", "Mensajes"})
+    @StackTrace(false)
+    public abstract static class MessageEvent extends Event {
+        @Label("Hash")
+        public String hash;
+        @Label("Servicio")
+        public String service;
+        @Label("Tamaño")
+        @DataAmount
+        public int bytes;
+
+        // Completa los campos del mensaje y registra el evento (solo si la grabación lo pide).
+        public void commit(Message msg) {
+            if (!this.shouldCommit()) return;
+            this.hash = Utils.byteArrayToHexString(msg.getHash());
+            this.service = msg.getNumServicio().name();
+            this.bytes = DecoderEncoder.frameLength(msg);
+            this.commit();
+        }
+    }
+
+    @Name("org.example.FrameRead")
+    @Label("Lectura de trama")
+    @Description("Lectura de un mensaje del socket, desde que llega su encabezado")
+    public static final class FrameRead extends MessageEvent {
+    }
+
+    @Name("org.example.FrameWrite")
+    @Label("Escritura de trama")
+    @Description("Escritura de un mensaje en el socket")
+    public static final class FrameWrite extends MessageEvent {
+    }
+
+    @Name("org.example.FrameEncode")
+    @Label("Serialización de trama")
+    @Description("Serialización de un mensaje a bytes (compartida por todos los destinos de un reenvío)")
+    public static final class FrameEncode extends MessageEvent {
+    }
+
+    @Name("org.example.Enqueue")
+    @Label("Encolado")
+    @Description("Mensaje añadido a una cola de despacho de MessageManager")
+    public static final class Enqueue extends MessageEvent {
+        @Label("Profundidad de la cola")
+        public int queueDepth;
+    }
+
+    @Name("org.example.Dispatch")
+    @Label("Despacho")
+    @Description("Mensaje sacado de una cola de despacho y entregado a la conexión")
+    public static final class Dispatch extends MessageEvent {
+        @Label("Espera en la cola")
+        @Timespan
+        public long queuedNanos;
+    }
+
+    @Name("org.example.AckRegistered")
+    @Label("ACK recibido")
+    @Description("ACK de un mensaje que esperaba confirmación")
+    public static final class AckRegistered extends MessageEvent {
+        @Label("RTT")
+        @Timespan
+        public long rttNanos;
+    }
+
+    @Name("org.example.Retransmit")
+    @Label("Retransmisión")
+    @Description("Mensaje reenviado por no recibir su ACK")
+    public static final class Retransmit extends MessageEvent {
+        @Label("Desde el envío anterior")
+        @Timespan
+        public long sinceLastSendNanos;
+    }
+
+    @Name("org.example.NodeForward")
+    @Label("Reenvío en el nodo")
+    @Description("Procesamiento de un mensaje recibido por el nodo: admisión, decisión de destino y encolado del reenvío")
+    public static final class NodeForward extends MessageEvent {
+        @Label("Origen")
+        public String sourceType;
+    }
+
+    @Name("org.example.RequestEvaluation")
+    @Label("Cálculo de solicitud")
+    @Description("Cálculo de una solicitud en el servidor")
+    public static final class RequestEvaluation extends MessageEvent {
+    }
+}
\ No newline at end of file
@@ -1,9 +1,13 @@
 package org.example;
 
+import org.javatuples.Pair;
+
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collection;
 
 public class Message {
     /*
@@ -11,22 +15,27 @@ public class Message {
     - Encabezado
         - Destinatario (ProgramType): 2 bytes. (0=nodo, 1=servidor, 2=solicitante)
         - Huella (senderIdentifier): 8 bytes. Identificador único del remitente.
-        - No. de servicio (ServiceNumber): 2 bytes. (0=ident, 1=suma, ..., 5=printRes, 99=ack)
+        - No. de servicio (ServiceNumber): 2 bytes. (0=ident, 1=suma, ..., 5=printRes, 6=ping, 7=heartbeat, 8=membership, 9=linkData, 10=linkAck, 11=busy, 12=cancel, 13-16=streams, 17=expression, 18-19=typed, 99=ack)
+        - TTL: 1 byte. Saltos restantes entre nodos (solo se usa con la topología OVERLAY_MODE=RING).
     - Cuerpo
         - Longitud de hash: 2 bytes.
         - Hash de evento/información: (variable). Hash de `informacion`.
         - Longitud de información de servicio: 4 bytes.
         - Información de servicio: (variable). Contenido específico del mensaje.
+    - Extensión de traza (opcional, solo si el bit alto del destinatario está encendido): ver Trace.
      */
     // ======================================= CAMPOS =======================================
     private final ProgramType receiver;       // Destinatario del mensaje.
     private final byte[] senderIdentifier;    // Quién envía el mensaje.
     private final ServiceNumber numServicio;  // Qué tipo de servicio/acción representa el mensaje.
+    private final byte ttl;                   // Saltos restantes entre nodos; las células envían 0.
     // Hash de `informacion`. Usado para identificar unívocamente el contenido del mensaje,
     // o para referenciar un mensaje original en respuestas o ACKs.
     private final byte[] hash;
     // Contenido específico del mensaje (ej: operandos, resultado, tipo de programa en identificación).
     private final byte[] informacion;
+    // Traza de la solicitud (y de su resultado) si fue muestreada; null en los demás mensajes.
+    private final Trace trace;
 
     // ======================================= GETTERS =======================================
     public ProgramType getReceiver() {
@@ -49,12 +58,40 @@ public class Message {
         return informacion;
     }
 
+    public int getTtl() {
+        return ttl & 0xFF; // Sin signo: 0 a 255.
+    }
+
+    public Trace getTrace() {
+        return trace;
+    }
+
     public Message(ProgramType receiver, byte[] senderIdentifier, ServiceNumber numServicio, byte[] hash, byte[] informacion) {
+        this(receiver, senderIdentifier, numServicio, (byte) 0, hash, informacion);
+    }
+
+    public Message(ProgramType receiver, byte[] senderIdentifier, ServiceNumber numServicio, byte ttl, byte[] hash, byte[] informacion) {
+        this(receiver, senderIdentifier, numServicio, ttl, hash, informacion, null);
+    }
+
+    public Message(ProgramType receiver, byte[] senderIdentifier, ServiceNumber numServicio, byte ttl, byte[] hash, byte[] informacion, Trace trace) {
         this.receiver = receiver;
         this.senderIdentifier = senderIdentifier;
         this.numServicio = numServicio;
+        this.ttl = ttl;
         this.hash = hash;
         this.informacion = informacion;
+        this.trace = trace;
+    }
+
+    // Devuelve una copia del mensaje con otro TTL (comparte los arreglos, que no se modifican, y la traza).
+    public Message withTtl(int ttl) {
+        return new Message(this.receiver, this.senderIdentifier, this.numServicio, (byte) ttl, this.hash, this.informacion, this.trace);
+    }
+
+    // Devuelve una copia del mensaje que lleva `trace` (null para quitarla).
+    public Message withTrace(Trace trace) {
+        return new Message(this.receiver, this.senderIdentifier, this.numServicio, this.ttl, this.hash, this.informacion, trace);
     }
 
     // Construye un mensaje de identificación.
@@ -80,7 +117,68 @@ public class Message {
             case MUL -> ServiceNumber.Multiplication;
             case DIV -> ServiceNumber.Division;
         };
-        return new Message(ProgramType.SERVER, senderIdentifier, serviceNumber, Utils.sha256(infoArr), infoArr);
+        // El hash cubre la operación además de los operandos: solo las solicitudes idénticas comparten hash
+        // (el cliente las agrupa en una sola solicitud en curso).
+        byte[] hashInput = ByteBuffer.allocate(2 + infoArr.length).putShort(serviceNumber.toShort()).put(infoArr).array();
+        return new Message(ProgramType.SERVER, senderIdentifier, serviceNumber, Utils.sha256(hashInput), infoArr);
+    }
+
+    // Construye una solicitud de evaluación de una expresión completa (una sola solicitud en lugar de una por operador).
+    // `informacion` contiene el plan compilado y los valores de sus variables; el resultado llega como PrintResult.
+    public static Message buildExpression(byte[] senderIdentifier, ExpressionPlan plan, int[] values) throws IOException {
+        if (values.length != plan.getVariableCount())
+            throw new IllegalArgumentException("Se esperaban " + plan.getVariableCount() + " variables y se recibieron " + values.length);
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(10 + plan.getCodeLength() + 4 * values.length);
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            plan.writeTo(dataStream);                     // Plan compilado.
+            for (int value : values) dataStream.writeInt(value); // Valores de las variables, en orden.
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(ProgramType.SERVER, senderIdentifier, ServiceNumber.Expression, Utils.sha256(infoArr), infoArr);
+    }
+
+    // Construye una solicitud de una operación del registro (OperationRegistry).
+    // `informacion` contiene el identificador de la operación, el tipo numérico, el número de operandos y los operandos.
+    public static Message buildTypedRequest(byte[] senderIdentifier, Operation operation, TypedOperands operands) throws IOException {
+        if (operands.count() != operation.arity())
+            throw new IllegalArgumentException(operation + " requiere " + operation.arity() + " operandos");
+        if (!operation.types().contains(operands.type()))
+            throw new IllegalArgumentException(operation + " no acepta operandos " + operands.type());
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeShort(operation.id());            // Operación.
+            dataStream.writeByte(operands.type().toByte());   // Tipo de los operandos.
+            dataStream.writeByte(operands.count());           // Número de operandos.
+            operands.type().writeOperands(dataStream, operands);
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(ProgramType.SERVER, senderIdentifier, ServiceNumber.TypedRequest, Utils.sha256(infoArr), infoArr);
+    }
+
+    // Construye el resultado de un TypedRequest.
+    // `informacion` contiene el hash de la solicitud original y el resultado con su tipo.
+    public static Message buildTypedResult(byte[] senderIdentifier, TypedValue res, byte[] requestHash) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(2 + requestHash.length + 9);
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeShort(requestHash.length); // Longitud del hash de la solicitud original.
+            dataStream.write(requestHash);             // Hash de la solicitud original.
+            res.writeTo(dataStream);                   // Tipo y valor del resultado.
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(ProgramType.SOLICITANT, senderIdentifier, ServiceNumber.TypedResult, Utils.sha256(infoArr), infoArr);
+    }
+
+    // Construye un TypedResult de error (operación no implementada o que falló al evaluarse), como buildErrorResult.
+    public static Message buildTypedErrorResult(byte[] senderIdentifier, byte[] requestHash, String error) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(2 + requestHash.length + 5 + 2 + error.length());
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeShort(requestHash.length);              // Longitud del hash de la solicitud original.
+            dataStream.write(requestHash);                          // Hash de la solicitud original.
+            TypedValue.ofLong(0, true).writeTo(dataStream);         // Sin resultado (INT 0).
+            dataStream.writeUTF(error);                             // Descripción del error.
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(ProgramType.SOLICITANT, senderIdentifier, ServiceNumber.TypedResult, Utils.sha256(infoArr), infoArr);
     }
 
     // Construye un mensaje de resultado.
@@ -98,6 +196,21 @@ public class Message {
         return new Message(ProgramType.SOLICITANT, senderIdentifier, ServiceNumber.PrintResult, Utils.sha256(infoArr), infoArr);
     }
 
+    // Construye un resultado de error: la solicitud no pudo calcularse (p. ej. división entre cero al evaluar una
+    // expresión con variables). Tras el resultado (0) lleva la descripción del error, con la que el cliente falla
+    // el futuro de la solicitud en lugar de esperarla indefinidamente.
+    public static Message buildErrorResult(byte[] senderIdentifier, byte[] requestHash, String error) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(2 + requestHash.length + 4 + 2 + error.length());
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeShort(requestHash.length); // Longitud del hash de la solicitud original.
+            dataStream.write(requestHash);             // Hash de la solicitud original.
+            dataStream.writeInt(0);                    // Sin resultado numérico.
+            dataStream.writeUTF(error);                // Descripción del error.
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(ProgramType.SOLICITANT, senderIdentifier, ServiceNumber.PrintResult, Utils.sha256(infoArr), infoArr);
+    }
+
     // Construye un mensaje de Acuse de Recibo (Ack).
     // `informacion` contiene el hash del mensaje original que se está reconociendo.
     public static Message buildAck(ProgramType receiver, byte[] senderIdentifier, byte[] eventoOriginalHash) throws IOException {
@@ -112,8 +225,150 @@ public class Message {
         return new Message(receiver, senderIdentifier, ServiceNumber.Ack, Utils.sha256(infoArr), infoArr);
     }
 
+    // Construye un mensaje de sondeo (ping) o su respuesta.
+    // `informacion` contiene la marca de tiempo del emisor del ping (que el nodo devuelve sin cambios)
+    // y la carga reportada por el nodo (número de células conectadas; -1 en la solicitud).
+    public static Message buildPing(ProgramType receiver, byte[] senderIdentifier, long timestamp, int load) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(8 + 4);
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeLong(timestamp); // Marca de tiempo (System.nanoTime) del emisor del ping.
+            dataStream.writeInt(load);       // Carga del nodo.
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(receiver, senderIdentifier, ServiceNumber.Ping, Utils.sha256(infoArr), infoArr);
+    }
+
+    // Construye un latido entre nodos. `informacion` va vacía: basta con que llegue el mensaje.
+    public static Message buildHeartbeat(byte[] senderIdentifier) {
+        byte[] infoArr = new byte[0];
+        return new Message(ProgramType.NODE, senderIdentifier, ServiceNumber.Heartbeat, Utils.sha256(infoArr), infoArr);
+    }
+
+    // Construye un mensaje con la lista de miembros (host y puerto) que conoce el nodo emisor.
+    public static Message buildMembership(byte[] senderIdentifier, Collection<Pair<String, Integer>> members) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeShort(members.size()); // Número de miembros.
+            for (Pair<String, Integer> member : members) {
+                dataStream.writeUTF(member.getValue0()); // Host (2 bytes de longitud + UTF-8).
+                dataStream.writeInt(member.getValue1()); // Puerto.
+            }
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(ProgramType.NODE, senderIdentifier, ServiceNumber.Membership, Utils.sha256(infoArr), infoArr);
+    }
+
+    // Envuelve un mensaje ya serializado para enviarlo por un enlace confiable entre nodos.
+    // `informacion` contiene la sesión del nodo emisor, el número de secuencia en el enlace, la menor secuencia que
+    // el emisor aún puede retransmitir y el mensaje original. Las anteriores a esa ya no llegarán (se reconocieron o
+    // se descartaron con el búfer lleno): el receptor no las espera.
+    // Como hash se usa el del mensaje original, para no calcular otro SHA-256 por cada salto.
+    public static Message buildLinkData(byte[] senderIdentifier, long session, long seq, long lowestSeq, Message inner) throws IOException {
+        byte[] innerBytes = DecoderEncoder.encode(inner);
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(8 + 8 + 8 + innerBytes.length);
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeLong(session);   // Sesión del emisor (cambia si el nodo se reinicia).
+            dataStream.writeLong(seq);       // Número de secuencia en el enlace.
+            dataStream.writeLong(lowestSeq); // Menor secuencia pendiente del emisor.
+            dataStream.write(innerBytes);    // Mensaje original serializado.
+        }
+        return new Message(ProgramType.NODE, senderIdentifier, ServiceNumber.LinkData, inner.getHash(), byteStream.toByteArray());
+    }
+
+    // Construye el acuse de un LinkData: secuencia acumulada (todas las anteriores recibidas) y la secuencia recibida.
+    public static Message buildLinkAck(byte[] senderIdentifier, long session, long cumulativeSeq, long seq) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(8 * 3);
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeLong(session);       // Sesión del nodo que envió los LinkData.
+            dataStream.writeLong(cumulativeSeq); // Mayor secuencia tal que todas las anteriores se recibieron.
+            dataStream.writeLong(seq);           // Secuencia del LinkData que se está reconociendo.
+        }
+        return new Message(ProgramType.NODE, senderIdentifier, ServiceNumber.LinkAck, new byte[0], byteStream.toByteArray());
+    }
+
+    // Construye el rechazo de un mensaje que excedió el límite de tráfico de la célula en el nodo.
+    // `informacion` contiene el hash del mensaje rechazado y el tiempo sugerido antes de reintentar.
+    public static Message buildBusy(ProgramType receiver, byte[] senderIdentifier, byte[] rejectedMsgHash, int retryAfterMilis) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(2 + rejectedMsgHash.length + 4);
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeShort(rejectedMsgHash.length); // Longitud del hash del mensaje rechazado.
+            dataStream.write(rejectedMsgHash);             // Hash del mensaje rechazado.
+            dataStream.writeInt(retryAfterMilis);          // Espera sugerida antes de reintentar.
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(receiver, senderIdentifier, ServiceNumber.Busy, Utils.sha256(infoArr), infoArr);
+    }
+
+    // Construye la cancelación de una solicitud: nodos y servidores descartan las copias que aún no procesan.
+    // `informacion` contiene el hash de la solicitud cancelada.
+    public static Message buildCancel(byte[] senderIdentifier, byte[] requestHash) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(2 + requestHash.length);
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeShort(requestHash.length); // Longitud del hash de la solicitud.
+            dataStream.write(requestHash);             // Hash de la solicitud cancelada.
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(ProgramType.SERVER, senderIdentifier, ServiceNumber.Cancel, Utils.sha256(infoArr), infoArr);
+    }
+
+    // Construye la apertura de un flujo de operandos.
+    // `informacion` contiene el identificador del flujo, la reducción y cada cuántos fragmentos se pide un
+    // resultado parcial (0 = solo el final).
+    public static Message buildStreamOpen(byte[] senderIdentifier, long streamId, Aggregation aggregation, int partialEvery) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(8 + 1 + 4);
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeLong(streamId);                // Identificador del flujo (aleatorio, elegido por el cliente).
+            dataStream.writeByte(aggregation.toByte());    // Reducción a aplicar.
+            dataStream.writeInt(partialEvery);             // Frecuencia de resultados parciales.
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(ProgramType.SERVER, senderIdentifier, ServiceNumber.StreamOpen, Utils.sha256(infoArr), infoArr);
+    }
+
+    // Construye un fragmento de un flujo.
+    // `informacion` contiene el identificador del flujo, el índice del fragmento y sus operandos.
+    public static Message buildStreamChunk(byte[] senderIdentifier, long streamId, int index, int[] values) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(8 + 4 + 4 + 4 * values.length);
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeLong(streamId);      // Identificador del flujo.
+            dataStream.writeInt(index);          // Índice del fragmento (desde 0).
+            dataStream.writeInt(values.length);  // Número de operandos.
+            for (int value : values) dataStream.writeInt(value);
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(ProgramType.SERVER, senderIdentifier, ServiceNumber.StreamChunk, Utils.sha256(infoArr), infoArr);
+    }
+
+    // Construye el cierre de un flujo.
+    // `informacion` contiene el identificador del flujo y el número total de fragmentos.
+    public static Message buildStreamClose(byte[] senderIdentifier, long streamId, int chunkCount) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(8 + 4);
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeLong(streamId);  // Identificador del flujo.
+            dataStream.writeInt(chunkCount); // Fragmentos enviados.
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(ProgramType.SERVER, senderIdentifier, ServiceNumber.StreamClose, Utils.sha256(infoArr), infoArr);
+    }
+
+    // Construye un resultado (parcial o final) de un flujo.
+    // `informacion` contiene el identificador del flujo, si es final, la frontera de fragmentos acumulados,
+    // el número de operandos acumulados y el valor de la reducción.
+    public static Message buildStreamResult(byte[] senderIdentifier, StreamProgress progress) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(8 + 1 + 4 + 8 + 8);
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeLong(progress.streamId());
+            dataStream.writeBoolean(progress.isFinal());
+            dataStream.writeInt(progress.chunksFolded());
+            dataStream.writeLong(progress.count());
+            dataStream.writeLong(progress.value());
+        }
+        byte[] infoArr = byteStream.toByteArray();
+        return new Message(ProgramType.SOLICITANT, senderIdentifier, ServiceNumber.StreamResult, Utils.sha256(infoArr), infoArr);
+    }
+
     public String toString() {
-        return String.format("Message { receiver: %s; senderIdentifier: %s; numServicio: %s; hash: %s; informacion %s}",
-                this.receiver, Utils.byteArrayToHexString(this.senderIdentifier), this.numServicio, Utils.byteArrayToHexString(this.hash), Arrays.toString(this.informacion));
+        return String.format("Message { receiver: %s; senderIdentifier: %s; numServicio: %s; ttl: %d; hash: %s; informacion %s}",
+                this.receiver, Utils.byteArrayToHexString(this.senderIdentifier), this.numServicio, this.ttl, Utils.byteArrayToHexString(this.hash), Arrays.toString(this.informacion));
     }
 }
\ No newline at end of file
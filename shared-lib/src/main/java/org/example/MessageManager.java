@@ -2,66 +2,161 @@ package org.example;
 
 import org.apache.logging.log4j.Logger;
 import org.javatuples.Pair;
+import org.javatuples.Triplet;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 // Clase abstracta para gestionar la lógica de envío y recepción de mensajes.
 public abstract class MessageManager {
+    // Qué hace el cliente al encolar una solicitud cuando su cola de envío está llena.
+    public enum QueuePolicy {
+        BLOCK,      // Bloquea a quien encola hasta que haya espacio.
+        REJECT,     // Rechaza la solicitud nueva de inmediato.
+        SHED_OLDEST // Descarta la solicitud más antigua en espera para hacer espacio.
+    }
+
     protected final org.apache.logging.log4j.Logger LOGGER;
-    // Almacena mensajes enviados que están esperando un ACK (confirmación de recepción).
-    private static final Set<Message> waitingForAckMsgs = ConcurrentHashMap.newKeySet();
+    // Almacena mensajes enviados que están esperando un ACK (confirmación de recepción),
+    // junto con el instante (System.nanoTime) de su último envío. Es de cada instancia, de modo que varias células
+    // pueden convivir en una JVM (p. ej. en el arnés de carga de benchmarks).
+    protected final Map<Message, Long> waitingForAckMsgs = new ConcurrentHashMap<>();
+    private final LongAdder retransmissionCount = new LongAdder(); // Mensajes reenviados por falta de ACK.
+    // Tiempo entre el último envío de un mensaje y la llegada de su ACK.
+    protected final Metrics.Histogram ackRtt = new Metrics.Histogram();
+    // Bitácora binaria de los eventos por mensaje (ver EventRing): reemplaza las líneas de log por mensaje.
+    protected volatile EventRing events = EventRing.DISABLED;
 
     // Colas de mensajes pendientes de ser enviados, organizadas por tipo de servicio.
+    // El despachador las recorre en orden de prioridad (ver Priority): resultados antes que solicitudes.
     protected final Map<ServiceNumber, LinkedHashSet<Message>> sendingQueues;
     // Máximo número de Acks pendientes antes de que el despachador priorice reenviar mensajes no confirmados.
     protected final int MAX_PENDING_ACKS;
     // Tiempo de espera (en milisegundos) para el bucle del despachador.
     protected final int WAIT_MILIS;
+    // Tiempo (en milisegundos) tras el cual un mensaje sin ACK se retransmite aunque haya pocos pendientes.
+    // Con LINK_RELIABILITY los nodos reparan las pérdidas en cada enlace y este tiempo puede ser mucho mayor.
+    protected final int ACK_TIMEOUT_MILIS;
 
-    MessageManager(Set<ServiceNumber> serviceNumbers, org.apache.logging.log4j.Logger logger, int maxPendingAcks, int waitMilis) {
+    MessageManager(Set<ServiceNumber> serviceNumbers, org.apache.logging.log4j.Logger logger, int maxPendingAcks, int waitMilis, int ackTimeoutMilis) {
         this.LOGGER = logger;
         this.MAX_PENDING_ACKS = maxPendingAcks;
         this.WAIT_MILIS = waitMilis;
-        this.sendingQueues = new ConcurrentHashMap<>();
+        this.ACK_TIMEOUT_MILIS = ackTimeoutMilis;
+        this.sendingQueues = new ConcurrentSkipListMap<>(Comparator.comparing(Priority::of).thenComparing(Comparator.naturalOrder()));
         // Inicializa una cola para cada tipo de servicio que este manager manejará.
         for (ServiceNumber serviceNumber : serviceNumbers) {
             this.sendingQueues.put(serviceNumber, new LinkedHashSet<>()); // LinkedHashSet para mantener orden de inserción y evitar duplicados.
         }
     }
 
+    public void setEventRing(EventRing events) {
+        this.events = events;
+    }
+
+    public EventRing getEventRing() {
+        return this.events;
+    }
+
     // Añade un mensaje a la lista de espera de ACK.
     public void addMsgToWaitingForAckList(Message msg) {
-        waitingForAckMsgs.add(msg);
+        waitingForAckMsgs.put(msg, System.nanoTime());
     }
 
     // Reenvía todos los mensajes que están esperando ACK.
-    public void sendMessagesWaitingForAck(DataOutputStream outStream) throws IOException {
-        for (Message msg : waitingForAckMsgs) {
-            DecoderEncoder.writeMsg(outStream, msg);
+    public void sendMessagesWaitingForAck(CellConnection connection) throws IOException {
+        for (Map.Entry<Message, Long> entry : waitingForAckMsgs.entrySet()) {
+            this.retransmit(connection, entry.getKey(), entry.getValue(), System.nanoTime());
         }
     }
 
+    // Reenvía los mensajes que llevan más de ACK_TIMEOUT_MILIS esperando ACK.
+    public void sendExpiredMessagesWaitingForAck(CellConnection connection) throws IOException {
+        long now = System.nanoTime();
+        for (Map.Entry<Message, Long> entry : waitingForAckMsgs.entrySet()) {
+            if (now - entry.getValue() < this.ACK_TIMEOUT_MILIS * 1_000_000L) continue;
+            this.retransmit(connection, entry.getKey(), entry.getValue(), now);
+        }
+    }
+
+    // Reenvía un mensaje sin ACK enviado por última vez en `lastSentNanos`.
+    private void retransmit(CellConnection connection, Message msg, long lastSentNanos, long now) throws IOException {
+        FlightEvents.Retransmit event = new FlightEvents.Retransmit();
+        event.begin();
+        // Se registra antes de escribirlo: un Busy puede llegar antes de que writeMsg regrese y su hora de
+        // reintento no debe ser sobrescrita (el mensaje esperaría ACK_TIMEOUT_MILIS completo).
+        waitingForAckMsgs.replace(msg, now);
+        connection.writeMsg(msg);
+        this.retransmissionCount.increment();
+        this.events.record(EventRing.Type.RETRANSMIT, msg, now - lastSentNanos);
+        event.sinceLastSendNanos = now - lastSentNanos;
+        event.commit(msg);
+    }
+
+    // Número de mensajes reenviados por no recibir su ACK a tiempo.
+    public long getRetransmissionCount() {
+        return this.retransmissionCount.sum();
+    }
+
+    // Mensajes enviados que siguen esperando ACK.
+    public int getPendingAckCount() {
+        return waitingForAckMsgs.size();
+    }
+
     // Registra la recepción de un ACK, eliminando el mensaje correspondiente de la lista de espera.
     public void registerAck(byte[] originalMsgHash) {
-        waitingForAckMsgs.removeIf((msg) -> {
-            if (Arrays.equals(msg.getHash(), originalMsgHash)) {
-                LOGGER.debug("Mensaje eliminado de espera de Ack ({})", Utils.byteArrayToHexString(originalMsgHash));
+        waitingForAckMsgs.entrySet().removeIf((entry) -> {
+            if (Arrays.equals(entry.getKey().getHash(), originalMsgHash)) {
+                long rttNanos = System.nanoTime() - entry.getValue();
+                this.ackRtt.recordMicros(rttNanos / 1_000);
+                FlightEvents.AckRegistered event = new FlightEvents.AckRegistered();
+                event.rttNanos = rttNanos;
+                event.commit(entry.getKey());
+                this.events.record(EventRing.Type.ACK_RECEIVED, entry.getKey(), rttNanos);
                 return true; // Condición para eliminar.
             }
             return false;
         });
     }
 
+    // Registra que el nodo rechazó un mensaje por exceder el límite de tráfico de la célula (Busy):
+    // el mensaje sigue esperando ACK, pero no se retransmite antes de `retryAfterMilis`.
+    public void registerBusy(byte[] rejectedMsgHash, int retryAfterMilis) {
+        long retryAt = System.nanoTime() + retryAfterMilis * 1_000_000L - this.ACK_TIMEOUT_MILIS * 1_000_000L;
+        for (Message msg : waitingForAckMsgs.keySet()) {
+            if (Arrays.equals(msg.getHash(), rejectedMsgHash)) waitingForAckMsgs.replace(msg, retryAt);
+        }
+    }
+
+    // Publica en `metrics` los ACKs pendientes, las retransmisiones, el RTT de los ACKs y la profundidad de las
+    // colas de despacho. Las subclases añaden sus propias métricas.
+    public void registerMetrics(Metrics metrics) {
+        metrics.gauge("pending_acks", "Mensajes enviados que esperan ACK", this::getPendingAckCount);
+        metrics.counter("retransmissions_total", "Mensajes reenviados por no recibir su ACK a tiempo", this::getRetransmissionCount);
+        metrics.histogram("ack_rtt_seconds", "Tiempo entre el último envío de un mensaje y su ACK", this.ackRtt);
+        for (Map.Entry<ServiceNumber, LinkedHashSet<Message>> entry : this.sendingQueues.entrySet()) {
+            LinkedHashSet<Message> queue = entry.getValue();
+            metrics.gauge("dispatch_queue_depth", "Mensajes en espera de despacho", () -> {
+                synchronized (this) {
+                    return queue.size();
+                }
+            }, "service", entry.getKey().name());
+        }
+    }
+
     // Método para debugging.
     public void printWaitingForAckMsgState() {
         System.out.println("Estado de waitingForAckMsgs: {");
-        for (Message msg : waitingForAckMsgs) {
+        for (Message msg : waitingForAckMsgs.keySet()) {
             System.out.println(" - " + Utils.byteArrayToHexString(msg.getHash()));
         }
         System.out.println("}");
@@ -81,35 +176,180 @@ public abstract class MessageManager {
     }
 
     // Añade un mensaje a la cola de despacho correspondiente a su tipo de servicio.
-    public void addMsgToDispatchQueue(Message msg) {
+    // Las colas de despacho se protegen con el monitor de este objeto (las usan el receptor y el despachador).
+    public synchronized void addMsgToDispatchQueue(Message msg) {
         LinkedHashSet<Message> queue = sendingQueues.get(msg.getNumServicio());
         if (queue != null && !queue.contains(msg)) { // Evita duplicados en la cola.
             queue.addLast(msg); // Añade al final de la cola.
+            FlightEvents.Enqueue event = new FlightEvents.Enqueue();
+            event.queueDepth = queue.size();
+            event.commit(msg);
         } else if (queue == null) {
             LOGGER.warn("No hay lista de despacho para este servicio: {}", msg.getNumServicio());
         }
     }
 
+    // Extrae el siguiente mensaje de una cola de despacho.
+    protected synchronized Message dequeue(LinkedHashSet<Message> queue) {
+        return queue.removeFirst();
+    }
+
     // Bucle principal del hilo despachador (implementación específica en subclases).
-    public abstract void dispatcherLoop(byte[] cellIdentifier, DataOutputStream outStream);
+    public abstract void dispatcherLoop(CellConnection connection);
 
     // Bucle principal del hilo receptor (implementación específica en subclases).
-    public abstract void receiverLoop(byte[] cellIdentifier, DataInputStream socketInStream, DataOutputStream socketOutStream, Function<String, Void> showResult);
+    public abstract void receiverLoop(CellConnection connection, Function<String, Void> showResult);
 
     // Implementación del MessageManager para el Servidor (CelulaServidor).
     public static final class ServerMessageManager extends MessageManager {
-        ServerMessageManager(Logger logger, int maxPendingAcks, int waitMilis) {
-            // El servidor principalmente despacha mensajes de PrintResult.
-            super(Set.of(ServiceNumber.PrintResult), logger, maxPendingAcks, waitMilis);
+        // Solicitudes canceladas por los clientes ((solicitante, hash) -> instante de la cancelación). Sus resultados
+        // pendientes se descartan y las copias que lleguen durante CANCEL_WINDOW_MILIS se reconocen sin calcularse.
+        // La clave incluye al solicitante: otra célula puede enviar una solicitud idéntica (mismo hash).
+        private final Map<Pair<ByteBuffer, ByteBuffer>, Long> cancelledRequests = new ConcurrentHashMap<>();
+        // Solicitantes de cada resultado aún sin ACK (hash del resultado -> identificadores). Las solicitudes idénticas
+        // comparten resultado, que solo se descarta cuando todos sus solicitantes lo cancelan.
+        private final Map<ByteBuffer, Set<ByteBuffer>> resultRequesters = new ConcurrentHashMap<>();
+        private final int CANCEL_WINDOW_MILIS;
+        // Flujos de operandos en curso (solo los usa el hilo receptor).
+        private final StreamAggregator streamAggregator;
+        // Kernels de las operaciones del registro (TypedRequest); null si el servidor no las implementa.
+        private final OperationEvaluator operationEvaluator;
+        // Tiempo de cálculo de las solicitudes, por servicio.
+        private final Map<ServiceNumber, Metrics.Histogram> computeTime = new EnumMap<>(ServiceNumber.class);
+        private long evaluationStartNanos; // Inicio del cálculo en curso (solo lo usa el hilo receptor).
+
+        ServerMessageManager(Logger logger, int maxPendingAcks, int waitMilis, int ackTimeoutMilis, int cancelWindowMilis) {
+            this(logger, maxPendingAcks, waitMilis, ackTimeoutMilis, cancelWindowMilis, new StreamAggregator(60_000), null);
+        }
+
+        ServerMessageManager(Logger logger, int maxPendingAcks, int waitMilis, int ackTimeoutMilis, int cancelWindowMilis,
+                             StreamAggregator streamAggregator, OperationEvaluator operationEvaluator) {
+            // El servidor despacha resultados de operaciones y de flujos.
+            super(Set.of(ServiceNumber.PrintResult, ServiceNumber.StreamResult, ServiceNumber.TypedResult), logger, maxPendingAcks, waitMilis, ackTimeoutMilis);
+            this.CANCEL_WINDOW_MILIS = cancelWindowMilis;
+            this.streamAggregator = streamAggregator;
+            this.operationEvaluator = operationEvaluator;
+            for (ServiceNumber serviceNumber : List.of(ServiceNumber.Addition, ServiceNumber.Subtraction, ServiceNumber.Multiplication,
+                    ServiceNumber.Division, ServiceNumber.Expression, ServiceNumber.TypedRequest, ServiceNumber.StreamOpen,
+                    ServiceNumber.StreamChunk, ServiceNumber.StreamClose)) {
+                this.computeTime.put(serviceNumber, new Metrics.Histogram());
+            }
+        }
+
+        // Inicia la medición del cálculo de una solicitud (evento de JFR y histograma de compute_seconds).
+        private FlightEvents.RequestEvaluation beginEvaluation() {
+            FlightEvents.RequestEvaluation event = new FlightEvents.RequestEvaluation();
+            event.begin();
+            this.evaluationStartNanos = System.nanoTime();
+            return event;
+        }
+
+        // El resultado de una solicitud trazada continúa su traza.
+        private static Message traced(Message req, Message result, byte[] cellIdentifier) {
+            if (req.getTrace() == null) return result;
+            req.getTrace().append(Trace.Stage.SERVER_COMPUTED, cellIdentifier);
+            return result.withTrace(req.getTrace());
+        }
+
+        private void endEvaluation(Message req, FlightEvents.RequestEvaluation event) {
+            this.computeTime.get(req.getNumServicio()).recordNanosSince(this.evaluationStartNanos);
+            event.commit(req);
+        }
+
+        @Override
+        public void registerMetrics(Metrics metrics) {
+            super.registerMetrics(metrics);
+            for (Map.Entry<ServiceNumber, Metrics.Histogram> entry : this.computeTime.entrySet()) {
+                metrics.histogram("compute_seconds", "Tiempo de cálculo de las solicitudes", entry.getValue(), "service", entry.getKey().name());
+            }
+            metrics.gauge("cancelled_requests", "Cancelaciones recordadas (CANCEL_WINDOW_MILIS)", this.cancelledRequests::size);
+        }
+
+        // Registra la cancelación de una solicitud de `requester`: descarta su resultado si aún no se envió y deja de
+        // retransmitirlo si ya se envió, salvo que otra célula espere el mismo resultado.
+        private void registerCancel(byte[] requester, byte[] requestHash) throws IOException {
+            long now = System.nanoTime();
+            this.cancelledRequests.values().removeIf((cancelledAt) -> now - cancelledAt > this.CANCEL_WINDOW_MILIS * 1_000_000L);
+            this.cancelledRequests.put(Pair.with(ByteBuffer.wrap(requester), ByteBuffer.wrap(requestHash)), now);
+            synchronized (this) {
+                for (LinkedHashSet<Message> queue : this.sendingQueues.values()) {
+                    queue.removeIf((result) -> isResultFor(result, requestHash) && this.releaseResult(result, requester));
+                }
+            }
+            waitingForAckMsgs.keySet().removeIf((result) -> isResultFor(result, requestHash) && this.releaseResult(result, requester));
+        }
+
+        // Quita a `requester` de los solicitantes de `result` e indica si ya no le queda ninguno.
+        private boolean releaseResult(Message result, byte[] requester) {
+            ByteBuffer resultHash = ByteBuffer.wrap(result.getHash());
+            Set<ByteBuffer> requesters = this.resultRequesters.get(resultHash);
+            if (requesters != null) {
+                requesters.remove(ByteBuffer.wrap(requester));
+                if (!requesters.isEmpty()) return false;
+            }
+            this.resultRequesters.remove(resultHash);
+            return true;
+        }
+
+        // Indica si el solicitante de `req` la canceló hace menos de CANCEL_WINDOW_MILIS.
+        private boolean isCancelled(Message req) {
+            if (this.cancelledRequests.isEmpty()) return false;
+            Long cancelledAt = this.cancelledRequests.get(Pair.with(ByteBuffer.wrap(req.getSenderIdentifier()), ByteBuffer.wrap(req.getHash())));
+            return cancelledAt != null && System.nanoTime() - cancelledAt <= this.CANCEL_WINDOW_MILIS * 1_000_000L;
+        }
+
+        // Descripción de un error de decodificación o evaluación para el resultado de error.
+        private static String errorText(Exception e) {
+            return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+
+        // Encola el resultado de `req`, recordando a su solicitante (ver registerCancel).
+        private void queueResult(Message req, Message result) {
+            this.resultRequesters.computeIfAbsent(ByteBuffer.wrap(result.getHash()), (hash) -> ConcurrentHashMap.newKeySet())
+                    .add(ByteBuffer.wrap(req.getSenderIdentifier()));
+            this.addMsgToDispatchQueue(result);
+        }
+
+        // Aplica un mensaje de flujo al estado de su reducción y devuelve los resultados a enviar.
+        private List<StreamProgress> foldStream(Message msg) throws IOException {
+            return switch (msg.getNumServicio()) {
+                case StreamOpen -> {
+                    Triplet<Long, Aggregation, Integer> open = DecoderEncoder.processStreamOpen(msg);
+                    yield this.streamAggregator.open(open.getValue0(), open.getValue1(), open.getValue2());
+                }
+                case StreamChunk -> {
+                    Triplet<Long, Integer, int[]> chunk = DecoderEncoder.processStreamChunk(msg);
+                    yield this.streamAggregator.chunk(chunk.getValue0(), chunk.getValue1(), chunk.getValue2());
+                }
+                case StreamClose -> {
+                    Pair<Long, Integer> close = DecoderEncoder.processStreamClose(msg);
+                    yield this.streamAggregator.close(close.getValue0(), close.getValue1());
+                }
+                default -> List.of();
+            };
+        }
+
+        // Indica si `msg` es el resultado de la solicitud con hash `requestHash`.
+        private static boolean isResultFor(Message msg, byte[] requestHash) {
+            try {
+                return switch (msg.getNumServicio()) {
+                    case PrintResult -> Arrays.equals(DecoderEncoder.processResult(msg).getValue0(), requestHash);
+                    case TypedResult -> Arrays.equals(DecoderEncoder.processTypedResult(msg).getValue0(), requestHash);
+                    default -> false;
+                };
+            } catch (IOException e) {
+                return false;
+            }
         }
 
         @Override
-        public void dispatcherLoop(byte[] cellIdentifier, DataOutputStream outStream) {
+        public void dispatcherLoop(CellConnection connection) {
+            byte[] cellIdentifier = connection.getIdentifier();
             while (true) {
                 // Si hay demasiados Acks pendientes, prioriza reenviar esos mensajes.
                 if (waitingForAckMsgs.size() >= this.MAX_PENDING_ACKS) {
                     try {
-                        this.sendMessagesWaitingForAck(outStream);
+                        this.sendMessagesWaitingForAck(connection);
                         Thread.sleep(this.WAIT_MILIS);
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
@@ -122,20 +362,32 @@ public abstract class MessageManager {
                     continue;
                 }
 
+                // Retransmite los mensajes cuyo ACK ya tardó demasiado.
+                try {
+                    this.sendExpiredMessagesWaitingForAck(connection);
+                } catch (IOException e) {
+                    LOGGER.error("Error en hilo de despacho ({}) al retransmitir: {}", Utils.byteArrayToHexString(cellIdentifier), e.getMessage());
+                    System.exit(1);
+                }
+
                 // Si no hay muchos Ack's pendientes, procesa las colas de envío normales.
                 for (Map.Entry<ServiceNumber, LinkedHashSet<Message>> entry : this.sendingQueues.entrySet()) {
                     ServiceNumber serviceNumber = entry.getKey();
                     LinkedHashSet<Message> queue = entry.getValue();
                     if (queue.isEmpty()) continue;
 
-                    Message nextMsgToSend = queue.removeFirst(); // Obtiene y remueve el primer mensaje.
-                    LOGGER.info("Despachando mensaje: {} ({})", serviceNumber, Utils.byteArrayToHexString(nextMsgToSend.getHash()));
-                    if (serviceNumber == ServiceNumber.PrintResult) {
+                    Message nextMsgToSend = this.dequeue(queue); // Obtiene y remueve el primer mensaje.
+                    if (Priority.of(serviceNumber) == Priority.RESULT) {
                         try {
-                            DecoderEncoder.writeMsg(outStream, nextMsgToSend);
-                            LOGGER.info("Respondiendo con resultado para: {}", Utils.byteArrayToHexString(nextMsgToSend.getHash()));
-                            this.addMsgToWaitingForAckList(nextMsgToSend); // Añade este resultado a la lista de espera de Acks
-                            LOGGER.info("Mensaje de resultadoo añadido a lista de espera de Acks ({})", Utils.byteArrayToHexString(nextMsgToSend.getHash()));
+                            FlightEvents.Dispatch dispatch = new FlightEvents.Dispatch();
+                            dispatch.begin();
+                            if (nextMsgToSend.getTrace() != null) nextMsgToSend.getTrace().append(Trace.Stage.SERVER_SEND, cellIdentifier);
+                            // Se añade a la lista de espera de Acks antes de escribirlo: el ACK puede llegar antes de
+                            // que writeMsg regrese y se descartaría por desconocido (el resultado se retransmitiría).
+                            this.addMsgToWaitingForAckList(nextMsgToSend);
+                            connection.writeMsg(nextMsgToSend);
+                            dispatch.commit(nextMsgToSend);
+                            this.events.record(EventRing.Type.DISPATCH, nextMsgToSend, 0);
                         } catch (IOException e) {
                             LOGGER.fatal("Error en hilo de despacho del servidor ({}) al enviar resultado: {}", Utils.byteArrayToHexString(cellIdentifier), e.getMessage());
                             System.exit(1);
@@ -151,35 +403,123 @@ public abstract class MessageManager {
         }
 
         @Override
-        public void receiverLoop(byte[] cellIdentifier, DataInputStream socketInStream, DataOutputStream socketOutStream, Function<String, Void> showResult) {
+        public void receiverLoop(CellConnection connection, Function<String, Void> showResult) {
+            byte[] cellIdentifier = connection.getIdentifier();
             while (true) {
                 try {
-                    Message req = DecoderEncoder.readMsg(socketInStream);
-                    LOGGER.info("Recibiendo msj: {} ({})", req.getNumServicio(), Utils.byteArrayToHexString(req.getHash()));
+                    Message req = connection.readMsg();
+                    if (req.getTrace() != null) req.getTrace().append(Trace.Stage.SERVER_RECEIVE, cellIdentifier);
+                    this.events.record(EventRing.Type.RECEIVE, req, DecoderEncoder.frameLength(req));
 
                     switch (req.getNumServicio()) {
                         case Addition, Subtraction, Multiplication, Division: // Si es una solicitud de operación
                             // Envía ACK inmediatamente.
                             Message ackMsg = Message.buildAck(ProgramType.SOLICITANT, cellIdentifier, req.getHash());
-                            DecoderEncoder.writeMsg(socketOutStream, ackMsg);
-                            LOGGER.info("Enviando Ack de request original con hash: {}", Utils.byteArrayToHexString(req.getHash()));
+                            connection.writeMsg(ackMsg);
+                            this.events.record(EventRing.Type.ACK_SENT, req, 0);
 
+                            // Una copia de una solicitud ya cancelada (p. ej. reenviada por cobertura) no se calcula.
+                            if (this.isCancelled(req)) {
+                                this.events.record(EventRing.Type.CANCELLED, req, 0);
+                                break;
+                            }
                             // Procesa la solicitud y construye el mensaje de resultado.
+                            FlightEvents.RequestEvaluation evaluation = this.beginEvaluation();
                             int res = DecoderEncoder.processRequest(req);
-                            Message responseMsg = Message.buildResult(cellIdentifier, res, req.getHash());
+                            this.endEvaluation(req, evaluation);
+                            Message responseMsg = traced(req, Message.buildResult(cellIdentifier, res, req.getHash()), cellIdentifier);
                             // Add message to dispatch queue
-                            this.addMsgToDispatchQueue(responseMsg);
-                            LOGGER.info("Mensaje de respuesta añadido a fila de envío: {}", Utils.byteArrayToHexString(req.getHash()));
+                            this.queueResult(req, responseMsg);
+                            this.events.record(EventRing.Type.RESULT_QUEUED, req, System.nanoTime() - this.evaluationStartNanos);
+                            break;
+                        case Expression: // Expresión completa: se evalúa en una pasada y responde con un solo PrintResult.
+                            connection.writeMsg(Message.buildAck(ProgramType.SOLICITANT, cellIdentifier, req.getHash()));
+                            if (this.isCancelled(req)) {
+                                this.events.record(EventRing.Type.CANCELLED, req, 0);
+                                break;
+                            }
+                            int value;
+                            FlightEvents.RequestEvaluation expressionEvaluation = this.beginEvaluation();
+                            try {
+                                value = DecoderEncoder.processExpression(req);
+                                this.endEvaluation(req, expressionEvaluation);
+                            } catch (IOException | RuntimeException e) {
+                                // Con variables, la división entre cero solo se detecta al evaluar, y un plan truncado o
+                                // mal formado al decodificarlo: se responde con un resultado de error para que el cliente
+                                // no espere la solicitud indefinidamente (y el servidor no termine por un mensaje ajeno).
+                                LOGGER.error("No se pudo evaluar la expresión ({}): {}", Utils.byteArrayToHexString(req.getHash()), e.getMessage());
+                                this.queueResult(req, traced(req, Message.buildErrorResult(cellIdentifier, req.getHash(), errorText(e)), cellIdentifier));
+                                break;
+                            }
+                            this.queueResult(req, traced(req, Message.buildResult(cellIdentifier, value, req.getHash()), cellIdentifier));
+                            this.events.record(EventRing.Type.RESULT_QUEUED, req, System.nanoTime() - this.evaluationStartNanos);
+                            break;
+                        case TypedRequest:
+                            connection.writeMsg(Message.buildAck(ProgramType.SOLICITANT, cellIdentifier, req.getHash()));
+                            if (this.isCancelled(req)) {
+                                this.events.record(EventRing.Type.CANCELLED, req, 0);
+                                break;
+                            }
+                            Pair<Operation, TypedOperands> typed;
+                            try {
+                                typed = DecoderEncoder.processTypedRequest(req);
+                            } catch (IOException | RuntimeException e) {
+                                // Operación u operandos que este servidor no reconoce (p. ej. una operación registrada
+                                // solo en el cliente): se responde con un error en lugar de terminar el hilo receptor.
+                                LOGGER.error("Solicitud tipada no válida ({}): {}", Utils.byteArrayToHexString(req.getHash()), e.getMessage());
+                                this.queueResult(req, traced(req, Message.buildTypedErrorResult(cellIdentifier, req.getHash(), errorText(e)), cellIdentifier));
+                                break;
+                            }
+                            if (this.operationEvaluator == null) {
+                                LOGGER.warn("Este servidor no implementa operaciones del registro: {}", typed.getValue0());
+                                this.queueResult(req, traced(req, Message.buildTypedErrorResult(cellIdentifier, req.getHash(),
+                                        "Operación no implementada en el servidor: " + typed.getValue0()), cellIdentifier));
+                                break;
+                            }
+                            TypedValue typedValue;
+                            FlightEvents.RequestEvaluation typedEvaluation = this.beginEvaluation();
+                            try {
+                                typedValue = this.operationEvaluator.evaluate(typed.getValue0(), typed.getValue1());
+                                this.endEvaluation(req, typedEvaluation);
+                            } catch (RuntimeException e) {
+                                LOGGER.error("No se pudo evaluar {} ({}): {}", typed.getValue0(), Utils.byteArrayToHexString(req.getHash()), e.getMessage());
+                                this.queueResult(req, traced(req, Message.buildTypedErrorResult(cellIdentifier, req.getHash(), errorText(e)), cellIdentifier));
+                                break;
+                            }
+                            this.queueResult(req, traced(req, Message.buildTypedResult(cellIdentifier, typedValue, req.getHash()), cellIdentifier));
+                            this.events.record(EventRing.Type.RESULT_QUEUED, req, System.nanoTime() - this.evaluationStartNanos);
+                            break;
+                        case StreamOpen, StreamChunk, StreamClose:
+                            // Cada mensaje del flujo se reconoce: el cliente retransmite los fragmentos sin ACK.
+                            connection.writeMsg(Message.buildAck(ProgramType.SOLICITANT, cellIdentifier, req.getHash()));
+                            FlightEvents.RequestEvaluation foldEvaluation = this.beginEvaluation();
+                            List<StreamProgress> folded = this.foldStream(req);
+                            this.endEvaluation(req, foldEvaluation);
+                            for (StreamProgress progress : folded) {
+                                this.addMsgToDispatchQueue(Message.buildStreamResult(cellIdentifier, progress));
+                                LOGGER.info("Resultado {} del flujo {}: {} fragmentos, {} operandos, valor {}", progress.isFinal() ? "final" : "parcial",
+                                        Long.toHexString(progress.streamId()), progress.chunksFolded(), progress.count(), progress.value());
+                            }
                             break;
                         case Ack:
-                            byte[] originalMsgHash = DecoderEncoder.processAck(req);
-                            LOGGER.info("Recibido Ack con contenido: {}", Utils.byteArrayToHexString(originalMsgHash));
-                            this.registerAck(originalMsgHash);
+                            byte[] ackedHash = DecoderEncoder.processAck(req);
+                            this.registerAck(ackedHash);
+                            this.resultRequesters.remove(ByteBuffer.wrap(ackedHash));
                             break;
                         case Identification:
                             LOGGER.info("Recibida identificación de: ", DecoderEncoder.processIdentification(req));
                             break;
-                        case PrintResult:
+                        case Busy:
+                            Pair<byte[], Integer> busy = DecoderEncoder.processBusy(req);
+                            LOGGER.warn("Nodo ocupado, resultado rechazado ({}); reintento en {}ms", Utils.byteArrayToHexString(busy.getValue0()), busy.getValue1());
+                            this.registerBusy(busy.getValue0(), busy.getValue1());
+                            break;
+                        case Cancel:
+                            byte[] cancelledHash = DecoderEncoder.processCancel(req);
+                            this.events.record(EventRing.Type.CANCELLED, req.getNumServicio().toShort(), req.getSenderIdentifier(), cancelledHash, 0);
+                            this.registerCancel(req.getSenderIdentifier(), cancelledHash);
+                            break;
+                        case PrintResult, StreamResult, TypedResult:
                             break;
                     }
                 } catch (IOException e) {
@@ -195,16 +535,452 @@ public abstract class MessageManager {
     public static final class ClientMessageManager extends MessageManager {
         // Almacena hashes de las solicitudes enviadas por el cliente, para las cuales se espera un resultado.
         // Se usa ByteBuffer porque byte[] no funciona bien como clave en Set/Map directamente (compara referencias, no contenido).
-        private static final Set<ByteBuffer> lastMsgsToWaitResult = ConcurrentHashMap.newKeySet();
+        private final Set<ByteBuffer> lastMsgsToWaitResult = ConcurrentHashMap.newKeySet();
+        // Futuro de cada solicitud en curso enviada con `submit`, por hash de la solicitud. Las solicitudes idénticas
+        // enviadas mientras la primera sigue en curso dependen de este futuro y comparten una sola solicitud en la red;
+        // cada llamador recibe una copia, y la entrada se quita en cuanto el futuro se completa (resultado, error,
+        // vencimiento o descarte, que también retiran la solicitud de `inFlight`).
+        private final Map<ByteBuffer, CompletableFuture<Integer>> pendingResults = new ConcurrentHashMap<>();
+        private final Map<ByteBuffer, CompletableFuture<TypedValue>> pendingTypedResults = new ConcurrentHashMap<>(); // Igual, para TypedRequest.
+        private final LongAdder coalescedCount = new LongAdder(); // Solicitudes agrupadas con una idéntica en curso.
+
+        // Límite de solicitudes en espera de despacho (todas las colas) y política al alcanzarlo.
+        // Las colas de envío y los campos de métricas se protegen con el monitor de este objeto.
+        private final int QUEUE_CAPACITY;
+        private final QueuePolicy QUEUE_POLICY;
+        private final Map<Message, Long> enqueuedAt = new HashMap<>(); // Instante en que se encoló cada solicitud.
+        private int queueDepth;
+        private long dispatchedCount;
+        private long totalQueueWaitNanos;
+        private long lastQueueWaitNanos;
+        private final LongAdder rejectedCount = new LongAdder();
+        private final LongAdder shedCount = new LongAdder();
+        private final Metrics.Histogram queueWait = new Metrics.Histogram(); // Espera de cada solicitud en la cola.
+
+        // Estado de la cola de envío del cliente, para mostrarlo al usuario o registrarlo.
+        public record QueueStats(int depth, int capacity, double averageWaitMilis, double lastWaitMilis, long rejected,
+                                 long shed, long coalesced) {
+        }
+
+        // Solicitud encolada o enviada cuyo resultado aún no llega (para la cobertura y el plazo máximo).
+        private static final class InFlight {
+            final Message request;
+            final long submittedNanos = System.nanoTime();
+            volatile long sentNanos;  // Primer envío; 0 mientras siga en la cola.
+            volatile boolean hedged;  // Ya se reenvió una copia de cobertura.
+
+            InFlight(Message request) {
+                this.request = request;
+            }
+        }
+
+        // Cobertura (hedging): una solicitud sin resultado tras el percentil HEDGE_PERCENTILE de la latencia observada
+        // se reenvía una vez, por otro nodo si hay conexión de cobertura. Gana el primer resultado y, si hubo copia,
+        // se envía Cancel para que nodos y servidores descarten las copias que aún no procesan.
+        private static final int HEDGE_MIN_SAMPLES = 20; // Muestras necesarias antes de usar el percentil.
+        private final Map<ByteBuffer, InFlight> inFlight = new ConcurrentHashMap<>();
+        private final boolean HEDGE_ENABLED;
+        private final int HEDGE_PERCENTILE;
+        private final int HEDGE_MIN_DELAY_MILIS;
+        private final int REQUEST_DEADLINE_MILIS;
+        private final long[] latencySamples = new long[256]; // Últimas latencias (ns), en anillo.
+        private int latencySampleCount;
+        private volatile long hedgeDelayNanos;
+        private final LongAdder hedgedCount = new LongAdder();
+        private final LongAdder expiredCount = new LongAdder();
+        private volatile CellConnection connection;      // Conexión principal (para enviar cancelaciones).
+        private volatile CellConnection hedgeConnection; // Conexión con otro nodo para las copias; puede ser null.
+        private final Map<ByteBuffer, Long> sentCancels = new ConcurrentHashMap<>(); // Hash -> instante de la cancelación.
+        private final int CANCEL_WINDOW_MILIS;
 
-        ClientMessageManager(org.apache.logging.log4j.Logger logger, int maxPendingAcks, int waitMilis) {
-            // El cliente despacha solicitudes de operaciones.
-            super(Set.of(ServiceNumber.Addition, ServiceNumber.Subtraction, ServiceNumber.Multiplication, ServiceNumber.Division), logger, maxPendingAcks, waitMilis);
+        // Flujos de operandos enviados con `submitStream` cuyo resultado final aún no llega, por identificador.
+        private static final class PendingStream {
+            final CompletableFuture<StreamProgress> result = new CompletableFuture<>();
+            final Consumer<StreamProgress> onPartial;
+            int lastReportedChunks; // Frontera del último resultado parcial reportado (varios servidores envían los suyos).
+
+            PendingStream(Consumer<StreamProgress> onPartial) {
+                this.onPartial = onPartial;
+            }
+        }
+
+        private final Map<Long, PendingStream> pendingStreams = new ConcurrentHashMap<>();
+        private final Random streamIds = new Random();
+        private final int STREAM_CHUNK_SIZE;
+        private final int STREAM_PARTIAL_EVERY;
+
+        // Trazas (TRACE_SAMPLE_EVERY): se traza una de cada tantas solicitudes de operación encoladas.
+        private final int TRACE_SAMPLE_EVERY;
+        private long traceSampleCounter; // Protegido con el monitor de este objeto, como las colas.
+        private final Random traceIds = new Random();
+        private final TraceCollector traces = new TraceCollector();
+
+        ClientMessageManager(org.apache.logging.log4j.Logger logger, ConfigReader.Config config) {
+            // El cliente despacha solicitudes de operaciones y mensajes de flujos.
+            super(Set.of(ServiceNumber.Addition, ServiceNumber.Subtraction, ServiceNumber.Multiplication, ServiceNumber.Division,
+                            ServiceNumber.Expression, ServiceNumber.TypedRequest, ServiceNumber.StreamOpen, ServiceNumber.StreamChunk, ServiceNumber.StreamClose),
+                    logger, config.MAX_PENDING_ACKS, config.SENDER_WAIT_MILIS, config.ACK_TIMEOUT_MILIS);
+            this.QUEUE_CAPACITY = config.CLIENT_QUEUE_CAPACITY > 0 ? config.CLIENT_QUEUE_CAPACITY : Integer.MAX_VALUE;
+            this.QUEUE_POLICY = config.CLIENT_QUEUE_POLICY;
+            this.HEDGE_ENABLED = config.HEDGE_ENABLED;
+            this.HEDGE_PERCENTILE = config.HEDGE_PERCENTILE;
+            this.HEDGE_MIN_DELAY_MILIS = config.HEDGE_MIN_DELAY_MILIS;
+            this.REQUEST_DEADLINE_MILIS = config.REQUEST_DEADLINE_MILIS;
+            this.CANCEL_WINDOW_MILIS = config.CANCEL_WINDOW_MILIS;
+            this.hedgeDelayNanos = Math.max(config.HEDGE_INITIAL_DELAY_MILIS, config.HEDGE_MIN_DELAY_MILIS) * 1_000_000L;
+            this.STREAM_CHUNK_SIZE = Math.max(1, config.STREAM_CHUNK_SIZE);
+            this.STREAM_PARTIAL_EVERY = config.STREAM_PARTIAL_EVERY;
+            this.TRACE_SAMPLE_EVERY = config.TRACE_SAMPLE_EVERY;
+        }
+
+        // Solo las solicitudes de operaciones se agrupan, se cubren, vencen y esperan un PrintResult.
+        private static boolean isOperationRequest(Message msg) {
+            return switch (msg.getNumServicio()) {
+                case Addition, Subtraction, Multiplication, Division, Expression, TypedRequest -> true;
+                default -> false;
+            };
+        }
+
+        // Reduce `values` en los servidores con un flujo: apertura, fragmentos de STREAM_CHUNK_SIZE operandos y
+        // cierre, en lugar de una solicitud por operando. El futuro se completa con el resultado final;
+        // `onPartial` (puede ser null) recibe los parciales cada STREAM_PARTIAL_EVERY fragmentos.
+        // Los mensajes del flujo ocupan la cola de envío, pero con la cola llena siempre esperan espacio: descartar
+        // un fragmento dejaría el flujo incompleto.
+        public CompletableFuture<StreamProgress> submitStream(byte[] senderIdentifier, Aggregation aggregation, int[] values,
+                                                              Consumer<StreamProgress> onPartial) {
+            // El servidor no envía resultado de un MIN o MAX sin operandos: no se espera uno que no llegará.
+            if (values.length == 0 && !aggregation.definedOnEmpty())
+                return CompletableFuture.failedFuture(new IllegalArgumentException(aggregation + " requiere al menos un operando"));
+            long streamId = this.streamIds.nextLong();
+            PendingStream stream = new PendingStream(onPartial);
+            this.pendingStreams.put(streamId, stream);
+            int chunkCount = (values.length + this.STREAM_CHUNK_SIZE - 1) / this.STREAM_CHUNK_SIZE;
+            try {
+                this.enqueue(Message.buildStreamOpen(senderIdentifier, streamId, aggregation, this.STREAM_PARTIAL_EVERY));
+                for (int i = 0; i < chunkCount; i++) {
+                    int from = i * this.STREAM_CHUNK_SIZE;
+                    int[] chunk = Arrays.copyOfRange(values, from, Math.min(values.length, from + this.STREAM_CHUNK_SIZE));
+                    this.enqueue(Message.buildStreamChunk(senderIdentifier, streamId, i, chunk));
+                }
+                this.enqueue(Message.buildStreamClose(senderIdentifier, streamId, chunkCount));
+                LOGGER.info("Flujo {} ({}) encolado: {} operandos en {} fragmentos", Long.toHexString(streamId), aggregation, values.length, chunkCount);
+            } catch (IOException | InterruptedException e) {
+                if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+                this.pendingStreams.remove(streamId);
+                stream.result.completeExceptionally(e);
+            }
+            return stream.result;
+        }
+
+        // Procesa el resultado de un flujo: el primer final completa el futuro, los parciales se reportan si avanzan.
+        private void registerStreamResult(StreamProgress progress) {
+            PendingStream stream = this.pendingStreams.get(progress.streamId());
+            if (stream == null) return; // Ya se recibió el resultado final (de otro servidor).
+            if (progress.isFinal()) {
+                this.pendingStreams.remove(progress.streamId());
+                stream.result.complete(progress);
+                return;
+            }
+            synchronized (stream) {
+                if (progress.chunksFolded() <= stream.lastReportedChunks) return;
+                stream.lastReportedChunks = progress.chunksFolded();
+            }
+            if (stream.onPartial != null) stream.onPartial.accept(progress);
+        }
+
+        // Inicia el hilo que reenvía las solicitudes lentas (HEDGE_ENABLED) y vence las que superan
+        // REQUEST_DEADLINE_MILIS. `hedgeConnection` es una conexión con otro nodo, o null para reenviar por `connection`.
+        public void startRequestTimer(CellConnection connection, CellConnection hedgeConnection) {
+            this.connection = connection;
+            this.hedgeConnection = hedgeConnection;
+            if (!this.HEDGE_ENABLED && this.REQUEST_DEADLINE_MILIS <= 0) return;
+            Thread timer = new Thread(() -> {
+                while (true) {
+                    try {
+                        Thread.sleep(Math.max(1, this.HEDGE_MIN_DELAY_MILIS / 2));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    this.checkInFlight();
+                }
+            }, "requestTimerThread");
+            timer.setDaemon(true);
+            timer.start();
+        }
+
+        private void checkInFlight() {
+            long now = System.nanoTime();
+            for (InFlight request : this.inFlight.values()) {
+                if (this.REQUEST_DEADLINE_MILIS > 0 && now - request.submittedNanos > this.REQUEST_DEADLINE_MILIS * 1_000_000L) {
+                    this.expire(request);
+                } else if (this.HEDGE_ENABLED && !request.hedged && request.sentNanos != 0 && now - request.sentNanos > this.hedgeDelayNanos) {
+                    request.hedged = true;
+                    this.hedgedCount.increment();
+                    CellConnection hedgeConn = this.hedgeConnection != null ? this.hedgeConnection : this.connection;
+                    LOGGER.info("Sin resultado tras {}ms, reenviando solicitud por el nodo {} ({})",
+                            this.hedgeDelayNanos / 1_000_000, hedgeConn.getNode(), Utils.byteArrayToHexString(request.request.getHash()));
+                    try {
+                        hedgeConn.writeMsg(request.request);
+                    } catch (IOException e) {
+                        LOGGER.error("Error reenviando solicitud: {}", e.getMessage());
+                    }
+                }
+            }
+        }
+
+        // Vence una solicitud que superó REQUEST_DEADLINE_MILIS: deja de esperarla y, si ya se envió, la cancela.
+        private void expire(InFlight request) {
+            byte[] hash = request.request.getHash();
+            if (this.inFlight.remove(ByteBuffer.wrap(hash)) == null) return;
+            this.expiredCount.increment();
+            LOGGER.warn("Solicitud vencida tras {}ms ({})", this.REQUEST_DEADLINE_MILIS, Utils.byteArrayToHexString(hash));
+            this.removeQueued(request.request);
+            this.removeMsgHashToWaitResultSet(hash);
+            this.registerAck(hash); // Deja de retransmitirla.
+            this.failPendingResults(hash, new TimeoutException("Sin resultado tras " + this.REQUEST_DEADLINE_MILIS + "ms"));
+            if (request.sentNanos != 0) this.sendCancel(hash);
+        }
+
+        // Registra la llegada del resultado de una solicitud: muestra de latencia y cancelación de las copias.
+        // `trace` es la del resultado (null si la solicitud no se trazó); solo cuenta la del primer resultado.
+        private void registerResult(byte[] requestHash, Trace trace) {
+            InFlight request = this.inFlight.remove(ByteBuffer.wrap(requestHash));
+            if (request == null) return;
+            if (trace != null) {
+                this.traces.record(trace);
+                LOGGER.info("Traza {}", trace);
+            }
+            if (request.sentNanos != 0) this.recordLatency(System.nanoTime() - request.sentNanos);
+            if (request.hedged) this.sendCancel(requestHash);
+        }
+
+        // Añade una muestra de latencia y recalcula la espera de cobertura (percentil HEDGE_PERCENTILE).
+        private void recordLatency(long latencyNanos) {
+            synchronized (this.latencySamples) {
+                this.latencySamples[this.latencySampleCount % this.latencySamples.length] = latencyNanos;
+                this.latencySampleCount++;
+                int n = Math.min(this.latencySampleCount, this.latencySamples.length);
+                if (n < HEDGE_MIN_SAMPLES) return;
+                long[] sorted = Arrays.copyOf(this.latencySamples, n);
+                Arrays.sort(sorted);
+                int index = Math.min(n - 1, Math.max(0, (int) Math.ceil(this.HEDGE_PERCENTILE / 100.0 * n) - 1));
+                this.hedgeDelayNanos = Math.max(sorted[index], this.HEDGE_MIN_DELAY_MILIS * 1_000_000L);
+            }
+        }
+
+        // Pide a nodos y servidores descartar las copias pendientes de una solicitud.
+        private void sendCancel(byte[] requestHash) {
+            long now = System.nanoTime();
+            this.sentCancels.values().removeIf((cancelledAt) -> now - cancelledAt > this.CANCEL_WINDOW_MILIS * 1_000_000L);
+            this.sentCancels.put(ByteBuffer.wrap(requestHash), now);
+            try {
+                Message cancel = Message.buildCancel(this.connection.getIdentifier(), requestHash);
+                this.connection.writeMsg(cancel);
+                if (this.hedgeConnection != null) this.hedgeConnection.writeMsg(cancel);
+            } catch (IOException e) {
+                LOGGER.error("Error enviando cancelación: {}", e.getMessage());
+            }
+        }
+
+        private boolean isRecentlyCancelled(Message request) {
+            Long cancelledAt = this.sentCancels.get(ByteBuffer.wrap(request.getHash()));
+            return cancelledAt != null && System.nanoTime() - cancelledAt <= this.CANCEL_WINDOW_MILIS * 1_000_000L;
+        }
+
+        public long getHedgedCount() {
+            return this.hedgedCount.sum();
+        }
+
+        public long getExpiredCount() {
+            return this.expiredCount.sum();
+        }
+
+        // Envía una solicitud de forma asíncrona. El futuro se completa con el resultado de la operación, o
+        // falla con RejectedExecutionException si la cola está llena (REJECT) o la solicitud se descartó (SHED_OLDEST).
+        // Si ya hay una solicitud idéntica (mismo hash) en curso, se devuelve una copia de su futuro sin enviar otra:
+        // completar o cancelar la copia no afecta a los demás llamadores.
+        public CompletableFuture<Integer> submit(Message request) {
+            return this.submit(request, this.pendingResults);
+        }
+
+        // Igual que `submit`, para las operaciones del registro (TypedRequest): el futuro recibe el TypedResult.
+        public CompletableFuture<TypedValue> submitTyped(Message request) {
+            return this.submit(request, this.pendingTypedResults);
+        }
+
+        private <T> CompletableFuture<T> submit(Message request, Map<ByteBuffer, CompletableFuture<T>> pendingResults) {
+            ByteBuffer hash = ByteBuffer.wrap(request.getHash());
+            CompletableFuture<T> future;
+            synchronized (this) {
+                CompletableFuture<T> existing = pendingResults.get(hash);
+                if (existing != null && !existing.isDone()) {
+                    this.coalescedCount.increment();
+                    return existing.copy();
+                }
+                future = new CompletableFuture<>();
+                pendingResults.put(hash, future);
+            }
+            future.whenComplete((result, e) -> pendingResults.remove(hash, future));
+            try {
+                if (!this.enqueue(request)) {
+                    future.completeExceptionally(new RejectedExecutionException("Cola de envío llena (" + this.QUEUE_CAPACITY + ")"));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+            }
+            return future.copy();
+        }
+
+        // Encola una solicitud respetando la capacidad de la cola (ver QUEUE_POLICY).
+        @Override
+        public void addMsgToDispatchQueue(Message msg) {
+            try {
+                if (!this.enqueue(msg)) LOGGER.warn("Cola de envío llena, solicitud rechazada ({})", Utils.byteArrayToHexString(msg.getHash()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Añade una solicitud a su cola de despacho. Devuelve false si se rechazó por estar llena la cola.
+        private synchronized boolean enqueue(Message msg) throws InterruptedException {
+            LinkedHashSet<Message> queue = this.sendingQueues.get(msg.getNumServicio());
+            if (queue == null) {
+                LOGGER.warn("No hay lista de despacho para este servicio: {}", msg.getNumServicio());
+                return false;
+            }
+            boolean request = isOperationRequest(msg);
+            // Una sola solicitud en curso por hash: las idénticas posteriores esperan el mismo resultado.
+            if (request && this.inFlight.containsKey(ByteBuffer.wrap(msg.getHash()))) {
+                this.coalescedCount.increment();
+                return true;
+            }
+            while (this.queueDepth >= this.QUEUE_CAPACITY) {
+                if (!request) { // Los mensajes de flujos esperan espacio con cualquier política.
+                    this.wait();
+                    continue;
+                }
+                switch (this.QUEUE_POLICY) {
+                    case BLOCK -> this.wait();
+                    case REJECT -> {
+                        this.rejectedCount.increment();
+                        return false;
+                    }
+                    case SHED_OLDEST -> {
+                        if (!this.shedOldest()) this.wait(); // Solo hay mensajes de flujos en la cola.
+                    }
+                }
+            }
+            if (request && this.TRACE_SAMPLE_EVERY > 0 && ++this.traceSampleCounter % this.TRACE_SAMPLE_EVERY == 0) {
+                msg = msg.withTrace(new Trace(this.traceIds.nextLong()));
+                msg.getTrace().append(Trace.Stage.CLIENT_ENQUEUE, msg.getSenderIdentifier());
+            }
+            queue.addLast(msg);
+            this.enqueuedAt.put(msg, System.nanoTime());
+            this.queueDepth++;
+            FlightEvents.Enqueue event = new FlightEvents.Enqueue();
+            event.queueDepth = this.queueDepth;
+            event.commit(msg);
+            if (request) this.inFlight.putIfAbsent(ByteBuffer.wrap(msg.getHash()), new InFlight(msg));
+            return true;
+        }
+
+        // Quita una solicitud de su cola si aún no se despachó.
+        private synchronized void removeQueued(Message msg) {
+            LinkedHashSet<Message> queue = this.sendingQueues.get(msg.getNumServicio());
+            if (queue != null && queue.remove(msg)) {
+                this.enqueuedAt.remove(msg);
+                this.queueDepth--;
+                this.notifyAll();
+            }
+        }
+
+        // Descarta la solicitud de operación que lleva más tiempo en espera (entre todas las colas).
+        // Devuelve false si no hay ninguna que descartar.
+        private boolean shedOldest() {
+            Message oldest = null;
+            for (LinkedHashSet<Message> queue : this.sendingQueues.values()) {
+                if (queue.isEmpty() || !isOperationRequest(queue.getFirst())) continue;
+                Message first = queue.getFirst();
+                if (oldest == null || this.enqueuedAt.get(first) < this.enqueuedAt.get(oldest)) oldest = first;
+            }
+            if (oldest == null) return false;
+            this.sendingQueues.get(oldest.getNumServicio()).remove(oldest);
+            this.enqueuedAt.remove(oldest);
+            this.queueDepth--;
+            this.shedCount.increment();
+            this.inFlight.remove(ByteBuffer.wrap(oldest.getHash()));
+            LOGGER.warn("Cola de envío llena, se descarta la solicitud más antigua ({})", Utils.byteArrayToHexString(oldest.getHash()));
+            this.failPendingResults(oldest.getHash(), new RejectedExecutionException("Solicitud descartada por sobrecarga"));
+            return true;
+        }
+
+        // Extrae la siguiente solicitud de una cola para despacharla, registrando su tiempo de espera.
+        @Override
+        protected synchronized Message dequeue(LinkedHashSet<Message> queue) {
+            Message msg = queue.removeFirst();
+            Long enqueued = this.enqueuedAt.remove(msg);
+            if (enqueued != null) {
+                this.lastQueueWaitNanos = System.nanoTime() - enqueued;
+                this.totalQueueWaitNanos += this.lastQueueWaitNanos;
+                this.queueWait.recordMicros(this.lastQueueWaitNanos / 1_000);
+                this.dispatchedCount++;
+            }
+            this.queueDepth--;
+            this.notifyAll(); // Despierta a quienes esperan espacio (BLOCK).
+            return msg;
+        }
+
+        public synchronized QueueStats getQueueStats() {
+            return new QueueStats(this.queueDepth, this.QUEUE_CAPACITY,
+                    this.dispatchedCount == 0 ? 0 : this.totalQueueWaitNanos / 1e6 / this.dispatchedCount,
+                    this.lastQueueWaitNanos / 1e6,
+                    this.rejectedCount.sum(), this.shedCount.sum(), this.coalescedCount.sum());
+        }
+
+        // Completa el futuro de `submit` (compartido por las solicitudes agrupadas) de la solicitud con hash `requestHash`.
+        private void completePendingResults(byte[] requestHash, int result) {
+            CompletableFuture<Integer> future = this.pendingResults.remove(ByteBuffer.wrap(requestHash));
+            if (future != null) future.complete(result);
+        }
+
+        private void completePendingTypedResults(byte[] requestHash, TypedValue result) {
+            CompletableFuture<TypedValue> future = this.pendingTypedResults.remove(ByteBuffer.wrap(requestHash));
+            if (future != null) future.complete(result);
+        }
+
+        private void failPendingResults(byte[] requestHash, Throwable cause) {
+            CompletableFuture<Integer> future = this.pendingResults.remove(ByteBuffer.wrap(requestHash));
+            if (future != null) future.completeExceptionally(cause);
+            CompletableFuture<TypedValue> typedFuture = this.pendingTypedResults.remove(ByteBuffer.wrap(requestHash));
+            if (typedFuture != null) typedFuture.completeExceptionally(cause);
+        }
+
+        public long getCoalescedCount() {
+            return this.coalescedCount.sum();
+        }
+
+        @Override
+        public void registerMetrics(Metrics metrics) {
+            super.registerMetrics(metrics);
+            metrics.gauge("client_queue_depth", "Solicitudes en espera de despacho (todas las colas)", () -> this.getQueueStats().depth());
+            metrics.histogram("client_queue_wait_seconds", "Espera de las solicitudes en la cola de envío", this.queueWait);
+            metrics.gauge("client_in_flight", "Solicitudes sin resultado", this.inFlight::size);
+            metrics.counter("client_rejected_total", "Solicitudes rechazadas con la cola llena (REJECT)", this.rejectedCount::sum);
+            metrics.counter("client_shed_total", "Solicitudes descartadas con la cola llena (SHED_OLDEST)", this.shedCount::sum);
+            metrics.counter("client_coalesced_total", "Solicitudes agrupadas con una idéntica en curso", this.coalescedCount::sum);
+            metrics.counter("client_hedged_total", "Solicitudes reenviadas por cobertura", this.hedgedCount::sum);
+            metrics.counter("client_expired_total", "Solicitudes vencidas (REQUEST_DEADLINE_MILIS)", this.expiredCount::sum);
+            this.traces.registerMetrics(metrics);
+        }
+
+        // Desglose de latencia de las solicitudes trazadas (TRACE_SAMPLE_EVERY).
+        public TraceCollector getTraces() {
+            return this.traces;
         }
 
         // Añade el hash de una solicitud enviada a la lista de espera de resultados.
         public void addMsgHashToWaitResultSet(byte[] originalMsgHash) {
-            LOGGER.debug("Hash de solicitud almacenado para esperar resultado: {}", Utils.byteArrayToHexString(originalMsgHash));
             // Envuelve el byte[] en ByteBuffer para asegurar que las comparaciones de pertenencia en el
             // set funcionen con respecto al contenido del hash.
             lastMsgsToWaitResult.add(ByteBuffer.wrap(originalMsgHash));
@@ -225,12 +1001,13 @@ public abstract class MessageManager {
         }
 
         @Override
-        public void dispatcherLoop(byte[] cellIdentifier, DataOutputStream outStream) {
+        public void dispatcherLoop(CellConnection connection) {
+            byte[] cellIdentifier = connection.getIdentifier();
             while (true) {
                 // Lógica similar al ServerMessageManager para manejar ACKs pendientes.
                 if (waitingForAckMsgs.size() >= this.MAX_PENDING_ACKS) {
                     try {
-                        this.sendMessagesWaitingForAck(outStream);
+                        this.sendMessagesWaitingForAck(connection);
                         Thread.sleep(this.WAIT_MILIS);
                     } catch (InterruptedException | IOException e) { /* ... */
                         System.exit(1);
@@ -239,19 +1016,38 @@ public abstract class MessageManager {
                     continue;
                 }
 
+                // Retransmite los mensajes cuyo ACK ya tardó demasiado.
+                try {
+                    this.sendExpiredMessagesWaitingForAck(connection);
+                } catch (IOException e) {
+                    LOGGER.fatal("Error en hilo de despacho ({}) al retransmitir: {}", Utils.byteArrayToHexString(cellIdentifier), e.getMessage());
+                    System.exit(1);
+                }
+
                 // Envía solicitudes de operación desde las colas.
                 for (Map.Entry<ServiceNumber, LinkedHashSet<Message>> entry : this.sendingQueues.entrySet()) {
                     ServiceNumber serviceNumber = entry.getKey();
                     LinkedHashSet<Message> queue = entry.getValue();
                     if (queue.isEmpty()) continue;
+                    // Nodos y servidores descartan durante CANCEL_WINDOW_MILIS las solicitudes con el hash de una
+                    // cancelada: una solicitud idéntica nueva espera a que venza la cancelación.
+                    if (this.isRecentlyCancelled(queue.getFirst())) continue;
 
-                    Message nextMsgToSend = queue.removeFirst();
-                    LOGGER.info("Despachando {} ({})", serviceNumber, Utils.byteArrayToHexString(nextMsgToSend.getHash()));
+                    FlightEvents.Dispatch dispatch = new FlightEvents.Dispatch();
+                    dispatch.begin();
+                    Message nextMsgToSend = this.dequeue(queue);
+                    dispatch.queuedNanos = this.lastQueueWaitNanos;
                     try {
-                        DecoderEncoder.writeMsg(outStream, nextMsgToSend);
+                        if (nextMsgToSend.getTrace() != null) nextMsgToSend.getTrace().append(Trace.Stage.CLIENT_SEND, cellIdentifier);
+                        // Se registra antes de escribirla: el ACK y el resultado pueden llegar antes de que writeMsg
+                        // regrese, y sin registro se descartarían (la solicitud esperaría a la retransmisión).
                         this.addMsgToWaitingForAckList(nextMsgToSend);
-                        this.addMsgHashToWaitResultSet(nextMsgToSend.getHash());
-                        LOGGER.debug("Mensaje añadido a lista de espera de Acks ({})", Utils.byteArrayToHexString(nextMsgToSend.getHash()));
+                        if (isOperationRequest(nextMsgToSend)) this.addMsgHashToWaitResultSet(nextMsgToSend.getHash());
+                        InFlight request = this.inFlight.get(ByteBuffer.wrap(nextMsgToSend.getHash()));
+                        if (request != null && request.sentNanos == 0) request.sentNanos = System.nanoTime();
+                        connection.writeMsg(nextMsgToSend);
+                        dispatch.commit(nextMsgToSend);
+                        this.events.record(EventRing.Type.DISPATCH, nextMsgToSend, dispatch.queuedNanos);
                     } catch (IOException e) {
                         LOGGER.fatal("Error en hilo de despacho ({}) al enviar resultado: {}", Utils.byteArrayToHexString(cellIdentifier), e.getMessage());
                         System.exit(1);
@@ -270,40 +1066,54 @@ public abstract class MessageManager {
         }
 
         @Override
-        public void receiverLoop(byte[] cellIdentifier, DataInputStream socketInStream, DataOutputStream socketOutStream, Function<String, Void> showResult) {
+        public void receiverLoop(CellConnection connection, Function<String, Void> showResult) {
+            byte[] cellIdentifier = connection.getIdentifier();
             while (true) {
                 try {
                     // Lee mensaje entrante.
-                    Message req = DecoderEncoder.readMsg(socketInStream);
-                    LOGGER.info("Recibiendo msj {} ({})", req.getNumServicio(), Utils.byteArrayToHexString(req.getHash()));
+                    Message req = connection.readMsg();
+                    if (req.getTrace() != null) req.getTrace().append(Trace.Stage.CLIENT_RECEIVE, cellIdentifier);
+                    this.events.record(EventRing.Type.RECEIVE, req, DecoderEncoder.frameLength(req));
                     switch (req.getNumServicio()) {
-                        case Addition, Subtraction, Multiplication, Division:
+                        case Addition, Subtraction, Multiplication, Division, Expression, TypedRequest, StreamOpen, StreamChunk, StreamClose:
                             // El cliente no debería recibir solicitudes.
                             LOGGER.warn("Cliente recibió mensaje de solicitud inesperado: {}", req);
                             break;
                         case Ack:
                             // ACK recibido (probablemente por una solicitud que envió el cliente).
-                            byte[] originalMsgHash = DecoderEncoder.processAck(req);
-                            LOGGER.info("Recibido Ack por el mensaje con hash: {}", Utils.byteArrayToHexString(originalMsgHash));
-                            this.registerAck(originalMsgHash);
+                            this.registerAck(DecoderEncoder.processAck(req));
                             break;
                         case Identification:
                             LOGGER.info("Recibida identificación de: {}", DecoderEncoder.processIdentification(req));
                             break;
+                        case Busy:
+                            Pair<byte[], Integer> busy = DecoderEncoder.processBusy(req);
+                            LOGGER.warn("Nodo ocupado, solicitud rechazada ({}); reintento en {}ms", Utils.byteArrayToHexString(busy.getValue0()), busy.getValue1());
+                            this.registerBusy(busy.getValue0(), busy.getValue1());
+                            break;
                         case PrintResult:
                             // Responder con Ack
-                            Pair<byte[], Integer> resPair = DecoderEncoder.processResult(req);
-                            LOGGER.info("PrintResult hash acompañante: {}", Utils.byteArrayToHexString(resPair.getValue0()));
+                            Triplet<byte[], Integer, String> resPair = DecoderEncoder.processResult(req);
                             Message ackMsg = Message.buildAck(ProgramType.SERVER, cellIdentifier, req.getHash());
-                            DecoderEncoder.writeMsg(socketOutStream, ackMsg);
-                            LOGGER.info("Enviando Ack para el mensaje PrintResult con hash: {}", Utils.byteArrayToHexString(req.getHash()));
+                            connection.writeMsg(ackMsg);
+                            this.events.record(EventRing.Type.ACK_SENT, req, 0);
 
                             // Verifica si este resultado corresponde a una solicitud pendiente.
                             ByteBuffer requestHashByteBuffer = ByteBuffer.wrap(resPair.getValue0());
-                            if (lastMsgsToWaitResult.contains(requestHashByteBuffer)) {
+                            boolean expected = lastMsgsToWaitResult.contains(requestHashByteBuffer);
+                            this.events.record(EventRing.Type.RESULT, req.getNumServicio().toShort(), req.getSenderIdentifier(), resPair.getValue0(), expected ? 1 : 0);
+                            if (expected && resPair.getValue2() != null) {
+                                // El servidor no pudo calcularla: falla el futuro (y los de las solicitudes agrupadas).
+                                LOGGER.warn("El servidor no pudo calcular la solicitud ({}): {}", Utils.byteArrayToHexString(resPair.getValue0()), resPair.getValue2());
+                                this.removeMsgHashToWaitResultSet(resPair.getValue0());
+                                this.registerResult(resPair.getValue0(), req.getTrace());
+                                this.failPendingResults(resPair.getValue0(), new IllegalStateException(resPair.getValue2()));
+                                showResult.apply("Error: " + resPair.getValue2());
+                            } else if (expected) {
                                 String resStr = resPair.getValue1().toString();
-                                LOGGER.info("Resultado correspondiente a solicitud previa. Mostrando en UI: {}", resStr);
                                 this.removeMsgHashToWaitResultSet(resPair.getValue0());
+                                this.registerResult(resPair.getValue0(), req.getTrace());
+                                this.completePendingResults(resPair.getValue0(), resPair.getValue1());
                                 // Llama a la función para mostrar el resultado en la UI.
                                 showResult.apply(resStr);
                             } else {
@@ -311,6 +1121,35 @@ public abstract class MessageManager {
                                         resPair.getValue1(), Utils.byteArrayToHexString(resPair.getValue0()));
                             }
                             break;
+                        case TypedResult:
+                            connection.writeMsg(Message.buildAck(ProgramType.SERVER, cellIdentifier, req.getHash()));
+                            this.events.record(EventRing.Type.ACK_SENT, req, 0);
+                            Triplet<byte[], TypedValue, String> typedPair = DecoderEncoder.processTypedResult(req);
+                            boolean typedExpected = lastMsgsToWaitResult.contains(ByteBuffer.wrap(typedPair.getValue0()));
+                            this.events.record(EventRing.Type.RESULT, req.getNumServicio().toShort(), req.getSenderIdentifier(), typedPair.getValue0(), typedExpected ? 1 : 0);
+                            if (typedExpected && typedPair.getValue2() != null) {
+                                LOGGER.warn("El servidor no pudo calcular la solicitud ({}): {}", Utils.byteArrayToHexString(typedPair.getValue0()), typedPair.getValue2());
+                                this.removeMsgHashToWaitResultSet(typedPair.getValue0());
+                                this.registerResult(typedPair.getValue0(), req.getTrace());
+                                this.failPendingResults(typedPair.getValue0(), new IllegalStateException(typedPair.getValue2()));
+                                showResult.apply("Error: " + typedPair.getValue2());
+                            } else if (typedExpected) {
+                                this.removeMsgHashToWaitResultSet(typedPair.getValue0());
+                                this.registerResult(typedPair.getValue0(), req.getTrace());
+                                this.completePendingTypedResults(typedPair.getValue0(), typedPair.getValue1());
+                                showResult.apply(typedPair.getValue1().toString());
+                            } else {
+                                LOGGER.warn("Resultado recibido ({}) pero no se esperaba o ya fue procesado. Hash de solicitud original: {}",
+                                        typedPair.getValue1(), Utils.byteArrayToHexString(typedPair.getValue0()));
+                            }
+                            break;
+                        case StreamResult:
+                            connection.writeMsg(Message.buildAck(ProgramType.SERVER, cellIdentifier, req.getHash()));
+                            StreamProgress progress = DecoderEncoder.processStreamResult(req);
+                            LOGGER.info("Resultado {} del flujo {}: {} fragmentos, valor {}", progress.isFinal() ? "final" : "parcial",
+                                    Long.toHexString(progress.streamId()), progress.chunksFolded(), progress.value());
+                            this.registerStreamResult(progress);
+                            break;
                     }
                 } catch (IOException e) {
                     LOGGER.error("Error en hilo de recepción del servidor: {}", e.getMessage());
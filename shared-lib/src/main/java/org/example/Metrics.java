@@ -0,0 +1,319 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Registro de las métricas de un componente (nodo o célula). Se publica por JMX (METRICS_JMX, un MBean
+// org.example:type=Metrics,name=<componente>) y, con METRICS_PORT > 0, por HTTP en el formato de texto de Prometheus
+// (GET /metrics). El endpoint HTTP no tiene autenticación: por defecto solo escucha en la interfaz de loopback
+// (METRICS_BIND_ADDRESS).
+// El registro no guarda valores: cada componente conserva sus contadores (LongAdder, repartidos entre hilos y sin
+// bloqueos) e histogramas, y el registro solo los lee al publicarlos. Registrar o quitar una serie no detiene a los
+// hilos que la actualizan.
+public class Metrics {
+    public enum Type {COUNTER, GAUGE, HISTOGRAM}
+
+    // Histograma sin bloqueos de duraciones en microsegundos, con cubetas de potencias de 2 (de 1µs a 2^26µs ≈ 67s).
+    // Cada cubeta es un LongAdder: registrar una muestra no se disputa entre hilos.
+    public static final class Histogram {
+        static final int BUCKETS = 27;
+        private final LongAdder[] counts = new LongAdder[BUCKETS + 1]; // La última cuenta lo que excede 2^26µs.
+        private final LongAdder sumMicros = new LongAdder();
+
+        public Histogram() {
+            for (int i = 0; i < this.counts.length; i++) this.counts[i] = new LongAdder();
+        }
+
+        public void recordMicros(long micros) {
+            long value = Math.max(0, micros);
+            // Cubeta i: (2^(i-1), 2^i] µs.
+            int bucket = value <= 1 ? 0 : Math.min(BUCKETS, 64 - Long.numberOfLeadingZeros(value - 1));
+            this.counts[bucket].increment();
+            this.sumMicros.add(value);
+        }
+
+        public void recordNanosSince(long startNanos) {
+            this.recordMicros((System.nanoTime() - startNanos) / 1_000);
+        }
+
+        // Cuentas por cubeta (no acumuladas).
+        long[] snapshot() {
+            long[] snapshot = new long[this.counts.length];
+            for (int i = 0; i < snapshot.length; i++) snapshot[i] = this.counts[i].sum();
+            return snapshot;
+        }
+
+        public long count() {
+            long count = 0;
+            for (LongAdder bucketCount : this.counts) count += bucketCount.sum();
+            return count;
+        }
+
+        public long sumMicros() {
+            return this.sumMicros.sum();
+        }
+
+        // Cota superior (límite de su cubeta) del percentil `percentile` (0-100); 0 sin muestras.
+        public long percentileMicros(double percentile) {
+            long[] snapshot = this.snapshot();
+            long total = 0;
+            for (long bucketCount : snapshot) total += bucketCount;
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(percentile / 100.0 * total);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                cumulative += snapshot[i];
+                if (cumulative >= rank) return 1L << i;
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static final String PREFIX = "compdist_";
+
+    // Métrica con todas sus series, por etiquetas (`k="v",...`). Cada serie es un LongSupplier o un Histogram.
+    private record Family(String name, String help, Type type, Map<String, Object> series) {
+    }
+
+    private final String component;
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+    private final Map<String, Supplier<String>> endpoints = new ConcurrentSkipListMap<>(); // Ruta -> cuerpo (texto plano).
+    private HttpServer server; // null si no se publica por HTTP. Protegido con el monitor de este objeto.
+
+    public Metrics(String component) {
+        this.component = component;
+    }
+
+    // Crea el registro de un componente y lo publica según la configuración.
+    public static Metrics start(String component, ConfigReader.Config config, Logger logger) {
+        Metrics metrics = new Metrics(component);
+        if (config.METRICS_JMX) metrics.registerMBean(logger);
+        if (config.METRICS_PORT > 0) metrics.startHttp(config.METRICS_BIND_ADDRESS, config.METRICS_PORT, logger);
+        return metrics;
+    }
+
+    // Contador monótono; `labels` son pares nombre, valor.
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        this.register(name, help, Type.COUNTER, value, labels);
+    }
+
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        this.register(name, help, Type.GAUGE, value, labels);
+    }
+
+    public void histogram(String name, String help, Histogram histogram, String... labels) {
+        this.register(name, help, Type.HISTOGRAM, histogram, labels);
+    }
+
+    // Publica en el servidor HTTP de métricas (si lo hay) otra ruta de texto plano, p. ej. GET /events (ver EventRing).
+    public synchronized void endpoint(String path, Supplier<String> body) {
+        this.endpoints.put(path, body);
+        if (this.server != null) this.addContext(this.server, path, "text/plain; charset=utf-8", body);
+    }
+
+    // Quita de todas las métricas las series con exactamente estas etiquetas (p. ej. las de una conexión cerrada).
+    public void removeSeries(String... labels) {
+        String key = labelString(labels);
+        for (Family family : this.families.values()) family.series.remove(key);
+    }
+
+    private void register(String name, String help, Type type, Object source, String[] labels) {
+        Family family = this.families.computeIfAbsent(name, (k) -> new Family(k, help, type, new ConcurrentSkipListMap<>()));
+        if (family.type != type)
+            throw new IllegalArgumentException("La métrica " + name + " ya está registrada como " + family.type);
+        family.series.put(labelString(labels), source);
+    }
+
+    // Todas las métricas en el formato de texto de Prometheus (versión 0.0.4). Los histogramas se publican en segundos.
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Family family : this.families.values()) {
+            if (family.series.isEmpty()) continue;
+            String name = PREFIX + family.name;
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type.name().toLowerCase()).append('\n');
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                if (series.getValue() instanceof Histogram histogram) {
+                    long[] counts = histogram.snapshot();
+                    long cumulative = 0;
+                    for (int i = 0; i < Histogram.BUCKETS; i++) {
+                        cumulative += counts[i];
+                        sample(out, name + "_bucket", withLabel(labels, "le", seconds(1L << i)), String.valueOf(cumulative));
+                    }
+                    cumulative += counts[Histogram.BUCKETS];
+                    sample(out, name + "_bucket", withLabel(labels, "le", "+Inf"), String.valueOf(cumulative));
+                    sample(out, name + "_sum", labels, seconds(histogram.sumMicros()));
+                    sample(out, name + "_count", labels, String.valueOf(cumulative));
+                } else {
+                    sample(out, name, labels, String.valueOf(((LongSupplier) series.getValue()).getAsLong()));
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    // Valores planos para JMX: un atributo por serie; los histogramas, con su cuenta y percentiles en µs.
+    private Map<String, Long> attributes() {
+        Map<String, Long> attributes = new LinkedHashMap<>();
+        for (Family family : this.families.values()) {
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey().isEmpty() ? "" : "{" + series.getKey() + "}";
+                if (series.getValue() instanceof Histogram histogram) {
+                    attributes.put(family.name + "_count" + labels, histogram.count());
+                    attributes.put(family.name + "_p50_micros" + labels, histogram.percentileMicros(50));
+                    attributes.put(family.name + "_p99_micros" + labels, histogram.percentileMicros(99));
+                    attributes.put(family.name + "_p999_micros" + labels, histogram.percentileMicros(99.9));
+                } else {
+                    attributes.put(family.name + labels, ((LongSupplier) series.getValue()).getAsLong());
+                }
+            }
+        }
+        return attributes;
+    }
+
+    private void registerMBean(Logger logger) {
+        try {
+            ObjectName objectName = new ObjectName("org.example:type=Metrics,name=" + ObjectName.quote(this.component));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), objectName);
+        } catch (JMException e) {
+            logger.warn("No se pudieron publicar las métricas por JMX: {}", e.getMessage());
+        }
+    }
+
+    // Servidor HTTP con GET /metrics en `port` o, si está ocupado (varios componentes en el mismo equipo),
+    // en el siguiente puerto libre. Escucha en `bindAddress` (vacío = loopback).
+    private void startHttp(String bindAddress, int port, Logger logger) {
+        InetAddress address;
+        try {
+            address = bindAddress.isEmpty() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bindAddress);
+        } catch (IOException e) {
+            logger.warn("Dirección no válida para el endpoint de métricas ({}): {}", bindAddress, e.getMessage());
+            return;
+        }
+        for (int candidate = port; candidate < port + 100; candidate++) {
+            try {
+                HttpServer server = HttpServer.create(new InetSocketAddress(address, candidate), 0);
+                this.addContext(server, "/metrics", "text/plain; version=0.0.4; charset=utf-8", this::scrape);
+                synchronized (this) {
+                    this.endpoints.forEach((path, body) -> this.addContext(server, path, "text/plain; charset=utf-8", body));
+                    this.server = server;
+                }
+                server.start();
+                logger.info("Métricas de {} en http://{}:{}/metrics", this.component, address.getHostAddress(), candidate);
+                return;
+            } catch (BindException e) {
+                // Puerto ocupado: prueba el siguiente.
+            } catch (IOException e) {
+                logger.warn("No se pudo iniciar el endpoint de métricas: {}", e.getMessage());
+                return;
+            }
+        }
+        logger.warn("No hay puertos libres para el endpoint de métricas desde el {}", port);
+    }
+
+    private void addContext(HttpServer server, String path, String contentType, Supplier<String> body) {
+        server.createContext(path, (exchange) -> {
+            byte[] bytes = body.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? label : labels + "," + label;
+    }
+
+    private static String labelString(String[] labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Se esperaban pares de etiqueta y valor");
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) out.append(',');
+            String value = labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+            out.append(labels[i]).append("=\"").append(value).append('"');
+        }
+        return out.toString();
+    }
+
+    private static String seconds(long micros) {
+        return BigDecimal.valueOf(micros, 6).stripTrailingZeros().toPlainString();
+    }
+
+    // MBean de solo lectura cuyos atributos son las series registradas en el momento de consultarlo.
+    private final class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long value = attributes().get(attribute);
+            if (value == null) throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, Long> attributes = attributes();
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                Long value = attributes.get(name);
+                if (value != null) list.add(new Attribute(name, value));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Las métricas son de solo lectura: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] infos = attributes().keySet().stream()
+                    .map((name) -> new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(Metrics.class.getName(), "Métricas de " + component, infos, null, null, null);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,145 @@
+package org.example;
+
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Selección de nodo para las células según la latencia medida (RTT) y la carga reportada por cada nodo.
+public class NodeSelector {
+    private static final String HOST = "localhost";
+
+    // Resultado del sondeo de un nodo.
+    public static final class Candidate {
+        public final Pair<String, Integer> node;
+        public final long rttMicros; // RTT mínimo observado.
+        public final int load;       // Número de células conectadas al nodo.
+        public final long score;     // Puntaje: RTT + carga ponderada. Menor es mejor.
+
+        Candidate(Pair<String, Integer> node, long rttMicros, int load, int loadWeightMicros) {
+            this.node = node;
+            this.rttMicros = rttMicros;
+            this.load = load;
+            this.score = rttMicros + (long) load * loadWeightMicros;
+        }
+
+        public String toString() {
+            return String.format("%s (rtt: %dµs, carga: %d, puntaje: %d)", this.node, this.rttMicros, this.load, this.score);
+        }
+    }
+
+    // Sondea un nodo: se conecta, espera su identificación y le envía `samples` pings.
+    // Devuelve null si el nodo no responde dentro del tiempo límite.
+    public static Candidate probe(Pair<String, Integer> node, ConfigReader.Config config) {
+        try (Transport transport = Transport.connect(node, config.NODE_PROBE_TIMEOUT_MILIS, config)) {
+            transport.setReadTimeout(config.NODE_PROBE_TIMEOUT_MILIS);
+            transport.setTcpNoDelay(true); // Los pings son pequeños; sin Nagle el RTT medido es el real.
+            DataInputStream in = transport.input();
+            DataOutputStream out = transport.output();
+            byte[] identifier = transport.localIdentifier(HOST);
+
+            // El nodo se identifica primero; en lugar de identificarse, la célula responde con pings.
+            if (DecoderEncoder.processIdentification(DecoderEncoder.readMsg(in)) != ProgramType.NODE)
+                return null;
+
+            long minRtt = Long.MAX_VALUE;
+            int load = 0;
+            for (int i = 0; i < Math.max(1, config.NODE_PROBE_SAMPLES); i++) {
+                long sent = System.nanoTime();
+                DecoderEncoder.writeMsg(out, Message.buildPing(ProgramType.NODE, identifier, sent, -1));
+                out.flush();
+                Message reply = DecoderEncoder.readMsg(in);
+                long received = System.nanoTime();
+                if (reply.getNumServicio() != ServiceNumber.Ping) return null;
+                Pair<Long, Integer> ping = DecoderEncoder.processPing(reply);
+                if (ping.getValue0() != sent) return null;
+                minRtt = Math.min(minRtt, (received - sent) / 1_000);
+                load = ping.getValue1();
+            }
+            return new Candidate(node, minRtt, load, config.NODE_LOAD_WEIGHT_MICROS);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Sondea todos los nodos configurados en paralelo y los ordena de mejor a peor.
+    // Los nodos que no responden se omiten.
+    public static List<Candidate> rankNodes(ConfigReader.Config config) {
+        return config.NODES.parallelStream()
+                .map((node) -> probe(node, config))
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingLong((Candidate c) -> c.score))
+                .toList();
+    }
+
+    // Elige el mejor nodo disponible. Mientras ningún nodo responda (p. ej. aún no arrancan) se vuelve a sondear
+    // con retroceso exponencial, de modo que la célula se conecta en cuanto algún nodo está listo. Si tras
+    // CELL_CONN_DELAY_MILIS sigue sin haber respuesta, se recurre a la elección aleatoria.
+    public static Pair<String, Integer> selectBestNode(ConfigReader.Config config, Logger LOGGER) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + config.CELL_CONN_DELAY_MILIS;
+        int delay = config.NODE_RECONNECT_MIN_MILIS;
+        List<Candidate> ranking = rankNodes(config);
+        while (ranking.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(delay);
+            delay = Math.min(delay * 2, config.CELL_CONN_DELAY_MILIS);
+            ranking = rankNodes(config);
+        }
+        if (ranking.isEmpty()) {
+            Pair<String, Integer> node = Utils.getRandomNodePort(config.NODES);
+            LOGGER.warn("Ningún nodo respondió al sondeo, se elige uno aleatorio: {}", node);
+            return node;
+        }
+        LOGGER.info("Ranking de nodos: {}", ranking);
+        return ranking.getFirst().node;
+    }
+
+    // Elige el mejor nodo que responda distinto de `exclude` (p. ej. para reenviar solicitudes por otra ruta).
+    // Devuelve null si no hay otro nodo disponible.
+    public static Pair<String, Integer> selectAlternateNode(ConfigReader.Config config, Pair<String, Integer> exclude) {
+        return rankNodes(config).stream()
+                .map((c) -> c.node)
+                .filter((node) -> !node.equals(exclude))
+                .findFirst()
+                .orElse(null);
+    }
+
+    // Inicia un hilo que reevalúa periódicamente los nodos y llama a `switchTo` cuando el nodo actual
+    // deja de responder o cuando otro nodo lo supera por más del umbral configurado.
+    public static void startMonitor(ConfigReader.Config config, Logger LOGGER, Supplier<Pair<String, Integer>> currentNode, Consumer<Pair<String, Integer>> switchTo) {
+        if (config.NODE_RESELECT_INTERVAL_MILIS <= 0) return;
+        Thread monitor = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(config.NODE_RESELECT_INTERVAL_MILIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                List<Candidate> ranking = rankNodes(config);
+                if (ranking.isEmpty()) continue;
+                Pair<String, Integer> current = currentNode.get();
+                Candidate best = ranking.getFirst();
+                if (best.node.equals(current)) continue;
+
+                // La carga del nodo actual incluye a esta misma célula, que no contaría en el otro nodo.
+                long currentScore = ranking.stream()
+                        .filter((c) -> c.node.equals(current))
+                        .mapToLong((c) -> c.score - config.NODE_LOAD_WEIGHT_MICROS)
+                        .findFirst()
+                        .orElse(Long.MAX_VALUE); // El nodo actual no respondió al sondeo.
+                if (currentScore - best.score > config.NODE_RESELECT_THRESHOLD_MICROS) {
+                    LOGGER.info("Cambiando de nodo {} a {}", current, best);
+                    switchTo.accept(best.node);
+                }
+            }
+        }, "nodeSelectorMonitor");
+        monitor.setDaemon(true);
+        monitor.start();
+    }
+}
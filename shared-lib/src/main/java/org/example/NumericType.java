@@ -0,0 +1,73 @@
+package org.example;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Optional;
+
+// Codificación de los operandos y resultados de las operaciones del registro (ver OperationRegistry).
+// Los enteros se promueven al tipo siguiente (INT -> LONG -> BIGINT) cuando el resultado no cabe.
+public enum NumericType {
+    INT,    // 4 bytes.
+    LONG,   // 8 bytes.
+    DOUBLE, // 8 bytes (IEEE 754).
+    BIGINT  // 4 bytes de longitud + complemento a dos (BigInteger.toByteArray).
+    ;
+
+    public byte toByte() {
+        return (byte) this.ordinal();
+    }
+
+    public static Optional<NumericType> fromByte(byte b) {
+        return b >= 0 && b < values().length ? Optional.of(values()[b]) : Optional.empty();
+    }
+
+    // Lee `count` operandos de este tipo.
+    public TypedOperands readOperands(DataInputStream dis, int count) throws IOException {
+        return switch (this) {
+            case INT, LONG -> {
+                long[] longs = new long[count];
+                for (int i = 0; i < count; i++) longs[i] = this == INT ? dis.readInt() : dis.readLong();
+                yield TypedOperands.ofLongs(this, longs);
+            }
+            case DOUBLE -> {
+                double[] doubles = new double[count];
+                for (int i = 0; i < count; i++) doubles[i] = dis.readDouble();
+                yield TypedOperands.ofDoubles(doubles);
+            }
+            case BIGINT -> {
+                BigInteger[] bigs = new BigInteger[count];
+                for (int i = 0; i < count; i++) bigs[i] = readBig(dis);
+                yield TypedOperands.ofBigs(bigs);
+            }
+        };
+    }
+
+    // Escribe los operandos (deben ser de este tipo).
+    public void writeOperands(DataOutputStream dos, TypedOperands operands) throws IOException {
+        for (int i = 0; i < operands.count(); i++) {
+            switch (this) {
+                case INT -> dos.writeInt((int) operands.longs()[i]);
+                case LONG -> dos.writeLong(operands.longs()[i]);
+                case DOUBLE -> dos.writeDouble(operands.doubles()[i]);
+                case BIGINT -> writeBig(dos, operands.bigs()[i]);
+            }
+        }
+    }
+
+    static BigInteger readBig(DataInputStream dis) throws IOException {
+        int length = dis.readInt();
+        // writeBig siempre escribe al menos un byte (toByteArray de cero es {0}).
+        if (length <= 0) throw new IOException("Longitud inválida de operando BIGINT: " + length);
+        byte[] bytes = new byte[length];
+        dis.readFully(bytes);
+        return new BigInteger(bytes);
+    }
+
+    static void writeBig(DataOutputStream dos, BigInteger value) throws IOException {
+        byte[] bytes = value.toByteArray();
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+}
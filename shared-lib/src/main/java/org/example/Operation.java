@@ -0,0 +1,11 @@
+package org.example;
+
+import java.util.Set;
+
+// Descripción de una operación del registro: identificador en el mensaje, nombre, número de operandos y tipos
+// numéricos aceptados. La implementación (kernel) la registra el servidor (ver KernelRegistry en celula-servidor).
+public record Operation(short id, String name, int arity, Set<NumericType> types) {
+    public String toString() {
+        return this.name;
+    }
+}
@@ -0,0 +1,6 @@
+package org.example;
+
+// Evalúa las operaciones del registro en el servidor (la implementación con los kernels está en celula-servidor).
+public interface OperationEvaluator {
+    TypedValue evaluate(Operation operation, TypedOperands operands);
+}
@@ -0,0 +1,49 @@
+package org.example;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Registro de las operaciones de la solicitud TypedRequest. Añadir una operación no requiere tocar los switch del
+// codec: basta con registrar su descripción aquí (o desde otro módulo con `register`) y su kernel en el servidor.
+public final class OperationRegistry {
+    private static final Map<Short, Operation> byId = new ConcurrentHashMap<>();
+    private static final Map<String, Operation> byName = new ConcurrentHashMap<>();
+
+    public static final Operation ADD = register(new Operation((short) 1, "ADD", 2, EnumSet.allOf(NumericType.class)));
+    public static final Operation SUB = register(new Operation((short) 2, "SUB", 2, EnumSet.allOf(NumericType.class)));
+    public static final Operation MUL = register(new Operation((short) 3, "MUL", 2, EnumSet.allOf(NumericType.class)));
+    public static final Operation DIV = register(new Operation((short) 4, "DIV", 2, EnumSet.allOf(NumericType.class)));
+    public static final Operation MOD = register(new Operation((short) 5, "MOD", 2, EnumSet.of(NumericType.INT, NumericType.LONG, NumericType.BIGINT)));
+    // Exponenciación modular: base^exponente mod módulo.
+    public static final Operation MOD_POW = register(new Operation((short) 6, "MOD_POW", 3, EnumSet.of(NumericType.INT, NumericType.LONG, NumericType.BIGINT)));
+
+    private OperationRegistry() {
+    }
+
+    public static Operation register(Operation operation) {
+        if (byId.putIfAbsent(operation.id(), operation) != null)
+            throw new IllegalArgumentException("Identificador de operación repetido: " + operation.id());
+        byName.put(normalize(operation.name()), operation);
+        return operation;
+    }
+
+    public static Optional<Operation> fromId(short id) {
+        return Optional.ofNullable(byId.get(id));
+    }
+
+    public static Optional<Operation> fromName(String name) {
+        return Optional.ofNullable(byName.get(normalize(name)));
+    }
+
+    // Los nombres se comparan sin distinguir mayúsculas ni espacios alrededor.
+    private static String normalize(String name) {
+        return name.trim().toUpperCase();
+    }
+
+    public static Collection<Operation> operations() {
+        return byId.values();
+    }
+}
@@ -0,0 +1,7 @@
+package org.example;
+
+// Topología lógica entre nodos (ver Overlay en el nodo).
+public enum OverlayMode {
+    MESH, // Cada nodo se conecta con todos los demás.
+    RING  // Anillo k-regular: cada nodo se conecta con OVERLAY_DEGREE/2 vecinos a cada lado.
+}
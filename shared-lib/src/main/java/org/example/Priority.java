@@ -0,0 +1,22 @@
+package org.example;
+
+// Clases de prioridad para el envío de mensajes. Con la planificación estricta una clase solo se atiende cuando
+// las de mayor prioridad no tienen mensajes en espera.
+public enum Priority {
+    CONTROL, // Acuses, identificación y mensajes de control entre nodos: nunca deben esperar detrás de datos.
+    RESULT,  // Resultados de operaciones y de flujos.
+    DATA     // Solicitudes de operaciones y mensajes de flujos.
+    ;
+
+    // Clase de prioridad de cada tipo de servicio.
+    public static Priority of(ServiceNumber serviceNumber) {
+        return switch (serviceNumber) {
+            case ServiceNumber.PrintResult, ServiceNumber.StreamResult, ServiceNumber.TypedResult -> RESULT;
+            // Apertura, fragmentos y cierre de un flujo van en el mismo carril para no adelantarse entre sí.
+            case ServiceNumber.Addition, ServiceNumber.Subtraction, ServiceNumber.Multiplication,
+                 ServiceNumber.Division, ServiceNumber.Expression, ServiceNumber.TypedRequest, ServiceNumber.LinkData, ServiceNumber.StreamOpen,
+                 ServiceNumber.StreamChunk, ServiceNumber.StreamClose -> DATA;
+            default -> CONTROL;
+        };
+    }
+}
@@ -0,0 +1,124 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.function.Predicate;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Cola con un carril por clase de prioridad (ver Priority).
+// Planificación estricta: siempre se atiende el carril de mayor prioridad con elementos.
+// Planificación ponderada: cada carril se atiende hasta `weights[i]` veces seguidas antes de pasar al siguiente,
+// de modo que las clases bajas avanzan aunque las altas estén siempre ocupadas.
+public class PriorityLanes<T> {
+    public enum Scheduling {STRICT, WEIGHTED}
+
+    private final Scheduling scheduling;
+    private final int[] weights;
+    private final int capacity; // Máximo de elementos por carril (bloquea al productor al alcanzarlo).
+    private final ArrayDeque<T>[] lanes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private final Condition notFull = this.lock.newCondition();
+    private int size;
+    private int current;  // Carril en turno (planificación ponderada).
+    private int credits;  // Elementos que aún puede entregar el carril en turno.
+
+    public PriorityLanes(Scheduling scheduling, int[] weights, int capacity) {
+        int laneCount = Priority.values().length;
+        if (weights.length != laneCount)
+            throw new IllegalArgumentException("Se esperaban " + laneCount + " pesos: " + Arrays.toString(weights));
+        this.scheduling = scheduling;
+        this.weights = Arrays.stream(weights).map((w) -> Math.max(1, w)).toArray();
+        this.capacity = capacity > 0 ? capacity : Integer.MAX_VALUE;
+        @SuppressWarnings("unchecked") // Java no permite crear arreglos de un tipo genérico.
+        ArrayDeque<T>[] lanes = (ArrayDeque<T>[]) new ArrayDeque<?>[laneCount];
+        this.lanes = lanes;
+        for (int i = 0; i < laneCount; i++) this.lanes[i] = new ArrayDeque<>();
+        this.credits = this.weights[0];
+    }
+
+    // Planificación y pesos de la configuración (PRIORITY_SCHEDULING y PRIORITY_WEIGHTS).
+    public PriorityLanes(ConfigReader.Config config, int capacity) {
+        this(config.PRIORITY_SCHEDULING, config.PRIORITY_WEIGHTS, capacity);
+    }
+
+    // Encola un elemento en el carril de su prioridad; bloquea mientras el carril esté lleno.
+    public void put(Priority priority, T element) throws InterruptedException {
+        ArrayDeque<T> lane = this.lanes[priority.ordinal()];
+        this.lock.lockInterruptibly();
+        try {
+            while (lane.size() >= this.capacity) this.notFull.await();
+            lane.addLast(element);
+            this.size++;
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Extrae el siguiente elemento según la planificación; bloquea mientras no haya elementos.
+    public T take() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (this.size == 0) this.notEmpty.await();
+            T element = this.scheduling == Scheduling.STRICT ? pollStrict() : pollWeighted();
+            this.size--;
+            this.notFull.signalAll();
+            return element;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private T pollStrict() {
+        for (ArrayDeque<T> lane : this.lanes) {
+            if (!lane.isEmpty()) return lane.pollFirst();
+        }
+        throw new IllegalStateException("Carriles vacíos");
+    }
+
+    private T pollWeighted() {
+        while (this.lanes[this.current].isEmpty() || this.credits == 0) {
+            this.current = (this.current + 1) % this.lanes.length;
+            this.credits = this.weights[this.current];
+        }
+        this.credits--;
+        return this.lanes[this.current].pollFirst();
+    }
+
+    // Quita de un carril los elementos que cumplen `filter`. Devuelve cuántos se quitaron.
+    public int removeIf(Priority priority, Predicate<T> filter) {
+        this.lock.lock();
+        try {
+            ArrayDeque<T> lane = this.lanes[priority.ordinal()];
+            int before = lane.size();
+            lane.removeIf(filter);
+            int removed = before - lane.size();
+            this.size -= removed;
+            if (removed > 0) this.notFull.signalAll();
+            return removed;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int size() {
+        this.lock.lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Elementos en espera en el carril de `priority`.
+    public int size(Priority priority) {
+        this.lock.lock();
+        try {
+            return this.lanes[priority.ordinal()].size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
@@ -10,6 +10,20 @@ public enum ServiceNumber {
     Multiplication, // 3: Operación de multiplicación.
     Division,       // 4: Operación de división.
     PrintResult,    // 5: Mensaje con el resultado de una operación.
+    Ping,           // 6: Sondeo de latencia y carga de un nodo (lo usan las células para elegir nodo).
+    Heartbeat,      // 7: Latido entre nodos para detectar vecinos caídos.
+    Membership,     // 8: Lista de miembros del clúster que los nodos se propagan entre sí.
+    LinkData,       // 9: Mensaje envuelto con número de secuencia del enlace entre dos nodos.
+    LinkAck,        // 10: Acuse de recibo de un LinkData en el enlace entre dos nodos.
+    Busy,           // 11: El nodo rechazó un mensaje de la célula por exceder su límite de tráfico.
+    Cancel,         // 12: El cliente ya no necesita el resultado de una solicitud: se descartan sus copias pendientes.
+    StreamOpen,     // 13: Apertura de un flujo de operandos a reducir (suma, producto, mínimo, máximo o conteo).
+    StreamChunk,    // 14: Fragmento numerado de operandos de un flujo.
+    StreamClose,    // 15: Cierre de un flujo, con el número total de fragmentos enviados.
+    StreamResult,   // 16: Resultado parcial o final de la reducción de un flujo.
+    Expression,     // 17: Expresión aritmética compilada (ExpressionPlan) con los valores de sus variables.
+    TypedRequest,   // 18: Operación del registro (OperationRegistry) con operandos INT, LONG, DOUBLE o BIGINT.
+    TypedResult,    // 19: Resultado de un TypedRequest, con su tipo numérico.
     Ack             // 99: Mensaje de acuse de recibo (Acknowledgement).
     ;
 
@@ -22,6 +36,20 @@ public enum ServiceNumber {
             case ServiceNumber.Multiplication -> 3;
             case ServiceNumber.Division -> 4;
             case ServiceNumber.PrintResult -> 5;
+            case ServiceNumber.Ping -> 6;
+            case ServiceNumber.Heartbeat -> 7;
+            case ServiceNumber.Membership -> 8;
+            case ServiceNumber.LinkData -> 9;
+            case ServiceNumber.LinkAck -> 10;
+            case ServiceNumber.Busy -> 11;
+            case ServiceNumber.Cancel -> 12;
+            case ServiceNumber.StreamOpen -> 13;
+            case ServiceNumber.StreamChunk -> 14;
+            case ServiceNumber.StreamClose -> 15;
+            case ServiceNumber.StreamResult -> 16;
+            case ServiceNumber.Expression -> 17;
+            case ServiceNumber.TypedRequest -> 18;
+            case ServiceNumber.TypedResult -> 19;
             case ServiceNumber.Ack -> 99;
         };
     }
@@ -35,6 +63,20 @@ public enum ServiceNumber {
             case 3 -> Optional.of(ServiceNumber.Multiplication);
             case 4 -> Optional.of(ServiceNumber.Division);
             case 5 -> Optional.of(ServiceNumber.PrintResult);
+            case 6 -> Optional.of(ServiceNumber.Ping);
+            case 7 -> Optional.of(ServiceNumber.Heartbeat);
+            case 8 -> Optional.of(ServiceNumber.Membership);
+            case 9 -> Optional.of(ServiceNumber.LinkData);
+            case 10 -> Optional.of(ServiceNumber.LinkAck);
+            case 11 -> Optional.of(ServiceNumber.Busy);
+            case 12 -> Optional.of(ServiceNumber.Cancel);
+            case 13 -> Optional.of(ServiceNumber.StreamOpen);
+            case 14 -> Optional.of(ServiceNumber.StreamChunk);
+            case 15 -> Optional.of(ServiceNumber.StreamClose);
+            case 16 -> Optional.of(ServiceNumber.StreamResult);
+            case 17 -> Optional.of(ServiceNumber.Expression);
+            case 18 -> Optional.of(ServiceNumber.TypedRequest);
+            case 19 -> Optional.of(ServiceNumber.TypedResult);
             case 99 -> Optional.of(ServiceNumber.Ack);
             default -> Optional.empty();
         };
@@ -49,6 +91,20 @@ public enum ServiceNumber {
             case ServiceNumber.Multiplication -> "Multiplication (3)";
             case ServiceNumber.Division -> "Division (4)";
             case ServiceNumber.PrintResult -> "PrintResult (5)";
+            case ServiceNumber.Ping -> "Ping (6)";
+            case ServiceNumber.Heartbeat -> "Heartbeat (7)";
+            case ServiceNumber.Membership -> "Membership (8)";
+            case ServiceNumber.LinkData -> "LinkData (9)";
+            case ServiceNumber.LinkAck -> "LinkAck (10)";
+            case ServiceNumber.Busy -> "Busy (11)";
+            case ServiceNumber.Cancel -> "Cancel (12)";
+            case ServiceNumber.StreamOpen -> "StreamOpen (13)";
+            case ServiceNumber.StreamChunk -> "StreamChunk (14)";
+            case ServiceNumber.StreamClose -> "StreamClose (15)";
+            case ServiceNumber.StreamResult -> "StreamResult (16)";
+            case ServiceNumber.Expression -> "Expression (17)";
+            case ServiceNumber.TypedRequest -> "TypedRequest (18)";
+            case ServiceNumber.TypedResult -> "TypedResult (19)";
             case ServiceNumber.Ack -> "Ack (99)";
         };
     }
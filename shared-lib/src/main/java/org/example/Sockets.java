@@ -0,0 +1,113 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Creación de los sockets de nodos y células con las opciones de ConfigReader (SOCKET_*), en lugar de
+// `new Socket(host, port)` con las opciones del sistema. También crea los sockets de dominio Unix (ver Transport).
+// Los streams de datos llevan búfer: DecoderEncoder.writeMsg hace una escritura por campo, que sin búfer es una
+// llamada al sistema (y con Nagle, un segmento retenido) por campo. Quien escribe en un stream de `output` debe
+// llamar a flush al terminar una trama o un lote de tramas.
+public final class Sockets {
+    private Sockets() {
+    }
+
+    // ServerSocket en `port` con SO_REUSEADDR, el búfer de recepción (lo heredan las conexiones aceptadas) y la cola
+    // de conexiones pendientes configurados.
+    public static ServerSocket listen(int port, ConfigReader.Config config) throws IOException {
+        ServerSocket server = new ServerSocket();
+        try {
+            server.setReuseAddress(config.SOCKET_REUSE_ADDRESS);
+            // Antes de bind: un búfer mayor de 64KB requiere negociar el escalado de ventana en el handshake.
+            if (config.SOCKET_RECEIVE_BUFFER > 0) server.setReceiveBufferSize(config.SOCKET_RECEIVE_BUFFER);
+            server.bind(new InetSocketAddress(port), config.SOCKET_BACKLOG);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        return server;
+    }
+
+    // Conecta un socket configurado a host:port. `timeoutMilis` = 0 espera sin límite.
+    public static Socket connect(String host, int port, int timeoutMilis, ConfigReader.Config config) throws IOException {
+        Socket socket = new Socket();
+        try {
+            configure(socket, config);
+            socket.connect(new InetSocketAddress(host, port), timeoutMilis);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    // Aplica TCP_NODELAY, SO_KEEPALIVE y los tamaños de búfer a un socket (antes de conectarlo o recién aceptado).
+    public static void configure(Socket socket, ConfigReader.Config config) throws IOException {
+        socket.setTcpNoDelay(config.SOCKET_TCP_NODELAY);
+        socket.setKeepAlive(config.SOCKET_KEEPALIVE);
+        if (config.SOCKET_SEND_BUFFER > 0) socket.setSendBufferSize(config.SOCKET_SEND_BUFFER);
+        if (config.SOCKET_RECEIVE_BUFFER > 0) socket.setReceiveBufferSize(config.SOCKET_RECEIVE_BUFFER);
+    }
+
+    // Socket de dominio Unix en `path`. Un archivo que quedó de una ejecución anterior se borra antes de bind; el de
+    // este proceso se borra al terminar.
+    public static ServerSocketChannel listenUnix(Path path, ConfigReader.Config config) throws IOException {
+        Files.deleteIfExists(path);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(path), config.SOCKET_BACKLOG);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        path.toFile().deleteOnExit();
+        return server;
+    }
+
+    // Conecta al socket de dominio Unix en `path`. Si el nodo aún no lo creó (o ya no escucha) lanza
+    // ConnectException, como una conexión TCP rechazada, para que quien conecta reintente.
+    public static SocketChannel connectUnix(Path path) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(path));
+        } catch (IOException e) {
+            channel.close();
+            if (e instanceof SocketException && !(e instanceof ConnectException)) {
+                ConnectException refused = new ConnectException(path + ": " + e.getMessage());
+                refused.initCause(e);
+                throw refused;
+            }
+            throw e;
+        }
+        return channel;
+    }
+
+    // Stream de salida con un búfer de SOCKET_OUTPUT_BUFFER bytes (0 = sin búfer).
+    public static DataOutputStream output(OutputStream out, ConfigReader.Config config) {
+        if (config.SOCKET_OUTPUT_BUFFER <= 0) return new DataOutputStream(out);
+        return new DataOutputStream(new BufferedOutputStream(out, config.SOCKET_OUTPUT_BUFFER));
+    }
+
+    // Stream de entrada con un búfer de SOCKET_INPUT_BUFFER bytes (0 = sin búfer): los campos de un mensaje se
+    // leen del búfer en lugar de una llamada al sistema por campo.
+    public static DataInputStream input(InputStream in, ConfigReader.Config config) {
+        if (config.SOCKET_INPUT_BUFFER <= 0) return new DataInputStream(in);
+        return new DataInputStream(new BufferedInputStream(in, config.SOCKET_INPUT_BUFFER));
+    }
+}
\ No newline at end of file
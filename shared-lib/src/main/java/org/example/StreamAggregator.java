@@ -0,0 +1,128 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Estado de los flujos de operandos en un servidor. Cada fragmento se acumula en cuanto llegan todos los
+// anteriores, así que no se guardan los operandos del flujo completo, solo los fragmentos que llegan adelantados
+// (p. ej. por una retransmisión). Los fragmentos repetidos se descartan por su índice.
+// Los flujos que no reciben mensajes en `idleMilis` (cliente caído o que abandonó el flujo) se descartan al revisar
+// el estado en el siguiente mensaje. Un flujo MIN o MAX sin operandos no produce resultado final.
+// No es seguro para varios hilos: lo usa solo el hilo receptor del servidor.
+public class StreamAggregator {
+    // Acumula los operandos de un fragmento (el servidor puede usar kernels vectoriales; por defecto Aggregation.fold).
+    public interface Folder {
+        long fold(Aggregation aggregation, long acc, int[] values);
+    }
+
+    // Flujos terminados que se recuerdan para ignorar retransmisiones tardías sin volver a crear su estado.
+    private static final int FINISHED_MEMORY = 1024;
+
+    private static final class StreamState {
+        Aggregation aggregation;     // null hasta recibir el StreamOpen.
+        int partialEvery;
+        int chunkCount = -1;         // Total de fragmentos; -1 hasta recibir el StreamClose.
+        int chunksFolded;            // Fragmentos 0..chunksFolded-1 ya acumulados.
+        long count;
+        long value;
+        long lastUpdateNanos;        // Último mensaje recibido del flujo.
+        final TreeMap<Integer, int[]> early = new TreeMap<>(); // Fragmentos recibidos antes que sus anteriores.
+    }
+
+    private final Folder folder;
+    private final long idleNanos; // 0 = los flujos abandonados no se descartan.
+    private long lastSweepNanos = System.nanoTime();
+    private final Map<Long, StreamState> streams = new HashMap<>();
+    private final Map<Long, Boolean> finished = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return this.size() > FINISHED_MEMORY;
+        }
+    };
+
+    public StreamAggregator(Folder folder, int idleMilis) {
+        this.folder = folder;
+        this.idleNanos = idleMilis * 1_000_000L;
+    }
+
+    public StreamAggregator(int idleMilis) {
+        this((aggregation, acc, values) -> aggregation.fold(acc, values), idleMilis);
+    }
+
+    // Cada método devuelve los resultados (parciales o final) que hay que enviar al cliente; puede estar vacía.
+    public List<StreamProgress> open(long streamId, Aggregation aggregation, int partialEvery) {
+        StreamState state = this.stateOf(streamId);
+        if (state == null || state.aggregation != null) return List.of();
+        state.aggregation = aggregation;
+        state.partialEvery = partialEvery;
+        state.value = aggregation.identity();
+        return this.advance(streamId, state);
+    }
+
+    public List<StreamProgress> chunk(long streamId, int index, int[] values) {
+        StreamState state = this.stateOf(streamId);
+        if (state == null || index < state.chunksFolded) return List.of(); // Repetido.
+        state.early.putIfAbsent(index, values);
+        return this.advance(streamId, state);
+    }
+
+    public List<StreamProgress> close(long streamId, int chunkCount) {
+        StreamState state = this.stateOf(streamId);
+        if (state == null || state.chunkCount >= 0) return List.of();
+        state.chunkCount = chunkCount;
+        return this.advance(streamId, state);
+    }
+
+    // Número de flujos abiertos.
+    public int size() {
+        return this.streams.size();
+    }
+
+    private StreamState stateOf(long streamId) {
+        long now = System.nanoTime();
+        this.evictIdle(now);
+        if (this.finished.containsKey(streamId)) return null;
+        StreamState state = this.streams.computeIfAbsent(streamId, (k) -> new StreamState());
+        state.lastUpdateNanos = now;
+        return state;
+    }
+
+    // Descarta los flujos sin mensajes en `idleNanos`; revisa a lo sumo una vez por cada `idleNanos / 2`.
+    // Se recuerdan como terminados para ignorar sus retransmisiones tardías.
+    private void evictIdle(long now) {
+        if (this.idleNanos <= 0 || now - this.lastSweepNanos < this.idleNanos / 2) return;
+        this.lastSweepNanos = now;
+        this.streams.entrySet().removeIf((entry) -> {
+            if (now - entry.getValue().lastUpdateNanos < this.idleNanos) return false;
+            this.finished.put(entry.getKey(), Boolean.TRUE);
+            return true;
+        });
+    }
+
+    // Acumula los fragmentos contiguos disponibles y genera los resultados que correspondan.
+    private List<StreamProgress> advance(long streamId, StreamState state) {
+        List<StreamProgress> results = new ArrayList<>(1);
+        if (state.aggregation == null) return results; // Aún no se sabe qué reducción aplicar.
+        int[] values;
+        while ((values = state.early.remove(state.chunksFolded)) != null) {
+            state.value = this.folder.fold(state.aggregation, state.value, values);
+            state.count += values.length;
+            state.chunksFolded++;
+            boolean done = state.chunksFolded == state.chunkCount;
+            if (!done && state.partialEvery > 0 && state.chunksFolded % state.partialEvery == 0)
+                results.add(new StreamProgress(streamId, false, state.chunksFolded, state.count, state.value));
+        }
+        if (state.chunksFolded == state.chunkCount) {
+            // Sin operandos, MIN y MAX no tienen valor: no se envía un centinela como resultado.
+            if (state.count > 0 || state.aggregation.definedOnEmpty())
+                results.add(new StreamProgress(streamId, true, state.chunksFolded, state.count, state.value));
+            this.streams.remove(streamId);
+            this.finished.put(streamId, Boolean.TRUE);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,6 @@
+package org.example;
+
+// Contenido de un StreamResult: estado de la reducción de un flujo en un servidor.
+// `chunksFolded` es la frontera confirmada: los fragmentos 0..chunksFolded-1 ya están acumulados en `value`.
+public record StreamProgress(long streamId, boolean isFinal, int chunksFolded, long count, long value) {
+}
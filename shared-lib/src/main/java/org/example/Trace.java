@@ -0,0 +1,127 @@
+package org.example;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Traza de una solicitud muestreada (TRACE_SAMPLE_EVERY): identificador y lista de saltos, cada uno con la etapa, el
+// puerto de quien lo registró y su instante (System.nanoTime). Viaja como extensión opcional de la trama (ver
+// DecoderEncoder): la solicitud la lleva del cliente a los nodos y al servidor, y el resultado la continúa de vuelta.
+// Nodos y células del mismo equipo comparten el reloj monótono, así que las diferencias entre saltos son latencias
+// reales; entre equipos distintos solo son comparables los saltos de un mismo proceso.
+// Se añaden saltos desde el hilo que procesa el mensaje mientras otro puede estar serializándolo (retransmisiones):
+// los métodos se sincronizan sobre la traza.
+public class Trace {
+    // Saltos máximos: las retransmisiones añaden saltos y la traza no debe crecer sin límite.
+    public static final int MAX_HOPS = 32;
+    static final int HOP_BYTES = 11;
+
+    public enum Stage {
+        CLIENT_ENQUEUE,  // Solicitud encolada en el cliente.
+        CLIENT_SEND,     // El despachador del cliente la entrega a su conexión.
+        NODE_RECEIVE,    // Un nodo la lee.
+        NODE_FORWARD,    // El nodo la encola para reenviarla.
+        SERVER_RECEIVE,  // El receptor del servidor la lee.
+        SERVER_COMPUTED, // El servidor calculó el resultado y lo encoló.
+        SERVER_SEND,     // El despachador del servidor entrega el resultado a su conexión.
+        CLIENT_RECEIVE;  // El receptor del cliente lee el resultado.
+
+        static Optional<Stage> fromByte(byte value) {
+            return value >= 0 && value < values().length ? Optional.of(values()[value]) : Optional.empty();
+        }
+    }
+
+    // `where`: puerto de quien registró el salto (los dos últimos bytes de su identificador).
+    public record Hop(Stage stage, int where, long nanos) {
+    }
+
+    private final long traceId;
+    private final byte[] stages = new byte[MAX_HOPS];
+    private final short[] wheres = new short[MAX_HOPS];
+    private final long[] timestamps = new long[MAX_HOPS];
+    private int hopCount;
+
+    public Trace(long traceId) {
+        this.traceId = traceId;
+    }
+
+    public long getTraceId() {
+        return this.traceId;
+    }
+
+    // Registra un salto en este instante. `identifier` es el de la entidad que lo registra.
+    public synchronized void append(Stage stage, byte[] identifier) {
+        if (this.hopCount == MAX_HOPS) return;
+        this.stages[this.hopCount] = (byte) stage.ordinal();
+        this.wheres[this.hopCount] = (short) (((identifier[identifier.length - 2] & 0xFF) << 8) | (identifier[identifier.length - 1] & 0xFF));
+        this.timestamps[this.hopCount] = System.nanoTime();
+        this.hopCount++;
+    }
+
+    public synchronized List<Hop> hops() {
+        List<Hop> hops = new ArrayList<>(this.hopCount);
+        for (int i = 0; i < this.hopCount; i++) {
+            hops.add(new Hop(Stage.values()[this.stages[i]], this.wheres[i] & 0xFFFF, this.timestamps[i]));
+        }
+        return hops;
+    }
+
+    // Bytes de la extensión en la trama: identificador (8), número de saltos (1) y 11 bytes por salto.
+    public synchronized int encodedLength() {
+        return 9 + HOP_BYTES * this.hopCount;
+    }
+
+    public synchronized void writeTo(DataOutputStream dos) throws IOException {
+        dos.writeLong(this.traceId);
+        dos.writeByte(this.hopCount);
+        for (int i = 0; i < this.hopCount; i++) {
+            dos.writeByte(this.stages[i]);
+            dos.writeShort(this.wheres[i]);
+            dos.writeLong(this.timestamps[i]);
+        }
+    }
+
+    // Escribe solo los saltos que caben en `buf` (pudieron añadirse después de reservar su espacio con encodedLength).
+    public synchronized void writeTo(ByteBuffer buf) {
+        int hops = Math.min(this.hopCount, (buf.remaining() - 9) / HOP_BYTES);
+        buf.putLong(this.traceId);
+        buf.put((byte) hops);
+        for (int i = 0; i < hops; i++) {
+            buf.put(this.stages[i]);
+            buf.putShort(this.wheres[i]);
+            buf.putLong(this.timestamps[i]);
+        }
+    }
+
+    public static Trace readFrom(DataInputStream dis) throws IOException {
+        Trace trace = new Trace(dis.readLong());
+        int hopCount = dis.readUnsignedByte();
+        if (hopCount > MAX_HOPS) throw new IOException("Traza con demasiados saltos: " + hopCount);
+        for (int i = 0; i < hopCount; i++) {
+            byte stage = dis.readByte();
+            if (Stage.fromByte(stage).isEmpty()) throw new IOException("Etapa de traza desconocida: " + stage);
+            trace.stages[i] = stage;
+            trace.wheres[i] = dis.readShort();
+            trace.timestamps[i] = dis.readLong();
+        }
+        trace.hopCount = hopCount;
+        return trace;
+    }
+
+    // Una línea con el tiempo entre saltos, p. ej. "CLIENT_SEND@41000 +0.120ms NODE_RECEIVE@31010 ...".
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(Long.toHexString(this.traceId)).append(':');
+        long previous = 0;
+        for (Hop hop : this.hops()) {
+            if (previous != 0) out.append(String.format(" +%.3fms", (hop.nanos() - previous) / 1e6));
+            out.append(' ').append(hop.stage()).append('@').append(hop.where());
+            previous = hop.nanos();
+        }
+        return out.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Desglose de la latencia de las solicitudes trazadas (ver Trace), en el cliente que recibe sus resultados.
+// Cada par de saltos consecutivos de una traza se registra en dos histogramas: el de su etapa (p. ej. el reenvío de
+// cualquier nodo, NODE_RECEIVE -> NODE_FORWARD) y el de su salto (el mismo par en la misma posición del camino).
+// Se conservan además las últimas RECENT_TRACES trazas completas como muestra.
+public class TraceCollector {
+    private static final int RECENT_TRACES = 64;
+
+    // Par de saltos consecutivos; `hop` es la posición del segundo en la traza (-1 en los de etapa).
+    private record Transition(int hop, Trace.Stage from, Trace.Stage to) {
+        String label() {
+            return (this.hop >= 0 ? this.hop + " " : "") + this.from + " -> " + this.to;
+        }
+    }
+
+    private final Map<Transition, Metrics.Histogram> byStage = new ConcurrentSkipListMap<>(
+            (a, b) -> a.label().compareTo(b.label()));
+    private final Map<Transition, Metrics.Histogram> byHop = new ConcurrentHashMap<>();
+    private final Metrics.Histogram total = new Metrics.Histogram();
+    private final ArrayDeque<Trace> recent = new ArrayDeque<>(); // Protegida con su monitor.
+    private volatile Metrics metrics; // Donde se publican los histogramas que se van creando; null si no se publican.
+
+    public void record(Trace trace) {
+        List<Trace.Hop> hops = trace.hops();
+        for (int i = 1; i < hops.size(); i++) {
+            Trace.Hop previous = hops.get(i - 1);
+            Trace.Hop hop = hops.get(i);
+            long micros = (hop.nanos() - previous.nanos()) / 1_000;
+            this.histogram(this.byStage, new Transition(-1, previous.stage(), hop.stage())).recordMicros(micros);
+            this.histogram(this.byHop, new Transition(i, previous.stage(), hop.stage())).recordMicros(micros);
+        }
+        if (hops.size() > 1) this.total.recordMicros((hops.getLast().nanos() - hops.getFirst().nanos()) / 1_000);
+        synchronized (this.recent) {
+            if (this.recent.size() == RECENT_TRACES) this.recent.removeFirst();
+            this.recent.addLast(trace);
+        }
+    }
+
+    private Metrics.Histogram histogram(Map<Transition, Metrics.Histogram> histograms, Transition transition) {
+        Metrics.Histogram histogram = histograms.get(transition);
+        if (histogram != null) return histogram;
+        return histograms.computeIfAbsent(transition, (k) -> {
+            Metrics.Histogram created = new Metrics.Histogram();
+            Metrics metrics = this.metrics;
+            if (metrics != null) this.publish(metrics, k, created);
+            return created;
+        });
+    }
+
+    // Publica los histogramas en `metrics`, incluidos los que se creen después.
+    public void registerMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        metrics.histogram("trace_total_seconds", "Tiempo entre el primer y el último salto de las solicitudes trazadas", this.total);
+        this.byStage.forEach((transition, histogram) -> this.publish(metrics, transition, histogram));
+        this.byHop.forEach((transition, histogram) -> this.publish(metrics, transition, histogram));
+    }
+
+    private void publish(Metrics metrics, Transition transition, Metrics.Histogram histogram) {
+        if (transition.hop < 0) {
+            metrics.histogram("trace_stage_seconds", "Tiempo entre etapas consecutivas de las solicitudes trazadas", histogram,
+                    "from", transition.from.name(), "to", transition.to.name());
+        } else {
+            metrics.histogram("trace_hop_seconds", "Tiempo entre saltos consecutivos de las solicitudes trazadas, por posición", histogram,
+                    "hop", String.valueOf(transition.hop), "from", transition.from.name(), "to", transition.to.name());
+        }
+    }
+
+    public long getTraceCount() {
+        return this.total.count();
+    }
+
+    public List<Trace> getRecentTraces() {
+        synchronized (this.recent) {
+            return new ArrayList<>(this.recent);
+        }
+    }
+
+    // Desglose por etapa: muestras, media y cota del p50 y del p99 (límite de su cubeta de potencia de 2) en ms.
+    public String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("Trazas: %d, total medio %.3f ms%n", this.total.count(),
+                this.total.count() == 0 ? 0 : this.total.sumMicros() / 1e3 / this.total.count()));
+        this.byStage.forEach((transition, histogram) -> out.append(String.format(
+                "  %-34s %7d  media %8.3f ms  p50 <= %8.3f ms  p99 <= %8.3f ms%n",
+                transition.label(), histogram.count(), histogram.sumMicros() / 1e3 / Math.max(1, histogram.count()),
+                histogram.percentileMicros(50) / 1e3, histogram.percentileMicros(99) / 1e3)));
+        return out.toString();
+    }
+}
\ No newline at end of file
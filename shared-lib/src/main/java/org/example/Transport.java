@@ -0,0 +1,213 @@
+package org.example;
+
+import org.javatuples.Pair;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Conexión entre un nodo y otro nodo o una célula, independiente del medio: TCP o socket de dominio Unix para
+// entidades en el mismo equipo, que evita la pila TCP (segmentos, acuses, Nagle) en cada trama. El medio se elige
+// por entrada de NODES (`unix:host:puerto`, ver ConfigReader); la identificación y las tramas son las mismas en ambos.
+public interface Transport extends Closeable {
+    // Streams de datos con los búferes SOCKET_*_BUFFER (ver Sockets): quien escribe debe llamar a flush.
+    DataInputStream input();
+
+    DataOutputStream output();
+
+    // Límite de espera de las lecturas (0 = sin límite).
+    void setReadTimeout(int milis) throws IOException;
+
+    // TCP_NODELAY en las conexiones TCP; sin efecto en los sockets de dominio Unix, que no agrupan escrituras.
+    void setTcpNoDelay(boolean on) throws IOException;
+
+    // Identificador de quien abrió esta conexión, en el equipo `host` (ver CellConnection).
+    byte[] localIdentifier(String host);
+
+    // Conexiones entrantes de un nodo.
+    interface Listener extends Closeable {
+        Transport accept() throws IOException;
+    }
+
+    // Conecta con `node` por el medio de su entrada de NODES. `timeoutMilis` = 0 espera sin límite (solo TCP: la
+    // conexión a un socket de dominio Unix se acepta o se rechaza de inmediato).
+    static Transport connect(Pair<String, Integer> node, int timeoutMilis, ConfigReader.Config config) throws IOException {
+        Path path = config.unixSocketPath(node);
+        if (path != null) return new Unix(Sockets.connectUnix(path), path, config);
+        return new Tcp(Sockets.connect(node.getValue0(), node.getValue1(), timeoutMilis, config), config);
+    }
+
+    static Listener listen(ServerSocket server, ConfigReader.Config config) {
+        return new Listener() {
+            @Override
+            public Transport accept() throws IOException {
+                Socket socket = server.accept();
+                try {
+                    Sockets.configure(socket, config);
+                    return new Tcp(socket, config);
+                } catch (IOException e) {
+                    socket.close();
+                    throw e;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                server.close();
+            }
+        };
+    }
+
+    static Listener listenUnix(Path path, ConfigReader.Config config) throws IOException {
+        ServerSocketChannel server = Sockets.listenUnix(path, config);
+        return new Listener() {
+            @Override
+            public Transport accept() throws IOException {
+                return new Unix(server.accept(), path, config);
+            }
+
+            @Override
+            public void close() throws IOException {
+                server.close();
+            }
+        };
+    }
+
+    final class Tcp implements Transport {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Tcp(Socket socket, ConfigReader.Config config) throws IOException {
+            this.socket = socket;
+            this.in = Sockets.input(socket.getInputStream(), config);
+            this.out = Sockets.output(socket.getOutputStream(), config);
+        }
+
+        @Override
+        public DataInputStream input() {
+            return this.in;
+        }
+
+        @Override
+        public DataOutputStream output() {
+            return this.out;
+        }
+
+        @Override
+        public void setReadTimeout(int milis) throws IOException {
+            this.socket.setSoTimeout(milis);
+        }
+
+        @Override
+        public void setTcpNoDelay(boolean on) throws IOException {
+            this.socket.setTcpNoDelay(on);
+        }
+
+        // Deriva del puerto local de la conexión, único en el equipo mientras esté abierta.
+        @Override
+        public byte[] localIdentifier(String host) {
+            return Utils.createIdentifier(host, this.socket.getLocalPort());
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.socket.close();
+        }
+
+        @Override
+        public String toString() {
+            return "tcp:" + this.socket.getPort();
+        }
+    }
+
+    // Los canales no admiten SO_TIMEOUT: el límite de lectura se aplica cerrando el canal si no se retira a tiempo.
+    // Solo se usa en fases acotadas (identificación y sondeo), así que es un límite para todas las lecturas que
+    // siguen y no para cada una.
+    final class Unix implements Transport {
+        // Los plazos cancelados se quitan de la cola al cancelarse, no al vencer.
+        private static final ScheduledThreadPoolExecutor TIMEOUTS = new ScheduledThreadPoolExecutor(1, (r) -> {
+            Thread thread = new Thread(r, "unixReadTimeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            TIMEOUTS.setRemoveOnCancelPolicy(true);
+        }
+        // Las conexiones de dominio Unix no tienen puerto local: el identificador usa el PID y un contador.
+        private static final AtomicInteger CONNECTIONS = new AtomicInteger();
+
+        private final SocketChannel channel;
+        private final Path path;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private ScheduledFuture<?> readDeadline; // Protegido con el monitor de la conexión.
+
+        Unix(SocketChannel channel, Path path, ConfigReader.Config config) {
+            this.channel = channel;
+            this.path = path;
+            // Los streams de un SocketChannel en modo bloqueante admiten leer y escribir a la vez desde hilos distintos.
+            this.in = Sockets.input(Channels.newInputStream(channel), config);
+            this.out = Sockets.output(Channels.newOutputStream(channel), config);
+        }
+
+        @Override
+        public DataInputStream input() {
+            return this.in;
+        }
+
+        @Override
+        public DataOutputStream output() {
+            return this.out;
+        }
+
+        @Override
+        public synchronized void setReadTimeout(int milis) {
+            if (this.readDeadline != null) this.readDeadline.cancel(false);
+            this.readDeadline = milis > 0 ? TIMEOUTS.schedule(this::closeQuietly, milis, TimeUnit.MILLISECONDS) : null;
+        }
+
+        @Override
+        public void setTcpNoDelay(boolean on) {
+        }
+
+        @Override
+        public byte[] localIdentifier(String host) {
+            return Utils.createIdentifier(host + "/" + ProcessHandle.current().pid(), CONNECTIONS.incrementAndGet() & 0xFFFF);
+        }
+
+        private void closeQuietly() {
+            try {
+                this.channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        // Cancela el plazo de lectura pendiente: no retiene la conexión en la cola de TIMEOUTS tras cerrarla.
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                if (this.readDeadline != null) this.readDeadline.cancel(false);
+                this.readDeadline = null;
+            }
+            this.channel.close();
+        }
+
+        @Override
+        public String toString() {
+            return "unix:" + this.path;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,35 @@
+package org.example;
+
+import java.math.BigInteger;
+
+// Operandos de una operación del registro, en un arreglo primitivo según su tipo (sin objetos por operando):
+// `longs` para INT y LONG, `doubles` para DOUBLE y `bigs` para BIGINT. Los demás arreglos son null.
+public record TypedOperands(NumericType type, long[] longs, double[] doubles, BigInteger[] bigs) {
+    public static TypedOperands ofLongs(NumericType type, long[] longs) {
+        return new TypedOperands(type, longs, null, null);
+    }
+
+    public static TypedOperands ofDoubles(double[] doubles) {
+        return new TypedOperands(NumericType.DOUBLE, null, doubles, null);
+    }
+
+    public static TypedOperands ofBigs(BigInteger[] bigs) {
+        return new TypedOperands(NumericType.BIGINT, null, null, bigs);
+    }
+
+    public int count() {
+        return switch (this.type) {
+            case INT, LONG -> this.longs.length;
+            case DOUBLE -> this.doubles.length;
+            case BIGINT -> this.bigs.length;
+        };
+    }
+
+    // Los mismos operandos como BigInteger (para promover un cálculo entero que se desbordó).
+    public BigInteger[] toBigs() {
+        if (this.bigs != null) return this.bigs;
+        BigInteger[] result = new BigInteger[this.longs.length];
+        for (int i = 0; i < result.length; i++) result[i] = BigInteger.valueOf(this.longs[i]);
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+package org.example;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+
+// Resultado de una operación del registro. Los valores primitivos se guardan sin envolver; `big` solo se usa con BIGINT.
+public final class TypedValue {
+    private final NumericType type;
+    private final long longValue;
+    private final double doubleValue;
+    private final BigInteger bigValue;
+
+    private TypedValue(NumericType type, long longValue, double doubleValue, BigInteger bigValue) {
+        this.type = type;
+        this.longValue = longValue;
+        this.doubleValue = doubleValue;
+        this.bigValue = bigValue;
+    }
+
+    // Entero de 64 bits: se codifica como INT si cabe y `narrow` lo permite (la solicitud usaba INT).
+    public static TypedValue ofLong(long value, boolean narrow) {
+        NumericType type = narrow && value == (int) value ? NumericType.INT : NumericType.LONG;
+        return new TypedValue(type, value, 0, null);
+    }
+
+    public static TypedValue ofDouble(double value) {
+        return new TypedValue(NumericType.DOUBLE, 0, value, null);
+    }
+
+    // Entero arbitrario: con `narrowTo` INT o LONG se usa el tipo primitivo si cabe.
+    public static TypedValue ofBig(BigInteger value, NumericType narrowTo) {
+        if (narrowTo != NumericType.BIGINT && value.bitLength() < 64) return ofLong(value.longValue(), narrowTo == NumericType.INT);
+        return new TypedValue(NumericType.BIGINT, 0, 0, value);
+    }
+
+    public NumericType getType() {
+        return this.type;
+    }
+
+    public long longValue() {
+        return this.longValue;
+    }
+
+    public double doubleValue() {
+        return this.doubleValue;
+    }
+
+    public BigInteger bigValue() {
+        return this.type == NumericType.BIGINT ? this.bigValue : BigInteger.valueOf(this.longValue);
+    }
+
+    public void writeTo(DataOutputStream dos) throws IOException {
+        dos.writeByte(this.type.toByte());
+        switch (this.type) {
+            case INT -> dos.writeInt((int) this.longValue);
+            case LONG -> dos.writeLong(this.longValue);
+            case DOUBLE -> dos.writeDouble(this.doubleValue);
+            case BIGINT -> NumericType.writeBig(dos, this.bigValue);
+        }
+    }
+
+    public static TypedValue readFrom(DataInputStream dis) throws IOException {
+        byte code = dis.readByte();
+        NumericType type = NumericType.fromByte(code).orElseThrow(() -> new IOException("Tipo numérico desconocido: " + code));
+        return switch (type) {
+            case INT -> new TypedValue(type, dis.readInt(), 0, null);
+            case LONG -> new TypedValue(type, dis.readLong(), 0, null);
+            case DOUBLE -> new TypedValue(type, 0, dis.readDouble(), null);
+            case BIGINT -> new TypedValue(type, 0, 0, NumericType.readBig(dis));
+        };
+    }
+
+    public String toString() {
+        return switch (this.type) {
+            case INT, LONG -> Long.toString(this.longValue);
+            case DOUBLE -> Double.toString(this.doubleValue);
+            case BIGINT -> this.bigValue.toString();
+        };
+    }
+}
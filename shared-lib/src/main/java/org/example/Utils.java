@@ -5,7 +5,6 @@ import org.javatuples.Pair;
 
 import java.io.IOException;
 import java.net.ConnectException;
-import java.net.Socket;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HexFormat;
@@ -50,24 +49,29 @@ public class Utils {
         return hex.formatHex(byteArray);
     }
 
-    public static Socket cellTryToCreateSocket(String host, int nodePort, int delay, Logger LOGGER) throws InterruptedException {
-        Socket socket;
+    // Crea la conexión de una célula hacia su nodo, por TCP o socket de dominio Unix según su entrada de NODES
+    // (ver Transport). Si el nodo aún no acepta conexiones, reintenta con retroceso exponencial: la espera empieza
+    // en `minDelay` y se duplica hasta `maxDelay`.
+    public static Transport cellTryToConnect(Pair<String, Integer> node, int minDelay, int maxDelay, ConfigReader.Config config, Logger LOGGER) throws InterruptedException {
+        Transport transport;
         int tryCount = 1;
+        int delay = minDelay;
         do {
             LOGGER.info("Intento {} de crear socket", tryCount);
             try {
-                socket = new Socket(host, nodePort);
+                transport = Transport.connect(node, 0, config);
                 break;
             } catch (ConnectException e) {
                 tryCount += 1;
                 LOGGER.error(e);
                 LOGGER.error("Espera de {}ms", delay);
                 Thread.sleep(delay);
+                delay = Math.min(delay * 2, maxDelay);
             } catch (IOException e) {
                 LOGGER.fatal(e);
                 throw new RuntimeException(e);
             }
         } while (true);
-        return socket;
+        return transport;
     }
-}
+}
\ No newline at end of file